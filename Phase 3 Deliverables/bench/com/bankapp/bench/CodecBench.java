@@ -0,0 +1,185 @@
+package com.bankapp.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import com.bankapp.common.AccountMessage;
+import com.bankapp.common.AccountSummary;
+import com.bankapp.common.BinaryMessageCodec;
+import com.bankapp.common.FailureMessage;
+import com.bankapp.common.LoginMessage;
+import com.bankapp.common.LogoutMessage;
+import com.bankapp.common.Message;
+import com.bankapp.common.MessageCodec;
+import com.bankapp.common.ProfileMessage;
+import com.bankapp.common.SerializedMessageCodec;
+import com.bankapp.common.SessionInfo;
+import com.bankapp.common.SessionTimeoutMessage;
+import com.bankapp.common.ShareAccountMessage;
+import com.bankapp.common.SuccessMessage;
+import com.bankapp.common.Transaction;
+import com.bankapp.common.TransactionBatchMessage;
+import com.bankapp.common.TransactionBatchResultMessage;
+import com.bankapp.common.TransactionMessage;
+import com.bankapp.common.TransactionReceiptMessage;
+import com.bankapp.common.TransferMessage;
+import com.bankapp.common.TransferReceiptMessage;
+
+/*
+ * Wire codec comparison: payload size and encode/decode cost for
+ *
+ *   stream      the legacy ObjectOutputStream, warm, so class descriptors
+ *               have already been sent once (size only)
+ *   serialized  SerializedMessageCodec, one self-contained frame per message
+ *   binary      BinaryMessageCodec
+ *
+ *   java -cp <classes> com.bankapp.bench.CodecBench [iterations]
+ *
+ * That every message survives both codecs is checked by MessageCodecTest.
+ */
+public class CodecBench {
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        Map<String, Supplier<Message>> samples = samples();
+
+        System.out.printf("%-20s %8s %10s %8s %12s %12s %12s %12s%n",
+                "message", "stream", "serialized", "binary",
+                "ser enc ns", "ser dec ns", "bin enc ns", "bin dec ns");
+        for (Map.Entry<String, Supplier<Message>> e : samples.entrySet()) {
+            Message msg = e.getValue().get();
+            // fewer rounds for the big history messages
+            int rounds = Math.max(200, iterations / Math.max(1, historySize(msg) / 10));
+            long[] ser = time(SerializedMessageCodec.INSTANCE, msg, rounds);
+            long[] bin = time(BinaryMessageCodec.INSTANCE, msg, rounds);
+            System.out.printf("%-20s %8d %10d %8d %12d %12d %12d %12d%n",
+                    e.getKey(),
+                    warmStreamSize(e.getValue()),
+                    SerializedMessageCodec.INSTANCE.encode(msg).length,
+                    BinaryMessageCodec.INSTANCE.encode(msg).length,
+                    ser[0], ser[1], bin[0], bin[1]);
+        }
+    }
+
+    // one of each message type, by name; also what jmh.MessageSerializationBenchmark sends
+    public static Map<String, Supplier<Message>> samples() {
+        SessionInfo session = new SessionInfo("alice", SessionInfo.ROLE.CLIENT);
+        Map<String, Supplier<Message>> samples = new LinkedHashMap<>();
+        samples.put("login", () -> new LoginMessage(Message.TYPE.LOGIN_CLIENT, "alice", "pass123"));
+        samples.put("logout", () -> new LogoutMessage(Message.TYPE.LOGOUT_ATM, session));
+        samples.put("success", () -> new SuccessMessage("Deposit successful.", session));
+        samples.put("failure", () -> new FailureMessage("Insufficient funds."));
+        samples.put("session timeout", SessionTimeoutMessage::new);
+        samples.put("transaction", () -> {
+            Message m = new TransactionMessage(session, "125.50", Transaction.OPERATION.DEPOSIT, "ACC0");
+            m.setRequestId(1234);
+            return m;
+        });
+        samples.put("receipt", () -> new TransactionReceiptMessage("Transaction applied successfully.", "ACC1",
+                new BigDecimal("1374.50"), 41, 3, new Transaction("-125.50", Transaction.OPERATION.WITHDRAW)));
+        samples.put("batch 20 entries", () -> {
+            List<TransactionBatchMessage.Entry> entries = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                entries.add(new TransactionBatchMessage.Entry("ACC" + i, (i + 1) + ".25",
+                        i % 4 == 0 ? Transaction.OPERATION.WITHDRAW : Transaction.OPERATION.DEPOSIT));
+            }
+            return new TransactionBatchMessage(session, entries, true);
+        });
+        samples.put("batch result 20", () -> {
+            List<TransactionBatchResultMessage.Result> results = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                results.add(i == 7 ? TransactionBatchResultMessage.Result.failed("Account not found.")
+                        : TransactionBatchResultMessage.Result.applied(new BigDecimal(1000 + i + ".25"), 40 + i));
+            }
+            return new TransactionBatchResultMessage("19 of 20 transactions applied.", results);
+        });
+        samples.put("transfer", () -> new TransferMessage(session, "ACC0", "ACC1", "40.00"));
+        samples.put("transfer receipt", () -> new TransferReceiptMessage("Transferred 40.00 from ACC0 to ACC1.",
+                new TransactionReceiptMessage("Transaction applied successfully.", "ACC0",
+                        new BigDecimal("460.00"), 12, 0, new Transaction("-40.00", Transaction.OPERATION.WITHDRAW)),
+                new TransactionReceiptMessage("Transaction applied successfully.", "ACC1",
+                        new BigDecimal("1540.00"), 7, 0, new Transaction("40.00", Transaction.OPERATION.DEPOSIT))));
+        samples.put("share", () -> new ShareAccountMessage(Message.TYPE.SHARE_ACCOUNT, session, "alice", "bob", "ACC0"));
+        samples.put("account request", () -> new AccountMessage(Message.TYPE.LOAD_ACCOUNT, session, "alice", "ACC0"));
+        samples.put("profile request", () -> new ProfileMessage(Message.TYPE.LOAD_PROFILE, session, "alice"));
+        samples.put("profile 5 accts", () -> profile(session, 5));
+        samples.put("saving 10 txns", () -> new AccountMessage(Message.TYPE.LOAD_ACCOUNT, session, "alice", "ACC1",
+                new BigDecimal("1500.00"), history(10), 2, 6, LocalDate.of(2025, 5, 1)));
+        samples.put("credit 10 txns", () -> new AccountMessage(Message.TYPE.LOAD_ACCOUNT, session, "alice", "ACC2",
+                new BigDecimal("-20.75"), history(10), new BigDecimal("5000")));
+        samples.put("checking 100 txns", () -> new AccountMessage(Message.TYPE.LOAD_ACCOUNT, session, "alice", "ACC0",
+                new BigDecimal("500.00"), history(100)));
+        samples.put("checking 1000 txns", () -> new AccountMessage(Message.TYPE.LOAD_ACCOUNT, session, "alice", "ACC0",
+                new BigDecimal("500.00"), history(1000)));
+        return samples;
+    }
+
+    private static ProfileMessage profile(SessionInfo session, int accounts) {
+        List<AccountSummary> summaries = new ArrayList<>();
+        for (int i = 0; i < accounts; i++) {
+            summaries.add(new AccountSummary("ACC" + i, AccountSummary.ACCOUNT_TYPE.values()[i % 3],
+                    new BigDecimal(i * 100 + ".25")));
+        }
+        return new ProfileMessage(Message.TYPE.LOAD_PROFILE, session, "alice", "pass123",
+                "555-0100", "1 Main St", "Alice Example", summaries);
+    }
+
+    private static List<Transaction> history(int n) {
+        List<Transaction> history = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Transaction.OPERATION op = i % 3 == 0 ? Transaction.OPERATION.WITHDRAW : Transaction.OPERATION.DEPOSIT;
+            history.add(new Transaction((i % 200) + "." + (i % 100 < 10 ? "0" : "") + (i % 100), op));
+        }
+        return history;
+    }
+
+    private static int historySize(Message msg) {
+        if (msg instanceof AccountMessage && ((AccountMessage) msg).getTransactionHistory() != null)
+            return ((AccountMessage) msg).getTransactionHistory().size();
+        return 0;
+    }
+
+    // average ns per encode and per decode
+    private static long[] time(MessageCodec codec, Message msg, int rounds) throws IOException {
+        byte[] payload = codec.encode(msg);
+        long sink = 0;
+        for (int warm = 0; warm < 2; warm++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                sink += codec.encode(msg).length;
+            }
+            long encode = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                sink += codec.decode(payload, 0, payload.length).getType().ordinal();
+            }
+            long decode = System.nanoTime() - start;
+            if (warm == 1) {
+                if (sink == 42)
+                    System.out.print("");
+                return new long[] { encode / rounds, decode / rounds };
+            }
+        }
+        throw new AssertionError();
+    }
+
+    // bytes one more message adds to a long-lived ObjectOutputStream
+    private static int warmStreamSize(Supplier<Message> sample) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(sample.get());
+        out.flush();
+        int before = bytes.size();
+        out.writeObject(sample.get());
+        out.flush();
+        return bytes.size() - before;
+    }
+}
@@ -0,0 +1,154 @@
+package com.bankapp.bench;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.bankapp.common.LoginMessage;
+import com.bankapp.common.Message;
+import com.bankapp.common.MessageFrames;
+import com.bankapp.common.SerializedMessageCodec;
+import com.bankapp.server.CentralServer;
+
+/*
+ * Side-by-side connection scaling for the server's execution modes.
+ * For each mode an in-process CentralServer is started, N idle connections
+ * are opened, and we report server threads and heap per connection plus the
+ * round-trip latency of one request on every connection while all N are open.
+ *
+ *   java -cp <classes> com.bankapp.bench.ConnectionScalingBench [connections] [basePort]
+ *
+ * The open-file limit (ulimit -n) must allow 2 descriptors per connection.
+ */
+public class ConnectionScalingBench {
+    private static final String[][] MODES = {
+        { "--executor=platform" },
+        { "--executor=virtual" },
+        { "--transport=nio" },
+    };
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int basePort = args.length > 1 ? Integer.parseInt(args[1]) : 7900;
+
+        PrintStream console = System.out;
+        // the server logs every connect; keep the report readable
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        console.printf("%-22s %8s %10s %12s %10s %10s %10s%n",
+                "mode", "conns", "threads", "heap KB/conn", "p50 us", "p99 us", "max us");
+        for (int i = 0; i < MODES.length; i++) {
+            String[] mode = MODES[i];
+            int port = basePort + i;
+            console.printf("%-22s %s%n", String.join(" ", mode), run(mode, port, connections));
+        }
+        // server shutdown hooks stay muted
+        System.exit(0);
+    }
+
+    private static String run(String[] mode, int port, int connections) throws Exception {
+        boolean framed = Arrays.asList(mode).contains("--transport=nio");
+        // idle connections write nothing, so the journal would only leave files behind
+        String[] serverArgs = Arrays.copyOf(mode, mode.length + 2);
+        serverArgs[mode.length] = "--port=" + port;
+        serverArgs[mode.length + 1] = "--journal=off";
+
+        Thread server = new Thread(() -> CentralServer.main(serverArgs), "bench-server-" + port);
+        server.setDaemon(true);
+        server.start();
+        Thread.sleep(500);
+
+        settle();
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        long heapBefore = usedHeap();
+
+        List<Conn> conns = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            conns.add(new Conn(port, framed));
+        }
+
+        settle();
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount() - threadsBefore;
+        long heapPerConn = (usedHeap() - heapBefore) / connections / 1024;
+
+        // one request per open connection; a bad teller login is answered
+        // without creating a session
+        long[] micros = new long[connections];
+        for (int i = 0; i < connections; i++) {
+            long start = System.nanoTime();
+            conns.get(i).roundTrip(new LoginMessage(Message.TYPE.LOGIN_TELLER, "bench", "wrong"));
+            micros[i] = (System.nanoTime() - start) / 1000;
+        }
+        Arrays.sort(micros);
+
+        for (Conn c : conns) {
+            c.close();
+        }
+
+        return String.format("%8d %10d %12d %10d %10d %10d",
+                connections, threads, heapPerConn,
+                micros[connections / 2], micros[(int) (connections * 0.99)], micros[connections - 1]);
+    }
+
+    private static void settle() throws InterruptedException {
+        System.gc();
+        Thread.sleep(300);
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    // one bare client connection; no ConnectionHandler so the client side
+    // adds no threads to the count
+    private static final class Conn {
+        private final Socket socket;
+        private final boolean framed;
+        private ObjectOutputStream out;
+        private ObjectInputStream in;
+        private DataOutputStream framedOut;
+        private DataInputStream framedIn;
+
+        Conn(int port, boolean framed) throws IOException {
+            this.socket = new Socket("localhost", port);
+            socket.setTcpNoDelay(true);
+            this.framed = framed;
+            if (framed) {
+                framedOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                framedIn = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                // same encoding as the blocking modes so only the transport differs
+                MessageFrames.writePreamble(framedOut, SerializedMessageCodec.INSTANCE);
+            } else {
+                out = new ObjectOutputStream(socket.getOutputStream());
+                out.flush();
+                in = new ObjectInputStream(socket.getInputStream());
+            }
+        }
+
+        Message roundTrip(Message msg) throws IOException, ClassNotFoundException {
+            if (framed) {
+                MessageFrames.write(framedOut, SerializedMessageCodec.INSTANCE, msg);
+                return MessageFrames.read(framedIn, SerializedMessageCodec.INSTANCE);
+            }
+            out.writeObject(msg);
+            out.flush();
+            return (Message) in.readObject();
+        }
+
+        void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.bankapp.bench;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.bankapp.common.Account;
+import com.bankapp.common.CheckingAccount;
+import com.bankapp.common.Transaction;
+import com.bankapp.server.MappedHistoryStore;
+
+/*
+ * Heap held by account histories, on the heap versus in MappedHistoryStore.
+ * For each store, fills <accounts> checking accounts with <perAccount>
+ * transactions each, then reports the heap retained after a full GC and the
+ * time to read every account's newest page of 50 (what LOAD_ACCOUNT sends).
+ *
+ *   java -Xmx4g -cp <classes> com.bankapp.bench.HistoryStoreBench [accounts] [perAccount]
+ */
+public class HistoryStoreBench {
+
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int perAccount = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        System.out.printf("%d accounts x %d transactions%n", accounts, perAccount);
+        System.out.printf("%-8s %12s %12s %14s%n", "store", "heap MB", "fill ms", "newest page ms");
+        run("heap", accounts, perAccount);
+
+        Path dir = Files.createTempDirectory("bankapp-history");
+        try {
+            MappedHistoryStore store = MappedHistoryStore.open(dir);
+            Account.setHistoryFactory(store::newHistory);
+            run("mapped", accounts, perAccount);
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static void run(String name, int accounts, int perAccount) {
+        long base = usedHeap();
+        long start = System.nanoTime();
+        List<Account> all = new ArrayList<>(accounts);
+        for (int a = 0; a < accounts; a++) {
+            CheckingAccount account = new CheckingAccount();
+            account.setID("ACC" + a);
+            for (int t = 0; t < perAccount; t++) {
+                account.addTransaction(new Transaction(t % 3 == 0 ? "-12.50" : "40.25",
+                        t % 3 == 0 ? Transaction.OPERATION.WITHDRAW : Transaction.OPERATION.DEPOSIT));
+            }
+            all.add(account);
+        }
+        long fill = System.nanoTime() - start;
+        long heap = usedHeap() - base;
+
+        start = System.nanoTime();
+        long sink = 0;
+        for (Account account : all) {
+            int count = account.getTransactionCount();
+            for (Transaction tx : account.getTransactions(Math.max(0, count - 50), count)) {
+                sink += tx.getCreated().getTime() & 1;
+            }
+        }
+        long page = System.nanoTime() - start;
+
+        System.out.printf("%-8s %12d %12d %14d%n", name, heap / (1024 * 1024), fill / 1_000_000, page / 1_000_000);
+        if (sink == -1 || all.isEmpty()) {
+            System.out.print("");
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,648 @@
+package com.bankapp.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.bankapp.client.ConnectionHandler;
+import com.bankapp.common.AccountMessage;
+import com.bankapp.common.AccountSummary;
+import com.bankapp.common.FailureMessage;
+import com.bankapp.common.LoginMessage;
+import com.bankapp.common.LogoutMessage;
+import com.bankapp.common.Message;
+import com.bankapp.common.MessageCodec;
+import com.bankapp.common.ProfileMessage;
+import com.bankapp.common.SessionInfo;
+import com.bankapp.common.ShareAccountMessage;
+import com.bankapp.common.Transaction;
+import com.bankapp.common.TransactionBatchMessage;
+import com.bankapp.common.TransactionMessage;
+import com.bankapp.server.CentralServer;
+
+/*
+ * Closed-loop load against a CentralServer over the real client protocol
+ * (ConnectionHandler). Each simulated ATM and teller has its own connection
+ * and thread and runs its workflow over and over until the time is up,
+ * thinking between requests:
+ *
+ *   ATM     LOGIN_CLIENT, LOAD_PROFILE, LOAD_ACCOUNT, TRANSACTION (deposit or
+ *           withdrawal), EXIT_ACCOUNT, LOGOUT_CLIENT
+ *   teller  LOGIN_TELLER, CREATE_PROFILE, CREATE_ACCOUNT, LOAD_PROFILE,
+ *           LOAD_ACCOUNT, SHARE_ACCOUNT (with a random ATM's customer),
+ *           EXIT_ACCOUNT, EXIT_PROFILE, LOGOUT_TELLER
+ *
+ * A failed step abandons the rest of that run of the workflow. Reports, for
+ * every request type, the count, error rate and latency percentiles, and
+ * with --histogram=on the latency distribution itself.
+ *
+ *   java -cp <classes> com.bankapp.bench.LoadGenerator [--name=value ...]
+ *
+ *   --atms=500              simulated ATMs, each a customer of its own
+ *   --tellers=5             simulated tellers
+ *   --duration-seconds=60
+ *   --think-ms=200          mean pause before each request (0 = none);
+ *                           each pause is uniform in [0, 2 * mean]
+ *   --withdraw-percent=50   share of ATM transactions that are withdrawals
+ *   --codec=binary          binary, serialized, or none for the legacy
+ *                           object stream
+ *   --port=7970 --host=localhost
+ *   --embedded=on           start a CentralServer in this JVM (its data in a
+ *                           temporary directory, tellers provisioned for the
+ *                           run); off to drive a running one
+ *   --tellers-file=<path>   "username:password" lines, one per teller; with
+ *                           --embedded=off there must be one per teller, or
+ *                           just teller1 is used for setup and a lone teller
+ *   --histogram=off
+ *   --server.<option>=...   passed to the embedded server as --<option>
+ *
+ * Before the clock starts the first teller creates and funds the ATMs'
+ * customers (on a running server under a run-specific prefix). Exits
+ * non-zero if setup fails.
+ */
+public class LoadGenerator {
+    private static final String FUNDING = "1000000.00";
+    private static final long TIMEOUT_MILLIS = 30_000;
+
+    private static final class Options {
+        int atms = 500;
+        int tellers = 5;
+        int durationSeconds = 60;
+        long thinkMillis = 200;
+        int withdrawPercent = 50;
+        String codec = "binary";
+        String host = "localhost";
+        int port = 7970;
+        boolean embedded = true;
+        String tellersFile = null;
+        boolean histogram = false;
+        final List<String> serverArgs = new ArrayList<>();
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            for (String arg : args) {
+                if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                    throw new IllegalArgumentException("Unrecognized option: " + arg);
+                }
+                String name = arg.substring(2, arg.indexOf('='));
+                String value = arg.substring(arg.indexOf('=') + 1).trim();
+                if (name.startsWith("server.")) {
+                    o.serverArgs.add("--" + name.substring("server.".length()) + "=" + value);
+                    continue;
+                }
+                switch (name) {
+                    case "atms":
+                        o.atms = Integer.parseInt(value);
+                        break;
+                    case "tellers":
+                        o.tellers = Integer.parseInt(value);
+                        break;
+                    case "duration-seconds":
+                        o.durationSeconds = Integer.parseInt(value);
+                        break;
+                    case "think-ms":
+                        o.thinkMillis = Long.parseLong(value);
+                        break;
+                    case "withdraw-percent":
+                        o.withdrawPercent = Integer.parseInt(value);
+                        break;
+                    case "codec":
+                        o.codec = value.equals("none") ? null : value;
+                        break;
+                    case "host":
+                        o.host = value;
+                        break;
+                    case "port":
+                        o.port = Integer.parseInt(value);
+                        break;
+                    case "embedded":
+                        o.embedded = value.equals("on");
+                        break;
+                    case "tellers-file":
+                        o.tellersFile = value;
+                        break;
+                    case "histogram":
+                        o.histogram = value.equals("on");
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unrecognized option: --" + name);
+                }
+            }
+            if (o.atms < 1 && o.tellers < 1) {
+                throw new IllegalArgumentException("nothing to simulate: no ATMs and no tellers");
+            }
+            return o;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        PrintStream console = System.out;
+        // the server logs every connect and ConnectionHandler every close;
+        // keep the report readable
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        List<String[]> tellers = tellerCredentials(options);
+        if (options.embedded) {
+            startServer(options);
+        }
+
+        console.printf("Setting up %d ATM customers...%n", options.atms);
+        String prefix = options.embedded ? "atm" : "atm" + Long.toString(System.currentTimeMillis(), 36) + "-";
+        String[] accounts;
+        try {
+            accounts = setUp(options, tellers.get(0), prefix);
+        } catch (RuntimeException e) {
+            console.println("Setup failed: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        List<Simulated> fleet = new ArrayList<>();
+        for (int i = 0; i < options.atms; i++) {
+            fleet.add(new Atm(options, prefix + i, accounts[i]));
+        }
+        for (int i = 0; i < options.tellers && i < tellers.size(); i++) {
+            fleet.add(new Teller(options, tellers.get(i), prefix));
+        }
+        console.printf("Running %d ATMs and %d tellers for %d s (think %d ms, %d%% withdrawals)...%n",
+                options.atms, fleet.size() - options.atms, options.durationSeconds, options.thinkMillis,
+                options.withdrawPercent);
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+        List<Thread> threads = new ArrayList<>(fleet.size());
+        for (Simulated s : fleet) {
+            Thread t = new Thread(() -> s.runUntil(deadline), s.name);
+            t.setDaemon(true);
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Map<Message.TYPE, Stats> total = new EnumMap<>(Message.TYPE.class);
+        long cycles = 0;
+        for (Simulated s : fleet) {
+            cycles += s.cycles;
+            for (Map.Entry<Message.TYPE, Stats> e : s.stats.entrySet()) {
+                total.computeIfAbsent(e.getKey(), k -> new Stats()).add(e.getValue());
+            }
+        }
+        report(console, total, cycles, seconds, options.histogram);
+        System.exit(0);
+    }
+
+    // the tellers' usernames and passwords; an embedded server gets a file
+    // provisioning one per simulated teller
+    private static List<String[]> tellerCredentials(Options options) throws Exception {
+        List<String[]> tellers = new ArrayList<>();
+        if (options.tellersFile != null) {
+            for (String line : Files.readAllLines(Paths.get(options.tellersFile))) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#") && line.indexOf(':') > 0) {
+                    tellers.add(new String[] { line.substring(0, line.indexOf(':')),
+                            line.substring(line.indexOf(':') + 1) });
+                }
+            }
+        } else if (options.embedded) {
+            List<String> lines = new ArrayList<>();
+            for (int i = 0; i < Math.max(1, options.tellers); i++) {
+                tellers.add(new String[] { "loadteller" + i, "pw" + i });
+                lines.add("loadteller" + i + ":pw" + i);
+            }
+            Path file = Files.createTempFile("bankapp-tellers", ".txt");
+            Files.write(file, lines);
+            options.tellersFile = file.toString();
+        }
+        if (tellers.isEmpty()) {
+            tellers.add(new String[] { "teller1", "letmein" });
+        }
+        return tellers;
+    }
+
+    private static void startServer(Options options) throws Exception {
+        List<String> args = new ArrayList<>();
+        args.add("--port=" + options.port);
+        args.add("--storage=disk");
+        args.add("--data-dir=" + Files.createTempDirectory("bankapp-load"));
+        args.add("--tellers-file=" + options.tellersFile);
+        // thousands of mostly idle connections
+        args.add("--executor=virtual");
+        args.addAll(options.serverArgs); // later options win
+        Thread server = new Thread(() -> CentralServer.main(args.toArray(new String[0])), "load-server");
+        server.setDaemon(true);
+        server.start();
+        Thread.sleep(1000);
+    }
+
+    // Creates and funds one customer per ATM, pipelining each stage. Returns
+    // each customer's account id.
+    private static String[] setUp(Options options, String[] teller, String prefix) {
+        int n = options.atms;
+        String[] accounts = new String[n];
+        if (n == 0) {
+            return accounts;
+        }
+        ConnectionHandler conn = connect(options);
+        SessionInfo session = expect(conn.sendAndWait(
+                new LoginMessage(Message.TYPE.LOGIN_TELLER, teller[0], teller[1])), "teller login").getSession();
+        if (session == null) {
+            throw new IllegalStateException("teller login failed");
+        }
+        List<CompletableFuture<Message>> replies = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            replies.add(conn.request(new ProfileMessage(Message.TYPE.CREATE_PROFILE, session, prefix + i, "pw",
+                    "555-0100", i + " Load St.", "Load Customer " + i)));
+        }
+        awaitAll(replies, "CREATE_PROFILE");
+        for (int i = 0; i < n; i++) {
+            replies.add(conn.request(new AccountMessage(session, prefix + i, AccountMessage.ACCOUNT_TYPE.CHECKING,
+                    null, 0)));
+        }
+        awaitAll(replies, "CREATE_ACCOUNT");
+        for (int i = 0; i < n; i++) {
+            replies.add(conn.request(new ProfileMessage(Message.TYPE.LOAD_PROFILE, session, prefix + i)));
+        }
+        for (int i = 0; i < n; i++) {
+            List<AccountSummary> summaries = ((ProfileMessage) join(replies.get(i), "LOAD_PROFILE")).getSummaries();
+            accounts[i] = summaries.get(0).getID();
+        }
+        replies.clear();
+        for (int i = 0; i < n; i++) {
+            replies.add(conn.request(new ProfileMessage(Message.TYPE.EXIT_PROFILE, session, prefix + i)));
+        }
+        awaitAll(replies, "EXIT_PROFILE");
+        List<TransactionBatchMessage.Entry> funding = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            funding.add(new TransactionBatchMessage.Entry(accounts[i], FUNDING, Transaction.OPERATION.DEPOSIT));
+            if (funding.size() == 5000 || i == n - 1) {
+                replies.add(conn.request(new TransactionBatchMessage(session, funding, true)));
+                funding = new ArrayList<>();
+            }
+        }
+        awaitAll(replies, "TRANSACTION_BATCH");
+        expect(conn.sendAndWait(new LogoutMessage(Message.TYPE.LOGOUT_TELLER, session)), "teller logout");
+        conn.shutDown();
+        return accounts;
+    }
+
+    private static void awaitAll(List<CompletableFuture<Message>> replies, String what) {
+        for (CompletableFuture<Message> reply : replies) {
+            join(reply, what);
+        }
+        replies.clear();
+    }
+
+    private static Message join(CompletableFuture<Message> reply, String what) {
+        try {
+            return expect(reply.orTimeout(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).join(), what);
+        } catch (CompletionException e) {
+            throw new IllegalStateException(what + ": " + e.getCause());
+        }
+    }
+
+    private static Message expect(Message reply, String what) {
+        if (reply == null || reply instanceof FailureMessage) {
+            throw new IllegalStateException(what + " failed: "
+                    + (reply == null ? "no reply" : ((FailureMessage) reply).getMessage()));
+        }
+        return reply;
+    }
+
+    private static ConnectionHandler connect(Options options) {
+        try {
+            Socket socket = new Socket(options.host, options.port);
+            socket.setTcpNoDelay(true);
+            ConnectionHandler conn = new ConnectionHandler(socket, MessageCodec.forName(options.codec));
+            conn.run();
+            if (!conn.isRunning()) {
+                throw new IllegalStateException("connection failed");
+            }
+            return conn;
+        } catch (Exception e) {
+            throw new IllegalStateException("cannot connect to " + options.host + ":" + options.port + ": " + e);
+        }
+    }
+
+    // a step that failed; the rest of the workflow is skipped
+    private static final class StepFailed extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        StepFailed() {
+            super(null, null, false, false);
+        }
+    }
+
+    // One simulated ATM or teller: its connection, its workflow and what it
+    // measured. Only its own thread touches it until it has finished.
+    private abstract static class Simulated {
+        final Options options;
+        final String name;
+        final Map<Message.TYPE, Stats> stats = new EnumMap<>(Message.TYPE.class);
+        ConnectionHandler conn;
+        SessionInfo session;
+        long cycles;
+
+        Simulated(Options options, String name) {
+            this.options = options;
+            this.name = name;
+        }
+
+        // one pass of the workflow, from login to logout
+        abstract void cycle() throws StepFailed;
+
+        // the request that ends the session, for cleaning up after a failure
+        abstract Message logout();
+
+        void runUntil(long deadline) {
+            while (System.nanoTime() < deadline) {
+                try {
+                    if (conn == null || !conn.isRunning()) {
+                        if (conn != null) {
+                            conn.shutDown();
+                        }
+                        conn = connect(options);
+                    }
+                    cycle();
+                    cycles++;
+                } catch (StepFailed e) {
+                    if (session != null && conn.isRunning()) {
+                        conn.sendAndWait(logout());
+                    }
+                } catch (IllegalStateException e) {
+                    // could not connect; counted as an error of the next login
+                    stats(loginType()).error(false);
+                    think();
+                }
+                session = null;
+            }
+            if (conn != null) {
+                conn.shutDown();
+            }
+        }
+
+        abstract Message.TYPE loginType();
+
+        Stats stats(Message.TYPE type) {
+            return stats.computeIfAbsent(type, k -> new Stats());
+        }
+
+        // Thinks, sends the request and waits for its reply. Any reply but a
+        // failure is a success; no reply at all (timeout, connection lost) is
+        // an error without a latency.
+        Message step(Message request) throws StepFailed {
+            think();
+            Stats s = stats(request.getType());
+            long t0 = System.nanoTime();
+            Message reply;
+            try {
+                reply = conn.request(request, TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).join();
+            } catch (CompletionException e) {
+                s.error(false);
+                throw new StepFailed();
+            }
+            s.latency.record((System.nanoTime() - t0) / 1000);
+            if (reply instanceof FailureMessage) {
+                s.error(true);
+                throw new StepFailed();
+            }
+            return reply;
+        }
+
+        void think() {
+            if (options.thinkMillis <= 0) {
+                return;
+            }
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextLong(2 * options.thinkMillis + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static final class Atm extends Simulated {
+        private final String username;
+        private final String accountId;
+
+        Atm(Options options, String username, String accountId) {
+            super(options, "atm-" + username);
+            this.username = username;
+            this.accountId = accountId;
+        }
+
+        @Override
+        Message.TYPE loginType() {
+            return Message.TYPE.LOGIN_CLIENT;
+        }
+
+        @Override
+        void cycle() throws StepFailed {
+            session = step(new LoginMessage(Message.TYPE.LOGIN_CLIENT, username, "pw")).getSession();
+            step(new ProfileMessage(Message.TYPE.LOAD_PROFILE, session, username));
+            step(new AccountMessage(Message.TYPE.LOAD_ACCOUNT, session, username, accountId));
+            boolean withdraw = ThreadLocalRandom.current().nextInt(100) < options.withdrawPercent;
+            String amount = (1 + ThreadLocalRandom.current().nextInt(200)) + ".00";
+            step(new TransactionMessage(session, amount,
+                    withdraw ? Transaction.OPERATION.WITHDRAW : Transaction.OPERATION.DEPOSIT, accountId));
+            step(new AccountMessage(Message.TYPE.EXIT_ACCOUNT, session, username, accountId));
+            step(logout());
+        }
+
+        @Override
+        Message logout() {
+            return new LogoutMessage(Message.TYPE.LOGOUT_CLIENT, session);
+        }
+    }
+
+    private static final class Teller extends Simulated {
+        private final String[] credentials;
+        private final String customerPrefix;
+        private int created;
+
+        Teller(Options options, String[] credentials, String customerPrefix) {
+            super(options, "teller-" + credentials[0]);
+            this.credentials = credentials;
+            this.customerPrefix = customerPrefix;
+        }
+
+        @Override
+        Message.TYPE loginType() {
+            return Message.TYPE.LOGIN_TELLER;
+        }
+
+        @Override
+        void cycle() throws StepFailed {
+            session = step(new LoginMessage(Message.TYPE.LOGIN_TELLER, credentials[0], credentials[1])).getSession();
+            String username = customerPrefix + "new-" + credentials[0] + "-" + created++;
+            step(new ProfileMessage(Message.TYPE.CREATE_PROFILE, session, username, "pw", "555-0199", "1 New St.",
+                    "New Customer"));
+            step(new AccountMessage(session, username, AccountMessage.ACCOUNT_TYPE.CHECKING, null, 0));
+            ProfileMessage profile = (ProfileMessage) step(
+                    new ProfileMessage(Message.TYPE.LOAD_PROFILE, session, username));
+            String accountId = profile.getSummaries().get(0).getID();
+            step(new AccountMessage(Message.TYPE.LOAD_ACCOUNT, session, username, accountId));
+            if (options.atms > 0) {
+                String joint = customerPrefix + ThreadLocalRandom.current().nextInt(options.atms);
+                step(new ShareAccountMessage(Message.TYPE.SHARE_ACCOUNT, session, username, joint, accountId));
+            }
+            step(new AccountMessage(Message.TYPE.EXIT_ACCOUNT, session, username, accountId));
+            step(new ProfileMessage(Message.TYPE.EXIT_PROFILE, session, username));
+            step(logout());
+        }
+
+        @Override
+        Message logout() {
+            return new LogoutMessage(Message.TYPE.LOGOUT_TELLER, session);
+        }
+    }
+
+    private static final class Stats {
+        final Histogram latency = new Histogram();
+        long errors;
+        // errors without a latency: timed out, connection lost or not made
+        long unanswered;
+
+        void error(boolean answered) {
+            errors++;
+            if (!answered) {
+                unanswered++;
+            }
+        }
+
+        void add(Stats other) {
+            latency.add(other.latency);
+            errors += other.errors;
+            unanswered += other.unanswered;
+        }
+    }
+
+    // Latencies in microseconds, in buckets of 1/16 of a power of two: every
+    // recorded value is within about 6% of its bucket's lower bound, at any
+    // magnitude, in a fixed 1 KB of counts.
+    private static final class Histogram {
+        private static final int SUB_BUCKETS = 16;
+        private final long[] counts = new long[64 * SUB_BUCKETS];
+        private long total;
+        private long max;
+
+        void record(long micros) {
+            long v = Math.max(0, micros);
+            counts[index(v)]++;
+            total++;
+            max = Math.max(max, v);
+        }
+
+        private static int index(long v) {
+            if (v < SUB_BUCKETS) {
+                return (int) v;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(v); // >= 4
+            int sub = (int) (v >>> (exponent - 4)) & (SUB_BUCKETS - 1);
+            return (exponent - 3) * SUB_BUCKETS + sub;
+        }
+
+        // the smallest value that lands in the bucket
+        private static long lowerBound(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int exponent = index / SUB_BUCKETS + 3;
+            long sub = index % SUB_BUCKETS;
+            return (SUB_BUCKETS + sub) << (exponent - 4);
+        }
+
+        void add(Histogram other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            total += other.total;
+            max = Math.max(max, other.max);
+        }
+
+        long percentile(double p) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(p / 100 * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(lowerBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        // counts by power of two: "<= 1 ms" and so on, for the bars
+        long[] byPowerOfTwo() {
+            long[] bins = new long[64];
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    bins[64 - Long.numberOfLeadingZeros(lowerBound(i))] += counts[i];
+                }
+            }
+            return bins;
+        }
+    }
+
+    private static void report(PrintStream out, Map<Message.TYPE, Stats> total, long cycles, double seconds,
+            boolean histogram) {
+        long requests = 0;
+        long errors = 0;
+        out.printf("%n%-18s %9s %8s %8s %9s %9s %9s %9s %9s%n", "request", "count", "errors", "err %",
+                "p50 us", "p90 us", "p99 us", "p99.9 us", "max us");
+        for (Map.Entry<Message.TYPE, Stats> e : total.entrySet()) {
+            Stats s = e.getValue();
+            // timeouts and lost connections have no latency but count as sent
+            long count = s.latency.total + s.unanswered;
+            requests += count;
+            errors += s.errors;
+            out.printf("%-18s %9d %8d %8.2f %9d %9d %9d %9d %9d%n", e.getKey(), count, s.errors,
+                    count == 0 ? 0.0 : 100.0 * s.errors / count, s.latency.percentile(50),
+                    s.latency.percentile(90), s.latency.percentile(99), s.latency.percentile(99.9), s.latency.max);
+        }
+        out.printf("%n%d requests (%.0f/s), %d errors (%.2f%%), %d complete workflows (%.0f/s) in %.1f s%n",
+                requests, requests / seconds, errors, requests == 0 ? 0.0 : 100.0 * errors / requests, cycles,
+                cycles / seconds, seconds);
+
+        if (!histogram) {
+            return;
+        }
+        for (Map.Entry<Message.TYPE, Stats> e : total.entrySet()) {
+            Histogram h = e.getValue().latency;
+            if (h.total == 0) {
+                continue;
+            }
+            out.printf("%n%s latency%n", e.getKey());
+            long[] bins = h.byPowerOfTwo();
+            long most = 0;
+            for (long b : bins) {
+                most = Math.max(most, b);
+            }
+            for (int i = 0; i < bins.length; i++) {
+                if (bins[i] == 0) {
+                    continue;
+                }
+                int bar = (int) Math.max(1, 50 * bins[i] / most);
+                out.printf("  < %9d us %9d %s%n", 1L << i, bins[i], "#".repeat(bar));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.bankapp.bench;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.bankapp.client.ConnectionHandler;
+import com.bankapp.common.LoginMessage;
+import com.bankapp.common.Message;
+import com.bankapp.common.ProfileMessage;
+import com.bankapp.common.SessionInfo;
+import com.bankapp.common.SuccessMessage;
+import com.bankapp.server.CentralServer;
+
+/*
+ * Per-login cost as the number of open sessions grows. An in-process
+ * CentralServer is given <logins> client profiles, then each client logs in
+ * on its own connection and stays logged in. Reports the mean login round
+ * trip (connecting is not timed) for every <step> logins, i.e. with 0, step,
+ * 2*step, ... sessions already open; the cost should not grow with the
+ * session count.
+ *
+ *   java -cp <classes> com.bankapp.bench.LoginStormBench [logins] [step] [port]
+ *
+ * The open-file limit (ulimit -n) must allow 2 descriptors per login.
+ */
+public class LoginStormBench {
+
+    public static void main(String[] args) throws Exception {
+        int logins = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int step = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 7960;
+
+        PrintStream console = System.out;
+        // the server logs every connect; keep the report readable
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        // virtual threads so thousands of idle connections stay cheap
+        String[] serverArgs = { "--port=" + port, "--journal=off", "--executor=virtual",
+                "--data-dir=" + Files.createTempDirectory("bankapp-login") };
+        Thread server = new Thread(() -> CentralServer.main(serverArgs), "bench-server-" + port);
+        server.setDaemon(true);
+        server.start();
+        Thread.sleep(500);
+
+        Socket tellerSocket = new Socket("localhost", port);
+        tellerSocket.setTcpNoDelay(true);
+        ConnectionHandler teller = new ConnectionHandler(tellerSocket);
+        teller.run();
+        SessionInfo session = teller.sendAndWait(
+                new LoginMessage(Message.TYPE.LOGIN_TELLER, "teller1", "letmein")).getSession();
+        for (int i = 0; i < logins; i++) {
+            Message reply = teller.sendAndWait(new ProfileMessage(Message.TYPE.CREATE_PROFILE, session,
+                    "storm" + i, "pw", "", "", "Storm " + i));
+            if (!(reply instanceof SuccessMessage)) {
+                throw new IllegalStateException("Setup failed: " + reply);
+            }
+        }
+
+        console.printf("%14s %14s%n", "open sessions", "login us");
+        List<Conn> open = new ArrayList<>(logins);
+        for (int from = 0; from < logins; from += step) {
+            int to = Math.min(logins, from + step);
+            // connect first so only the login itself is timed
+            for (int i = from; i < to; i++) {
+                open.add(new Conn(port));
+            }
+            long start = System.nanoTime();
+            for (int i = from; i < to; i++) {
+                Message reply = open.get(i).roundTrip(new LoginMessage(Message.TYPE.LOGIN_CLIENT, "storm" + i, "pw"));
+                if (!(reply instanceof SuccessMessage) || reply.getSession() == null) {
+                    throw new IllegalStateException("Login " + i + " failed: " + reply);
+                }
+            }
+            console.printf("%14d %14d%n", from, (System.nanoTime() - start) / 1000 / (to - from));
+        }
+
+        teller.shutDown();
+        for (Conn conn : open) {
+            conn.close();
+        }
+        // server shutdown hooks stay muted
+        System.exit(0);
+    }
+
+    // one bare client connection; no ConnectionHandler, so no reader thread
+    // per login on the client side
+    private static final class Conn {
+        private final Socket socket;
+        private final ObjectOutputStream out;
+        private final ObjectInputStream in;
+
+        Conn(int port) throws IOException {
+            this.socket = new Socket("localhost", port);
+            socket.setTcpNoDelay(true);
+            out = new ObjectOutputStream(socket.getOutputStream());
+            out.flush();
+            in = new ObjectInputStream(socket.getInputStream());
+        }
+
+        Message roundTrip(Message msg) throws IOException, ClassNotFoundException {
+            out.writeObject(msg);
+            out.flush();
+            return (Message) in.readObject();
+        }
+
+        void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.bankapp.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import com.bankapp.common.AccountMessage;
+import com.bankapp.common.Transaction;
+import com.bankapp.server.Database;
+import com.bankapp.server.Journal;
+import com.bankapp.server.ServerConfig;
+
+/*
+ * Server restart time with and without a snapshot. Builds a journal holding
+ * N accounts (four per profile, each with an opening deposit and two more
+ * transactions), then reports:
+ *
+ *   journal only        recover() replaying the whole journal
+ *   checkpoint          writing a snapshot of that state (the server's log
+ *                       line shows how long changes were held off)
+ *   snapshot + tail     recover() after the checkpoint plus <tail> newer
+ *                       transactions
+ *
+ *   java -Xmx4g -cp <classes> com.bankapp.bench.RestartBench [accounts] [tail]
+ *
+ * Everything goes to a temporary directory that is removed afterwards.
+ */
+public class RestartBench {
+    private static final int ACCOUNTS_PER_PROFILE = 4;
+
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int tail = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+
+        Path dir = Files.createTempDirectory("bankapp-restart");
+        ServerConfig config = ServerConfig.fromArgs(new String[] {
+            "--storage=disk", "--data-dir=" + dir, "--fsync=none", "--checkpoint-seconds=0" });
+
+        PrintStream console = System.out;
+        // recover() and checkpoint() log to stdout; the report prints its own timings
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            Database db = new Database(config);
+            db.recover();
+            populate(db.getJournal(), accounts);
+            db.getJournal().close();
+            db = null;
+            console.printf("%d accounts, %d profiles, journal %,d KB%n",
+                    accounts, (accounts + ACCOUNTS_PER_PROFILE - 1) / ACCOUNTS_PER_PROFILE, size(dir, "journal-") / 1024);
+
+            long start = System.nanoTime();
+            db = new Database(config);
+            db.recover();
+            console.printf("%-18s %8d ms%n", "journal only", (System.nanoTime() - start) / 1_000_000);
+
+            // its own log line carries the pause
+            System.setOut(console);
+            start = System.nanoTime();
+            db.checkpoint();
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            console.printf("%-18s %8d ms  snapshot %,d KB%n", "checkpoint",
+                    (System.nanoTime() - start) / 1_000_000, size(dir, "snapshot") / 1024);
+
+            for (int i = 0; i < tail; i++) {
+                String id = "ACC" + (i % accounts);
+                db.getJournal().transaction(id, 3 + i / accounts, new Transaction("1.00", Transaction.OPERATION.DEPOSIT), 0);
+            }
+            db.getJournal().close();
+            db = null;
+            System.gc();
+
+            start = System.nanoTime();
+            db = new Database(config);
+            db.recover();
+            console.printf("%-18s %8d ms  (%d tail records)%n", "snapshot + tail",
+                    (System.nanoTime() - start) / 1_000_000, tail);
+            db.getJournal().close();
+        } finally {
+            System.setOut(console);
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static void populate(Journal journal, int accounts) {
+        for (int i = 0; i < accounts; i++) {
+            String username = "user" + (i / ACCOUNTS_PER_PROFILE);
+            if (i % ACCOUNTS_PER_PROFILE == 0) {
+                journal.createProfile(username, "pw", "555-0100", "1 Main St", "User " + i);
+            }
+            String id = "ACC" + i;
+            journal.createAccount(username, id, AccountMessage.ACCOUNT_TYPE.CHECKING, 0, null);
+            journal.transaction(id, 0, new Transaction("500.00", Transaction.OPERATION.DEPOSIT), 0);
+            journal.transaction(id, 1, new Transaction("-25.50", Transaction.OPERATION.WITHDRAW), 0);
+            journal.transaction(id, 2, new Transaction("12.25", Transaction.OPERATION.DEPOSIT), 0);
+        }
+    }
+
+    private static long size(Path dir, String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().startsWith(prefix))
+                    .mapToLong(p -> p.toFile().length()).sum();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.bankapp.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.bankapp.common.Account;
+import com.bankapp.common.AccountMessage;
+import com.bankapp.common.CheckingAccount;
+import com.bankapp.common.Transaction;
+import com.bankapp.server.Database;
+import com.bankapp.server.Journal;
+import com.bankapp.server.ServerConfig;
+import com.bankapp.server.Storage;
+
+/*
+ * The same load against every storage engine (--storage=memory and
+ * --storage=disk): <accounts> accounts take <transactions> deposits between
+ * them, each applied to the account and journaled the way the server does
+ * it, all in flight at once as with many clients; then the time to recover
+ * them on the next start.
+ *
+ *   java -cp <classes> com.bankapp.bench.StorageBench [accounts] [transactions] [fsync]
+ *
+ * That every engine recovers what it should is checked by
+ * StorageConformanceTest.
+ */
+public class StorageBench {
+    private static final String[] ENGINES = { "memory", "disk" };
+
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int transactions = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        String fsync = args.length > 2 ? args[2] : "group";
+
+        PrintStream console = System.out;
+        // the storage logs replays and checkpoints; keep the report readable
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        console.printf("%-8s %10s %10s %12s %12s%n", "engine", "accounts", "deposits", "deposits/s", "recover ms");
+        for (String engine : ENGINES) {
+            long[] r = throughput(engine, fsync, accounts, transactions);
+            console.printf("%-8s %10d %10d %12d %12d%n", engine, accounts, transactions, r[0], r[1]);
+        }
+    }
+
+    private static Database open(String engine, Path dir, String fsync) throws Exception {
+        ServerConfig config = ServerConfig.fromArgs(new String[] { "--storage=" + engine,
+                "--data-dir=" + dir, "--fsync=" + fsync });
+        return new Database(config);
+    }
+
+    // {deposits per second, recovery millis}
+    private static long[] throughput(String engine, String fsync, int accounts, int transactions) throws Exception {
+        Path dir = Files.createTempDirectory("bankapp-storage");
+        Database db = open(engine, dir, fsync);
+        Storage storage = db.getStorage();
+        storage.recover();
+        Journal journal = storage.journal();
+        Account[] opened = new Account[accounts];
+        for (int i = 0; i < accounts; i++) {
+            String id = "ACC" + storage.allocateAccountId();
+            opened[i] = new CheckingAccount();
+            opened[i].setID(id);
+            storage.accounts().put(id, opened[i]);
+            journal.createAccount("bench", id, AccountMessage.ACCOUNT_TYPE.CHECKING, 0, null);
+        }
+
+        List<CompletableFuture<Void>> written = new ArrayList<>(transactions);
+        long start = System.nanoTime();
+        for (int i = 0; i < transactions; i++) {
+            Account account = opened[i % accounts];
+            Transaction tx = new Transaction("1.00", Transaction.OPERATION.DEPOSIT);
+            int sequence = account.getTransactionCount();
+            account.addTransaction(tx);
+            written.add(journal.transaction(account.getID(), sequence, tx, 0));
+        }
+        CompletableFuture.allOf(written.toArray(new CompletableFuture<?>[0])).join();
+        long perSecond = (long) (transactions / ((System.nanoTime() - start) / 1e9));
+
+        // as after a crash, so the whole journal is replayed
+        storage.close();
+        start = System.nanoTime();
+        db = open(engine, dir, fsync);
+        db.getStorage().recover();
+        long recoverMillis = (System.nanoTime() - start) / 1_000_000;
+        db.getStorage().close();
+        return new long[] { perSecond, recoverMillis };
+    }
+}
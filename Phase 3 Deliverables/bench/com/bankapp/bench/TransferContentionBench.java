@@ -0,0 +1,213 @@
+package com.bankapp.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.bankapp.client.ConnectionHandler;
+import com.bankapp.common.AccountMessage;
+import com.bankapp.common.AccountSummary;
+import com.bankapp.common.LoginMessage;
+import com.bankapp.common.Message;
+import com.bankapp.common.ProfileMessage;
+import com.bankapp.common.SessionInfo;
+import com.bankapp.common.ShareAccountMessage;
+import com.bankapp.common.SuccessMessage;
+import com.bankapp.common.Transaction;
+import com.bankapp.common.TransactionBatchMessage;
+import com.bankapp.common.TransferMessage;
+import com.bankapp.common.TransferReceiptMessage;
+import com.bankapp.server.CentralServer;
+
+/*
+ * TRANSFER under contention. For each hot-set size an in-process
+ * CentralServer is started, a teller opens that many checking accounts,
+ * funds them and shares them with every client, and then every client
+ * transfers random amounts between random pairs of the hot accounts, in both
+ * directions, all at once. Reports throughput and round-trip latency, and
+ * checks that the hot accounts still hold exactly what they were funded
+ * with (every transfer moved money without creating or losing any).
+ *
+ *   java -cp <classes> com.bankapp.bench.TransferContentionBench [clients] [transfersPerClient] [basePort]
+ *
+ * Exits non-zero if the funds are not conserved.
+ */
+public class TransferContentionBench {
+    private static final int[] HOT_ACCOUNTS = { 2, 4, 16 };
+    private static final BigDecimal FUNDING = new BigDecimal("1000000.00");
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int perClient = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int basePort = args.length > 2 ? Integer.parseInt(args[2]) : 7950;
+
+        PrintStream console = System.out;
+        // the server logs every connect; keep the report readable
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        console.printf("%-6s %8s %10s %10s %10s %10s %10s %10s%n",
+                "hot", "clients", "transfers", "failed", "xfer/s", "p50 us", "p99 us", "conserved");
+        boolean ok = true;
+        for (int i = 0; i < HOT_ACCOUNTS.length; i++) {
+            Result r = run(HOT_ACCOUNTS[i], clients, perClient, basePort + i);
+            console.printf("%-6d %8d %10d %10d %10.0f %10d %10d %10s%n",
+                    HOT_ACCOUNTS[i], clients, r.transfers, r.failed, r.transfers / r.seconds, r.p50, r.p99, r.conserved);
+            ok &= r.conserved;
+        }
+        // server shutdown hooks stay muted
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static final class Result {
+        int transfers;
+        int failed;
+        double seconds;
+        long p50;
+        long p99;
+        boolean conserved;
+    }
+
+    private static Result run(int hot, int clients, int perClient, int port) throws Exception {
+        // fsync cost would swamp the locking being measured
+        String[] serverArgs = { "--port=" + port, "--journal=off",
+                "--data-dir=" + Files.createTempDirectory("bankapp-transfer") };
+        Thread server = new Thread(() -> CentralServer.main(serverArgs), "bench-server-" + port);
+        server.setDaemon(true);
+        server.start();
+        Thread.sleep(500);
+
+        ConnectionHandler teller = connect(port);
+        SessionInfo session = expect(teller.sendAndWait(
+                new LoginMessage(Message.TYPE.LOGIN_TELLER, "teller1", "letmein"))).getSession();
+        List<String> hotIds = openHotAccounts(teller, session, hot, clients);
+
+        // every client transfers between random pairs of the hot accounts
+        List<ConnectionHandler> conns = new ArrayList<>(clients);
+        List<SessionInfo> sessions = new ArrayList<>(clients);
+        for (int c = 0; c < clients; c++) {
+            ConnectionHandler conn = connect(port);
+            conns.add(conn);
+            sessions.add(expect(conn.sendAndWait(
+                    new LoginMessage(Message.TYPE.LOGIN_CLIENT, "user" + c, "pw"))).getSession());
+        }
+        long[] micros = new long[clients * perClient];
+        AtomicInteger failed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(clients);
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            Thread t = new Thread(() -> {
+                Random random = new Random(client);
+                try {
+                    start.await();
+                    for (int i = 0; i < perClient; i++) {
+                        int from = random.nextInt(hot);
+                        int to = (from + 1 + random.nextInt(hot - 1)) % hot;
+                        String amount = (1 + random.nextInt(500)) + "." + (10 + random.nextInt(90));
+                        long t0 = System.nanoTime();
+                        Message reply = conns.get(client).sendAndWait(new TransferMessage(sessions.get(client),
+                                hotIds.get(from), hotIds.get(to), amount));
+                        micros[client * perClient + i] = (System.nanoTime() - t0) / 1000;
+                        if (!(reply instanceof TransferReceiptMessage)) {
+                            failed.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "bench-client-" + c);
+            t.start();
+        }
+        long t0 = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - t0;
+
+        Result r = new Result();
+        r.transfers = micros.length;
+        r.failed = failed.get();
+        r.seconds = elapsed / 1e9;
+        Arrays.sort(micros);
+        r.p50 = micros[micros.length / 2];
+        r.p99 = micros[(int) (micros.length * 0.99)];
+        r.conserved = totalOf(teller, session).compareTo(FUNDING.multiply(BigDecimal.valueOf(hot))) == 0;
+
+        for (ConnectionHandler conn : conns) {
+            conn.shutDown();
+        }
+        teller.shutDown();
+        return r;
+    }
+
+    // Creates the clients and an owner profile with <hot> funded checking
+    // accounts, shared with every client. Returns the accounts' ids.
+    private static List<String> openHotAccounts(ConnectionHandler teller, SessionInfo session, int hot, int clients) {
+        expect(teller.sendAndWait(new ProfileMessage(Message.TYPE.CREATE_PROFILE, session, "owner", "pw", "", "", "Owner")));
+        for (int c = 0; c < clients; c++) {
+            expect(teller.sendAndWait(new ProfileMessage(Message.TYPE.CREATE_PROFILE, session, "user" + c, "pw", "", "",
+                    "User " + c)));
+        }
+        for (int i = 0; i < hot; i++) {
+            expect(teller.sendAndWait(new AccountMessage(session, "owner", AccountMessage.ACCOUNT_TYPE.CHECKING, null, 0)));
+        }
+
+        List<String> ids = new ArrayList<>();
+        List<TransactionBatchMessage.Entry> funding = new ArrayList<>();
+        for (AccountSummary summary : ownerAccounts(teller, session)) {
+            ids.add(summary.getID());
+            funding.add(new TransactionBatchMessage.Entry(summary.getID(), FUNDING.toPlainString(),
+                    Transaction.OPERATION.DEPOSIT));
+        }
+        expect(teller.sendAndWait(new TransactionBatchMessage(session, funding, true)));
+
+        for (String id : ids) {
+            expect(teller.sendAndWait(new AccountMessage(Message.TYPE.LOAD_ACCOUNT, session, "owner", id)));
+            for (int c = 0; c < clients; c++) {
+                expect(teller.sendAndWait(new ShareAccountMessage(Message.TYPE.SHARE_ACCOUNT, session, "owner",
+                        "user" + c, id)));
+            }
+            expect(teller.sendAndWait(new AccountMessage(Message.TYPE.EXIT_ACCOUNT, session, "owner", id)));
+        }
+        return ids;
+    }
+
+    private static BigDecimal totalOf(ConnectionHandler teller, SessionInfo session) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (AccountSummary summary : ownerAccounts(teller, session)) {
+            total = total.add(new BigDecimal(summary.getBalance()));
+        }
+        return total;
+    }
+
+    private static List<AccountSummary> ownerAccounts(ConnectionHandler teller, SessionInfo session) {
+        ProfileMessage profile = (ProfileMessage) expect(teller.sendAndWait(
+                new ProfileMessage(Message.TYPE.LOAD_PROFILE, session, "owner")));
+        expect(teller.sendAndWait(new ProfileMessage(Message.TYPE.EXIT_PROFILE, session, "owner")));
+        return profile.getSummaries();
+    }
+
+    private static ConnectionHandler connect(int port) throws Exception {
+        Socket socket = new Socket("localhost", port);
+        socket.setTcpNoDelay(true);
+        ConnectionHandler handler = new ConnectionHandler(socket);
+        handler.run();
+        return handler;
+    }
+
+    private static Message expect(Message reply) {
+        if (!(reply instanceof SuccessMessage) && !(reply instanceof ProfileMessage) && !(reply instanceof AccountMessage)) {
+            throw new IllegalStateException("Setup failed: " + reply);
+        }
+        return reply;
+    }
+}
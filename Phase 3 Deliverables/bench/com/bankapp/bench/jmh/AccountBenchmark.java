@@ -0,0 +1,81 @@
+package com.bankapp.bench.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.bankapp.common.Account;
+import com.bankapp.common.CheckingAccount;
+import com.bankapp.common.CreditLine;
+import com.bankapp.common.Money;
+import com.bankapp.common.SavingAccount;
+import com.bankapp.common.Transaction;
+
+/*
+ * Account.addTransaction for each kind of account: the transaction is built
+ * the way the server builds it, then applied, alternately a 1.00 deposit and
+ * a 1.00 withdrawal. Each subclass adds its own check (the saving account's
+ * withdrawal count, the credit line's limit) on top of the append.
+ *
+ * A fresh account is opened every RENEW_EVERY transactions, so the history
+ * stays the size of a busy account's rather than growing for the whole run;
+ * the opening is part of what is measured, once per RENEW_EVERY.
+ *
+ *   java -jar target/benchmarks.jar AccountBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountBenchmark {
+    private static final int RENEW_EVERY = 4096;
+    private static final Money AMOUNT = Money.parse("1.00");
+
+    @Param({ "CHECKING", "SAVING", "CREDIT_LINE" })
+    public String type;
+
+    private Account account;
+    private int applied;
+
+    @Setup
+    public void setUp() {
+        account = open();
+    }
+
+    private Account open() {
+        switch (type) {
+            case "SAVING":
+                // no withdrawal limit in the way of the measurement
+                return new SavingAccount(Integer.MAX_VALUE);
+            case "CREDIT_LINE":
+                return new CreditLine("5000.00");
+            default:
+                return new CheckingAccount();
+        }
+    }
+
+    @Benchmark
+    public Account addTransaction() {
+        if (++applied == RENEW_EVERY) {
+            account = open();
+            applied = 0;
+        }
+        Transaction tx = (applied & 1) == 0
+                ? new Transaction(AMOUNT, Transaction.OPERATION.DEPOSIT)
+                : new Transaction(AMOUNT.negate(), Transaction.OPERATION.WITHDRAW);
+        account.addTransaction(tx);
+        return account;
+    }
+}
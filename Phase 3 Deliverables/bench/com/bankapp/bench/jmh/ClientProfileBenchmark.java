@@ -0,0 +1,100 @@
+package com.bankapp.bench.jmh;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.bankapp.common.ClientProfile;
+
+/*
+ * Account membership in ClientProfile at 10, 1k and 100k accounts per
+ * profile, against the list it replaced (contains() to look up, a full sort
+ * on every add):
+ *
+ *   lookup     getAccountID, which authorizes every request on an account
+ *   addRemove  linking and unlinking an account (SHARE_ACCOUNT, CREATE/DELETE_ACCOUNT)
+ *   list       getAccountIDs right after a change (LOAD_PROFILE's summaries)
+ *
+ *   java -jar target/benchmarks.jar ClientProfileBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientProfileBenchmark {
+    @Param({ "10", "1000", "100000" })
+    public int accounts;
+
+    private ClientProfile profile;
+    private final List<String> legacy = new ArrayList<>();
+    private String[] ids;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        profile = new ClientProfile("corp", "pw", "", "", "Corp");
+        ids = new String[accounts];
+        for (int i = 0; i < accounts; i++) {
+            ids[i] = "ACC" + i;
+            profile.addAccountID(ids[i]);
+            legacy.add(ids[i]);
+        }
+        Collections.sort(legacy);
+    }
+
+    private String nextId() {
+        next = next + 1 == ids.length ? 0 : next + 1;
+        return ids[next];
+    }
+
+    @Benchmark
+    public String lookup() {
+        return profile.getAccountID(nextId());
+    }
+
+    @Benchmark
+    public String lookupLegacy() {
+        String id = nextId();
+        return legacy.contains(id) ? id : null;
+    }
+
+    @Benchmark
+    public ClientProfile addRemove() {
+        profile.addAccountID("NEW");
+        profile.removeAccountID("NEW");
+        return profile;
+    }
+
+    @Benchmark
+    public List<String> addRemoveLegacy() {
+        if (!legacy.contains("NEW")) {
+            legacy.add("NEW");
+            Collections.sort(legacy);
+        }
+        legacy.remove("NEW");
+        Collections.sort(legacy);
+        return legacy;
+    }
+
+    @Benchmark
+    public List<String> list() {
+        profile.removeAccountID("NEW");
+        profile.addAccountID("NEW");
+        return profile.getAccountIDs();
+    }
+}
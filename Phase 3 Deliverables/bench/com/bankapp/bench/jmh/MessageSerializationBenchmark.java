@@ -0,0 +1,168 @@
+package com.bankapp.bench.jmh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.bankapp.bench.CodecBench;
+import com.bankapp.common.BinaryMessageCodec;
+import com.bankapp.common.Message;
+import com.bankapp.common.MessageCodec;
+import com.bankapp.common.SerializedMessageCodec;
+
+/*
+ * One message of each type (CodecBench's samples) written and read back:
+ *
+ *   objectStream  through an ObjectOutputStream/ObjectInputStream pair kept
+ *                 open, as a legacy connection does, so class descriptors
+ *                 are sent once; the pair is reopened every REOPEN_EVERY
+ *                 messages, as it holds on to everything written
+ *   serialized    SerializedMessageCodec encode + decode (a frame each)
+ *   binary        BinaryMessageCodec encode + decode
+ *
+ * A new message is built for every round trip, as a connection sends a new
+ * one each time; building it is part of what is measured.
+ *
+ *   java -jar target/benchmarks.jar MessageSerializationBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageSerializationBenchmark {
+    private static final int REOPEN_EVERY = 1024;
+
+    @Param({ "login", "logout", "success", "failure", "session timeout", "transaction", "receipt",
+            "batch 20 entries", "batch result 20", "transfer", "transfer receipt", "share", "account request",
+            "profile request", "profile 5 accts", "saving 10 txns", "credit 10 txns", "checking 100 txns",
+            "checking 1000 txns" })
+    public String message;
+
+    private Supplier<Message> sample;
+    private final Pipe pipe = new Pipe();
+    private ObjectOutputStream out;
+    private ObjectInputStream in;
+    private int sent;
+
+    @Setup
+    public void setUp() throws IOException {
+        sample = CodecBench.samples().get(message);
+        if (sample == null) {
+            throw new IllegalArgumentException("No sample named " + message);
+        }
+        reopen();
+    }
+
+    private void reopen() throws IOException {
+        pipe.clear();
+        out = new ObjectOutputStream(pipe);
+        out.flush();
+        in = new ObjectInputStream(pipe.in);
+        sent = 0;
+    }
+
+    @Benchmark
+    public Object objectStream() throws IOException, ClassNotFoundException {
+        if (++sent == REOPEN_EVERY) {
+            reopen();
+        }
+        out.writeObject(sample.get());
+        out.flush();
+        Object read = in.readObject();
+        pipe.clear();
+        return read;
+    }
+
+    @Benchmark
+    public Message serialized() throws IOException {
+        return roundTrip(SerializedMessageCodec.INSTANCE);
+    }
+
+    @Benchmark
+    public Message binary() throws IOException {
+        return roundTrip(BinaryMessageCodec.INSTANCE);
+    }
+
+    private Message roundTrip(MessageCodec codec) throws IOException {
+        byte[] payload = codec.encode(sample.get());
+        return codec.decode(payload, 0, payload.length);
+    }
+
+    // What one stream writes and the other reads, in one reused buffer. The
+    // reader only ever gets what has been written, as from a socket.
+    private static final class Pipe extends OutputStream {
+        private byte[] buf = new byte[1 << 16];
+        private int count;
+        private int pos;
+
+        final InputStream in = new InputStream() {
+            @Override
+            public int read() {
+                return pos < count ? buf[pos++] & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (pos == count) {
+                    return -1;
+                }
+                int n = Math.min(len, count - pos);
+                System.arraycopy(buf, pos, b, off, n);
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return count - pos;
+            }
+        };
+
+        @Override
+        public void write(int b) {
+            ensure(1);
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensure(len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        private void ensure(int more) {
+            if (count + more > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + more));
+            }
+        }
+
+        // once everything written has been read
+        void clear() {
+            count = 0;
+            pos = 0;
+        }
+    }
+}
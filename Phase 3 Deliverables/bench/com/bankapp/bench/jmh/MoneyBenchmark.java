@@ -0,0 +1,68 @@
+package com.bankapp.bench.jmh;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.bankapp.common.Money;
+
+/*
+ * The server's per-transaction money arithmetic, BigDecimal versus Money:
+ * parse the amount the client typed, negate it for a withdrawal, check it
+ * against the credit limit and add it to the balance. Run with the GC
+ * profiler to see the allocation per transaction:
+ *
+ *   java -jar target/benchmarks.jar MoneyBenchmark -prof gc
+ *
+ * gc.alloc.rate.norm is bytes allocated per operation (one deposit plus one
+ * withdrawal).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoneyBenchmark {
+    private final String deposit = "125.40";
+    private final String withdrawal = "40.15";
+
+    private BigDecimal decimalBalance = new BigDecimal("1500.00");
+    private final BigDecimal decimalLimit = new BigDecimal("2000.00");
+
+    private Money moneyBalance = Money.parse("1500.00");
+    private final Money moneyLimit = Money.parse("2000.00");
+
+    @Benchmark
+    public BigDecimal bigDecimal() {
+        BigDecimal in = new BigDecimal(deposit);
+        decimalBalance = decimalBalance.add(in);
+
+        BigDecimal out = new BigDecimal(withdrawal).negate();
+        if (decimalBalance.add(out).compareTo(decimalLimit.negate()) >= 0) {
+            decimalBalance = decimalBalance.add(out);
+        }
+        return decimalBalance;
+    }
+
+    @Benchmark
+    public Money money() {
+        Money in = Money.parse(deposit);
+        moneyBalance = moneyBalance.plus(in);
+
+        Money out = Money.parse(withdrawal).negate();
+        if (Math.addExact(moneyBalance.getCents(), out.getCents()) >= -moneyLimit.getCents()) {
+            moneyBalance = moneyBalance.plus(out);
+        }
+        return moneyBalance;
+    }
+}
@@ -0,0 +1,154 @@
+package com.bankapp.bench.jmh;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.bankapp.common.AccountMessage;
+import com.bankapp.common.LoginMessage;
+import com.bankapp.common.Message;
+import com.bankapp.common.ProfileMessage;
+import com.bankapp.common.SessionInfo;
+import com.bankapp.common.SuccessMessage;
+import com.bankapp.common.Transaction;
+import com.bankapp.common.TransactionMessage;
+import com.bankapp.server.CentralServer;
+import com.bankapp.server.ClientConnection;
+import com.bankapp.server.ServerConfig;
+
+/*
+ * CentralServer's request handlers without the network: an in-memory server
+ * (--storage=memory) is sent requests through handleMessage on a fake
+ * connection that hands back the reply, as alice on her ATM:
+ *
+ *   transaction  a TRANSACTION on ACC0, alternately 1.00 in and 1.00 out;
+ *                it runs on the account's lane, so this includes the hop
+ *   loadProfile  LOAD_PROFILE (the ATM's account list)
+ *   loadAccount  LOAD_ACCOUNT of ACC0 (its first page of history)
+ *
+ * with ACC0 holding <history> transactions to begin with. Reports
+ * throughput, and latency percentiles from the sampled mode; add the GC
+ * profiler for the allocation rate (gc.alloc.rate.norm is bytes per request):
+ *
+ *   java -jar target/benchmarks.jar ServerHandlerBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServerHandlerBenchmark {
+    @Param({ "10", "1000" })
+    public int history;
+
+    private CentralServer server;
+    private final FakeConnection connection = new FakeConnection();
+    private SessionInfo session;
+    private boolean withdraw;
+
+    @Setup
+    public void setUp() {
+        server = new CentralServer(ServerConfig.fromArgs(new String[] { "--storage=memory" }));
+        session = call(new LoginMessage(Message.TYPE.LOGIN_CLIENT, "alice", "pass123")).getSession();
+        // the seed deposit is the first
+        for (int i = 1; i < history; i++) {
+            transaction();
+        }
+    }
+
+    @Benchmark
+    public Message transaction() {
+        // alternate, so the balance stays where it started
+        withdraw = !withdraw;
+        return expect(call(new TransactionMessage(session, "1.00",
+                withdraw ? Transaction.OPERATION.WITHDRAW : Transaction.OPERATION.DEPOSIT, "ACC0")));
+    }
+
+    @Benchmark
+    public Message loadProfile() {
+        return expect(call(new ProfileMessage(Message.TYPE.LOAD_PROFILE, session, "alice")));
+    }
+
+    @Benchmark
+    public Message loadAccount() {
+        return expect(call(new AccountMessage(Message.TYPE.LOAD_ACCOUNT, session, "alice", "ACC0")));
+    }
+
+    private Message call(Message request) {
+        server.handleMessage(request, connection);
+        return connection.reply();
+    }
+
+    // a failure would be measured as if it were the real work
+    private static Message expect(Message reply) {
+        if (!(reply instanceof SuccessMessage) && !(reply instanceof ProfileMessage)
+                && !(reply instanceof AccountMessage)) {
+            throw new IllegalStateException("Request failed: " + reply);
+        }
+        return reply;
+    }
+
+    // stands in for a ClientHandler: replies are queued for the benchmark
+    // thread instead of being written to a socket
+    private static final class FakeConnection implements ClientConnection {
+        private final BlockingQueue<Message> replies = new LinkedBlockingQueue<>();
+        private volatile SessionInfo session;
+        private volatile boolean authenticated;
+
+        Message reply() {
+            try {
+                return replies.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void sendMessage(Message msg) {
+            replies.add(msg);
+        }
+
+        @Override
+        public void shutDown() {
+        }
+
+        @Override
+        public void closeAfter(Message last) {
+            replies.add(last);
+        }
+
+        @Override
+        public boolean isAuthenticated() {
+            return authenticated;
+        }
+
+        @Override
+        public void setAuthenticated(boolean authenticated) {
+            this.authenticated = authenticated;
+        }
+
+        @Override
+        public SessionInfo getSession() {
+            return session;
+        }
+
+        @Override
+        public void setSession(SessionInfo session) {
+            this.session = session;
+        }
+    }
+}
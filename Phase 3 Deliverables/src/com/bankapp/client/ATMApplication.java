@@ -17,6 +17,9 @@ import com.bankapp.common.SessionInfo;
 import com.bankapp.common.SuccessMessage;
 import com.bankapp.common.Transaction;
 import com.bankapp.common.TransactionMessage;
+import com.bankapp.common.TransactionReceiptMessage;
+import com.bankapp.common.TransferMessage;
+import com.bankapp.common.TransferReceiptMessage;
 import com.bankapp.common.Message.TYPE;
 import com.bankapp.common.Transaction.OPERATION;
 
@@ -24,6 +27,9 @@ public class ATMApplication {
     private ConnectionHandler handler;
     private SessionInfo session;
     private Account account;
+    // sequence number of the first transaction held in account, and how many the server has
+    private int historyStart;
+    private int historyTotal;
     private ClientProfile client;
     private static final BigDecimal ATM_TRANSACTION_LIMIT = new BigDecimal("9999.99");
 
@@ -87,25 +93,60 @@ public class ATMApplication {
         return performTransaction(amount, OPERATION.DEPOSIT);
     }
 
+    // moves money from the open account into another account on the profile;
+    // the server applies both sides or neither
+    public Message transfer(String toAccountID, String amount) {
+        try {
+			BigDecimal check = new BigDecimal(amount);
+            if (check.compareTo(BigDecimal.ZERO) <= 0) {
+                return new FailureMessage("Error: entered negative number");
+            }
+            if (check.compareTo(ATM_TRANSACTION_LIMIT) > 0){
+                return new FailureMessage("Amount too high. please see teller");
+            }
+		} catch (NumberFormatException e) {
+			return new FailureMessage("Please enter a real number");
+		}
+
+        try {
+            Message response = handler.sendAndWait(new TransferMessage(session, account.getID(), toAccountID, amount));
+            if (response instanceof TransferReceiptMessage receipt) {
+                // only the open account is held locally: take the debit leg
+                return applyReceipt(receipt.getDebit());
+            } else if (response instanceof FailureMessage) {
+                System.out.println("Transfer failed: " +
+                    ((FailureMessage) response).getMessage());
+                return response;
+            } else if (response == null) {
+                return new FailureMessage("Timeout or interruption while waiting for transfer response.");
+            } else {
+                return new FailureMessage("unexpected error in transfer");
+            }
+        } catch (Exception e) {
+            return new FailureMessage("Transfer error: " + e.getMessage());
+        }
+    }
+
     // loads in all account data once an account is chosen from ClientApplication
     public Message loadAccount (String accID) {
         Message loadAccMsg = new AccountMessage(Message.TYPE.LOAD_ACCOUNT, this.session, this.client.getUsername(), accID );
-        handler.send(loadAccMsg);
     
         try {
-            Message serverResponse = handler.getMessage(); 
+            Message serverResponse = handler.sendAndWait(loadAccMsg); 
     
             if (serverResponse instanceof AccountMessage) {
                 AccountMessage msg = (AccountMessage) serverResponse;
+                this.historyStart = msg.getHistoryStart();
+                this.historyTotal = msg.getHistoryTotal();
                 switch (msg.getAccountType()) {
                     case CHECKING:
-                        this.account = createCheckingAccount(msg);
+                        this.account = createCheckingAccount(msg, msg.getTransactionHistory());
                         return msg;
                     case SAVING:
-                        this.account = createSavingAccount(msg);
+                        this.account = createSavingAccount(msg, msg.getTransactionHistory());
                         return msg;
                     case CREDIT_LINE:
-                        this.account = createCreditAccount(msg);
+                        this.account = createCreditAccount(msg, msg.getTransactionHistory());
                         return msg;
                     default:
                          // Should not happen if server sends valid type
@@ -135,6 +176,36 @@ public class ATMApplication {
         }
     }
 
+    // fetches the page of transactions just before the oldest one loaded
+    // and puts it in front of the local history
+    public Message loadOlderTransactions() {
+        if (account == null) {
+            return new FailureMessage("No account loaded.");
+        }
+        if (historyStart == 0) {
+            return new FailureMessage("There is no older history.");
+        }
+        Message response = handler.sendAndWait(AccountMessage.historyPage(session, client.getUsername(), account.getID(), historyStart, 0));
+        if (response instanceof AccountMessage msg) {
+            List<Transaction> history = new ArrayList<>(msg.getTransactionHistory());
+            history.addAll(account.getTransactionHistory());
+            this.account = createAccount(msg, history);
+            this.historyStart = msg.getHistoryStart();
+            this.historyTotal = msg.getHistoryTotal();
+            return msg;
+        }
+        return response;
+    }
+
+    // true when the server holds transactions older than the ones loaded
+    public boolean hasOlderTransactions() {
+        return historyStart > 0;
+    }
+
+    public int getHistoryTotal() {
+        return historyTotal;
+    }
+
     public Message loadTransactionHistory(){
         //return TRANSACTION HIST TO GUI
         if (account == null || account.getTransactionHistory() == null) {
@@ -180,9 +251,8 @@ public class ATMApplication {
 
     public Message exit() {
         Message msg = new AccountMessage(Message.TYPE.EXIT_ACCOUNT, this.session, this.client.getUsername(), this.account.getID());
-        handler.send(msg);
         try {
-            Message response = handler.getMessage();
+            Message response = handler.sendAndWait(msg);
             if (response instanceof SuccessMessage) {
                  System.out.println("Exited account " + this.account.getID() + " successfully.");
                  this.account = null; 
@@ -213,15 +283,16 @@ public class ATMApplication {
             amount,
             operation,
             account.getID());
-        //send it to the server
-        handler.send(transMsg);
     
         // BLOCK and wait for server response
         try {
-            Message response = handler.getMessage();
-            if (response instanceof SuccessMessage) {
-                // transaction was a success, so refresh local account data
-                return loadAccount(account.getID());
+            Message response = handler.sendAndWait(transMsg);
+            if (response instanceof TransactionReceiptMessage receipt) {
+                // the reply already carries the new account state
+                return applyReceipt(receipt);
+            } else if (response instanceof SuccessMessage) {
+                // transaction was a success, so fetch what changed
+                return catchUp();
             } else if (response instanceof FailureMessage) {
                 System.out.println("Transaction failed: " + 
                     ((FailureMessage) response).getMessage());
@@ -237,28 +308,84 @@ public class ATMApplication {
     
 
     
+    // appends the receipt's transaction to the local copy and takes its balance
+    // and counters; falls back to a catch-up fetch if anything was missed
+    private Message applyReceipt(TransactionReceiptMessage receipt) {
+        List<Transaction> history = new ArrayList<>(account.getTransactionHistory());
+        if (receipt.getSequence() != historyStart + history.size()) {
+            return catchUp();
+        }
+        history.add(receipt.getTransaction());
+        AccountMessage msg;
+        if (account instanceof SavingAccount s) {
+            msg = new AccountMessage(Message.TYPE.LOAD_ACCOUNT, session, client.getUsername(), account.getID(),
+                    receipt.getBalance(), history, receipt.getWithdrawCount(), s.getWithdrawLimit(), null);
+        } else if (account instanceof CreditLine l) {
+            msg = new AccountMessage(Message.TYPE.LOAD_ACCOUNT, session, client.getUsername(), account.getID(),
+                    receipt.getBalance(), history, l.getCreditLimit());
+        } else {
+            msg = new AccountMessage(Message.TYPE.LOAD_ACCOUNT, session, client.getUsername(), account.getID(),
+                    receipt.getBalance(), history);
+        }
+        msg.setHistoryWindow(historyStart, receipt.getSequence() + 1);
+        this.account = createAccount(msg, history);
+        this.historyTotal = receipt.getSequence() + 1;
+        return msg;
+    }
+
+    // fetches only the transactions recorded since the local copy was loaded
+    // and appends them; the reply also carries the new balance and counters
+    private Message catchUp() {
+        List<Transaction> history = new ArrayList<>(account.getTransactionHistory());
+        AccountMessage msg;
+        do {
+            Message response = handler.sendAndWait(AccountMessage.historySince(session, client.getUsername(), account.getID(),
+                    historyStart + history.size()));
+            if (!(response instanceof AccountMessage)) {
+                return response;
+            }
+            msg = (AccountMessage) response;
+            history.addAll(msg.getTransactionHistory());
+        } while (historyStart + history.size() < msg.getHistoryTotal() && !msg.getTransactionHistory().isEmpty());
+        this.account = createAccount(msg, history);
+        this.historyTotal = msg.getHistoryTotal();
+        return msg;
+    }
+
+    private Account createAccount(AccountMessage msg, List<Transaction> history) {
+        switch (msg.getAccountType()) {
+            case SAVING:
+                return createSavingAccount(msg, history);
+            case CREDIT_LINE:
+                return createCreditAccount(msg, history);
+            default:
+                return createCheckingAccount(msg, history);
+        }
+    }
+
     // method to retrieve account information from Database
     private boolean refreshAccount(){
 
         if (account == null) return false;
         // send LOAD_ACCOUNT request
         AccountMessage requestMsg = new AccountMessage(Message.TYPE.LOAD_ACCOUNT, session, this.client.getUsername(), account.getID());
-        handler.send(requestMsg);
         // BLOCK client to wait for response
         try {
-            Message serverResponse = handler.getMessage();
+            Message serverResponse = handler.sendAndWait(requestMsg);
             if (serverResponse instanceof AccountMessage) {
                 AccountMessage msg = (AccountMessage) serverResponse;
     
+                this.historyStart = msg.getHistoryStart();
+                this.historyTotal = msg.getHistoryTotal();
                 switch(msg.getAccountType()) {
                     case CHECKING:
-                    this.account = createCheckingAccount(msg);
+                    this.account = createCheckingAccount(msg, msg.getTransactionHistory());
                     break;
                 case SAVING:
-                    this.account = createSavingAccount(msg);
+                    this.account = createSavingAccount(msg, msg.getTransactionHistory());
                     break;
                 case CREDIT_LINE:
-                    this.account = createCreditAccount(msg);
+                    this.account = createCreditAccount(msg, msg.getTransactionHistory());
                     break;
                 default:
                     throw new IllegalStateException("Unknown account type");
@@ -274,28 +401,26 @@ public class ATMApplication {
     }
     
      
-    private Account createCheckingAccount(AccountMessage msg) {
+    private Account createCheckingAccount(AccountMessage msg, List<Transaction> history) {
         String id = msg.getID();
         BigDecimal balance = msg.getBalance();
-        List<Transaction> history = msg.getTransactionHistory();
 
         CheckingAccount account = new CheckingAccount(id, balance, history);
         return account;
    }
     
-    private Account createSavingAccount(AccountMessage msg) {
+    private Account createSavingAccount(AccountMessage msg, List<Transaction> history) {
         String id = msg.getID();
         BigDecimal balance = msg.getBalance(); 
-        List<Transaction> history = msg.getTransactionHistory(); 
         int withdrawCount = msg.getWithdrawCount();
         int withdrawLimit = msg.getWithdrawLimit();
 
-        SavingAccount account = new SavingAccount(msg.getID(), msg.getBalance(), msg.getTransactionHistory(), msg.getWithdrawCount(), msg.getWithdrawLimit());
+        SavingAccount account = new SavingAccount(msg.getID(), msg.getBalance(), history, msg.getWithdrawCount(), msg.getWithdrawLimit());
         return account;
     }
     
-    private Account createCreditAccount(AccountMessage msg) {
-       CreditLine account = new CreditLine(msg.getID(), msg.getBalance(),msg.getTransactionHistory(), msg.getCreditLimit() );
+    private Account createCreditAccount(AccountMessage msg, List<Transaction> history) {
+       CreditLine account = new CreditLine(msg.getID(), msg.getBalance(), history, msg.getCreditLimit() );
        return account;
     }
 
@@ -44,12 +44,10 @@ public class ClientProfileApplication {
     public Message requestProfile(){
         // create ProfileMessage object to send
         Message profileMessage = new ProfileMessage(Message.TYPE.LOAD_PROFILE, session, session.getUsername());
-        // send to server via handler
-        handler.send(profileMessage);
 
         // BLOCK and wait for server response
         try{
-            Message serverResponse = handler.getMessage();
+            Message serverResponse = handler.sendAndWait(profileMessage);
             if (serverResponse.getType() == Message.TYPE.LOAD_PROFILE && serverResponse instanceof ProfileMessage){
                 // cast serverResponse to ProfileMessage
                 ProfileMessage msg = (ProfileMessage) serverResponse;
@@ -124,9 +122,8 @@ public class ClientProfileApplication {
             Message.TYPE.LOGOUT_ATM, 
             this.session
         );
-        handler.send(logoutMsg);
 
-        Message msg = handler.getMessage();
+        Message msg = handler.sendAndWait(logoutMsg);
         if (msg instanceof SuccessMessage) {
             System.out.println("Logged out successfully: " + ((SuccessMessage) msg).getMessage());
 
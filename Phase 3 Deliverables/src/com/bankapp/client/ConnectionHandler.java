@@ -2,12 +2,21 @@ package com.bankapp.client;
 import java.io.*;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.bankapp.common.DisconnectMessage;
 import com.bankapp.common.Message;
+import com.bankapp.common.MessageCodec;
+import com.bankapp.common.MessageFrames;
 import com.bankapp.common.SessionInfo;
 import com.bankapp.common.Message.TYPE;
 
@@ -16,8 +25,19 @@ public class ConnectionHandler implements Runnable {
     private final Socket clientSocket;
     private ObjectInputStream in;
     private ObjectOutputStream out;
+    // framed mode (required by the server's NIO transport) uses these instead;
+    // codec is null for the legacy object streams
+    private final MessageCodec codec;
+    private DataInputStream framedIn;
+    private DataOutputStream framedOut;
     private final BlockingQueue<Message> incomingMssg = new LinkedBlockingQueue<>();
     private final BlockingQueue<Message> outgoingMssg = new LinkedBlockingQueue<>();
+    // requests waiting for their reply, by request ID; replies that match none
+    // (and unsolicited messages) go to incomingMssg
+    private final Map<Long, CompletableFuture<Message>> pending = new ConcurrentHashMap<>();
+    private final AtomicLong nextRequestId = new AtomicLong();
+    // how long sendAndWait waits for a reply
+    public static final long DEFAULT_TIMEOUT_MILLIS = 30_000;
     private Thread reader, writer = null;
     private volatile boolean running = true;
     private volatile boolean loggedOut = false;
@@ -26,8 +46,14 @@ public class ConnectionHandler implements Runnable {
     //private LoginApplication loginApp;
     SessionInfo currentSession;
 
+    // -Dbankapp.codec=binary|serialized selects a framed connection
     public ConnectionHandler(Socket socket) {
+        this(socket, MessageCodec.forName(System.getProperty("bankapp.codec")));
+    }
+
+    public ConnectionHandler(Socket socket, MessageCodec codec) {
         this.clientSocket = socket;
+        this.codec = codec;
     }
 
 
@@ -42,9 +68,15 @@ public class ConnectionHandler implements Runnable {
 
     public void run() {
         try {
-            out = new ObjectOutputStream(clientSocket.getOutputStream());
-            out.flush();
-            in = new ObjectInputStream(clientSocket.getInputStream());
+            if (codec != null) {
+                framedOut = new DataOutputStream(new BufferedOutputStream(clientSocket.getOutputStream()));
+                MessageFrames.writePreamble(framedOut, codec);
+                framedIn = new DataInputStream(new BufferedInputStream(clientSocket.getInputStream()));
+            } else {
+                out = new ObjectOutputStream(clientSocket.getOutputStream());
+                out.flush();
+                in = new ObjectInputStream(clientSocket.getInputStream());
+            }
             reader = new Thread(this::readLoop);
             writer = new Thread(this::writeLoop);
             reader.start();
@@ -64,7 +96,7 @@ public class ConnectionHandler implements Runnable {
                 Message msg = null;
                 // block and read message
                 try{
-                    msg = (Message) in.readObject();
+                    msg = codec != null ? MessageFrames.read(framedIn, codec) : (Message) in.readObject();
                 } catch(Exception e){
                     if (running) {
                         System.err.println("Unexpected error: " + e.getMessage());
@@ -80,15 +112,18 @@ public class ConnectionHandler implements Runnable {
                     running = false;
                     break;
                 }
-                /*
-                 * if (msg.getType() == Message.Type.SESSION_TIMEOUT) {
-                 * System.out.println("440 Session Timeout. " );
-                 * running = false;
-                 * break;
-                 * }
-                 */
-
-                incomingMssg.put(msg);
+                if (msg.getType() == Message.TYPE.SESSION_TIMEOUT) {
+                    System.out.println("440 Session Timeout. " );
+                    running = false;
+                    break;
+                }
+
+                CompletableFuture<Message> reply = msg.getRequestId() == 0 ? null : pending.remove(msg.getRequestId());
+                if (reply != null) {
+                    reply.complete(msg);
+                } else {
+                    incomingMssg.put(msg);
+                }
             }
         } catch (InterruptedException e) {
             System.out.println("ReadLoop interrupted.");
@@ -111,10 +146,14 @@ public class ConnectionHandler implements Runnable {
                     break; 
                 }
                 try{
-                    synchronized (out) {
-                        out.writeObject(msg);
-                        out.flush();
-                    } 
+                    if (codec != null) {
+                        MessageFrames.write(framedOut, codec, msg);
+                    } else {
+                        synchronized (out) {
+                            out.writeObject(msg);
+                            out.flush();
+                        }
+                    }
                 }catch (IOException e) {
                     if (running) {
                         System.err.println("Write error: " + e.getMessage());
@@ -151,6 +190,47 @@ public class ConnectionHandler implements Runnable {
         outgoingMssg.offer(msg);
     }
 
+    // Sends msg and returns its reply, matched by request ID, so several
+    // requests can be in flight at once. Fails with an IOException if the
+    // connection closes first.
+    public CompletableFuture<Message> request(Message msg) {
+        long id = nextRequestId.incrementAndGet();
+        msg.setRequestId(id);
+        CompletableFuture<Message> reply = new CompletableFuture<>();
+        pending.put(id, reply);
+        // drop the entry however the future ends (reply, timeout, cancel)
+        reply.whenComplete((m, e) -> pending.remove(id));
+        if (!running || closed.get()) {
+            reply.completeExceptionally(new IOException("Connection closed"));
+            return reply;
+        }
+        outgoingMssg.offer(msg);
+        return reply;
+    }
+
+    // as request(msg), failing with a TimeoutException after the given time
+    public CompletableFuture<Message> request(Message msg, long timeout, TimeUnit unit) {
+        return request(msg).orTimeout(timeout, unit);
+    }
+
+    // this will BLOCK client app until the reply arrives; null on timeout,
+    // interrupt or a closed connection, like getMessage
+    public Message sendAndWait(Message msg) {
+        try {
+            return request(msg, DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                System.err.println("No reply to " + msg.getType() + " within " + DEFAULT_TIMEOUT_MILLIS + " ms");
+            } else {
+                System.err.println("Request failed: " + e.getCause().getMessage());
+            }
+            return null;
+        }
+    }
+
     // this will BLOCK client app until message is received
     //
     public Message getMessage() {
@@ -177,11 +257,21 @@ public class ConnectionHandler implements Runnable {
             writer.interrupt();
         }
 
+        // nothing more will arrive for requests still waiting
+        IOException closedError = new IOException("Connection closed");
+        for (CompletableFuture<Message> reply : pending.values()) {
+            reply.completeExceptionally(closedError);
+        }
+
         try {
             if (in != null)
                 in.close();
             if (out != null)
                 out.close();
+            if (framedIn != null)
+                framedIn.close();
+            if (framedOut != null)
+                framedOut.close();
             clientSocket.close();
         } catch (IOException ignored) {
             // ignore so we can shut it down
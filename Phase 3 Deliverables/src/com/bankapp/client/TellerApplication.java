@@ -17,13 +17,18 @@ import com.bankapp.common.SavingAccount;
 import com.bankapp.common.SessionInfo;
 import com.bankapp.common.SuccessMessage;
 import com.bankapp.common.Transaction;
+import com.bankapp.common.TransactionBatchMessage;
+import com.bankapp.common.TransactionBatchResultMessage;
 import com.bankapp.common.TransactionMessage;
+import com.bankapp.common.TransactionReceiptMessage;
 import com.bankapp.common.Message.TYPE;
 
 public class TellerApplication {
 
     private ClientProfile profile;
     private Account account;
+    // sequence number of the first transaction held in account
+    private int historyStart;
     private ConnectionHandler handler;
     private SessionInfo session;
     private List<AccountSummary> accounts;
@@ -47,10 +52,8 @@ public class TellerApplication {
                 legalName,
                 this.accounts);
 
-        handler.send(msg);
-
         try {
-            Message response = handler.getMessage();
+            Message response = handler.sendAndWait(msg);
 
             if (response instanceof SuccessMessage) {
                 requestProfile(); // update locally
@@ -79,10 +82,8 @@ public class TellerApplication {
                 profile.getLegalName(),
                 this.accounts);
 
-        handler.send(delProfile);
-
         try {
-            Message response = handler.getMessage();
+            Message response = handler.sendAndWait(delProfile);
 
             if (response instanceof SuccessMessage) {
                 return true;
@@ -106,10 +107,8 @@ public class TellerApplication {
                 profile.getUsername(),
                 id);
 
-        handler.send(delAccount);
-
         try {
-            Message response = handler.getMessage();
+            Message response = handler.sendAndWait(delAccount);
 
             if (response instanceof SuccessMessage) {
                 requestProfile(); // update locally
@@ -178,11 +177,10 @@ public class TellerApplication {
                 newType,
                 sentCreditLimit,
                 sentWithdrawalLimit);
-        handler.send(createMsg);
 
         try {
             // BLOCK and wait for response
-            Message response = handler.getMessage();
+            Message response = handler.sendAndWait(createMsg);
             if (response instanceof SuccessMessage) {
                 System.out.println("Server confirmation: " + ((SuccessMessage) response).getMessage());
                 requestProfile();
@@ -216,11 +214,9 @@ public class TellerApplication {
                 phone,
                 address,
                 legalName);
-        // send over to server
-        handler.send(newProfile);
         // BLOCK and wait for response
         try {
-            Message response = handler.getMessage();
+            Message response = handler.sendAndWait(newProfile);
 
             if (response instanceof SuccessMessage) {
                 return true;
@@ -280,16 +276,40 @@ public class TellerApplication {
         }
     }
 
+    // Posts many transactions, on any accounts, as one request; the server
+    // applies them in one pass and answers with a result per entry. If
+    // atomic, either all entries are applied or none. Returns null if the
+    // batch itself was refused or the request failed.
+    public TransactionBatchResultMessage postBatch(List<TransactionBatchMessage.Entry> entries, boolean atomic) {
+        if (session == null) {
+            System.out.println("Not logged in");
+            return null;
+        }
+        try {
+            Message response = handler.sendAndWait(new TransactionBatchMessage(session, entries, atomic));
+            if (response instanceof TransactionBatchResultMessage result) {
+                // the open account may be one of those changed
+                if (account != null && result.getAppliedCount() > 0) {
+                    refreshAccount();
+                }
+                return result;
+            } else if (response instanceof FailureMessage) {
+                System.out.println("Batch refused: " + ((FailureMessage) response).getMessage());
+            }
+        } catch (Exception e) {
+            System.out.println("Batch was interrupted");
+        }
+        return null;
+    }
+
     // assigns client object to this.profile
     public void loadClientProfile(String name) {
         // create ProfileMessage object to send
         Message profileMessage = new ProfileMessage(Message.TYPE.LOAD_PROFILE, this.session, name);
-        // send to server via handler
-        handler.send(profileMessage);
 
         // BLOCK and wait for server response
         try {
-            Message serverResponse = handler.getMessage();
+            Message serverResponse = handler.sendAndWait(profileMessage);
             if (serverResponse.getType() == Message.TYPE.LOAD_PROFILE && serverResponse instanceof ProfileMessage) {
                 // cast serverResponse to ProfileMessage
                 ProfileMessage msg = (ProfileMessage) serverResponse;
@@ -316,10 +336,9 @@ public class TellerApplication {
     public void loadAccount(String accID) {
         Message loadAccMsg = new AccountMessage(Message.TYPE.LOAD_ACCOUNT, this.session, this.profile.getUsername(),
                 accID);
-        handler.send(loadAccMsg);
 
         try {
-            if (refreshAccount()) {
+            if (readAccount(handler.sendAndWait(loadAccMsg))) {
                 // RELAY ACCOUNT TO GUI
                 // gui.displayAccountDetails(account);
             }
@@ -334,11 +353,10 @@ public class TellerApplication {
     public void requestProfile() {
         // create ProfileMessage object to send
         Message profileMessage = new ProfileMessage(Message.TYPE.LOAD_PROFILE, this.session, this.profile.getUsername());
-        handler.send(profileMessage);
 
         // BLOCK and wait for server response
         try {
-            Message serverResponse = handler.getMessage();
+            Message serverResponse = handler.sendAndWait(profileMessage);
             if (serverResponse.getType() == Message.TYPE.LOAD_PROFILE && serverResponse instanceof ProfileMessage) {
                 // cast serverResponse to ProfileMessage
                 ProfileMessage msg = (ProfileMessage) serverResponse;
@@ -362,6 +380,22 @@ public class TellerApplication {
         }
     }
 
+    // fetches the page of transactions just before the oldest one loaded
+    public boolean loadOlderTransactions() {
+        if (account == null || historyStart == 0) {
+            return false;
+        }
+        Message response = handler.sendAndWait(AccountMessage.historyPage(session, this.profile.getUsername(), account.getID(), historyStart, 0));
+        if (response instanceof AccountMessage msg) {
+            List<Transaction> history = new ArrayList<>(msg.getTransactionHistory());
+            history.addAll(account.getTransactionHistory());
+            this.account = createAccount(msg, history);
+            this.historyStart = msg.getHistoryStart();
+            return true;
+        }
+        return false;
+    }
+
     public void exitAccount() {
         Message msg = new AccountMessage(
                 Message.TYPE.EXIT_ACCOUNT,
@@ -369,7 +403,9 @@ public class TellerApplication {
                 this.profile.getUsername(),
                 this.account.getID());
 
-        handler.send(msg);
+        // the reply is matched to this request and dropped, so it cannot be
+        // mistaken for the answer to a later one
+        handler.request(msg);
         // return to clientprofile screen
     }
 
@@ -379,7 +415,7 @@ public class TellerApplication {
                 this.session,
                 this.profile.getUsername());
 
-        handler.send(msg);
+        handler.request(msg);
         // return to teller homescreen
     }
 
@@ -387,9 +423,8 @@ public class TellerApplication {
         Message logoutMsg = new LogoutMessage(
                 Message.TYPE.LOGOUT_TELLER,
                 this.session);
-        handler.send(logoutMsg);
 
-        Message msg = handler.getMessage();
+        Message msg = handler.sendAndWait(logoutMsg);
         if (msg instanceof SuccessMessage) {
             System.out.println("Logged out successfully: " + ((SuccessMessage) msg).getMessage());
 
@@ -414,14 +449,15 @@ public class TellerApplication {
                 amount,
                 operation,
                 account.getID());
-        // send it to the server
-        handler.send(transMsg);
 
         // BLOCK and wait for server response
         try {
-            Message response = handler.getMessage();
+            Message response = handler.sendAndWait(transMsg);
 
-            if (response instanceof SuccessMessage) {
+            if (response instanceof TransactionReceiptMessage receipt) {
+                // the reply already carries the new account state
+                return applyReceipt(receipt);
+            } else if (response instanceof SuccessMessage) {
                 // transaction was a success, so refresh local account data
                 boolean refresh = refreshAccount();
                 return refresh;
@@ -438,29 +474,71 @@ public class TellerApplication {
         return false;
     }
 
+    // appends the receipt's transaction to the local copy and takes its balance
+    // and counters; falls back to a refresh if anything was missed
+    private boolean applyReceipt(TransactionReceiptMessage receipt) {
+        List<Transaction> history = new ArrayList<>(account.getTransactionHistory());
+        if (receipt.getSequence() != historyStart + history.size()) {
+            return refreshAccount();
+        }
+        history.add(receipt.getTransaction());
+        if (account instanceof SavingAccount s) {
+            this.account = new SavingAccount(account.getID(), receipt.getBalance(), history,
+                    receipt.getWithdrawCount(), s.getWithdrawLimit());
+        } else if (account instanceof CreditLine l) {
+            this.account = new CreditLine(account.getID(), receipt.getBalance(), history, l.getCreditLimit());
+        } else {
+            this.account = new CheckingAccount(account.getID(), receipt.getBalance(), history);
+        }
+        return true;
+    }
+
+    // fetches only the transactions recorded since the local copy was loaded
+    // and appends them; the reply also carries the new balance and counters
     private boolean refreshAccount() {
 
         if (account == null)
             return false;
-        // send LOAD_ACCOUNT request
-        AccountMessage requestMsg = new AccountMessage(Message.TYPE.LOAD_ACCOUNT, session, this.profile.getUsername(),
-                account.getID());
-        handler.send(requestMsg);
-        // BLOCK client to wait for response
+        List<Transaction> history = new ArrayList<>(account.getTransactionHistory());
+        AccountMessage msg;
+        // BLOCK client to wait for each response
+        try {
+            do {
+                Message serverResponse = handler.sendAndWait(AccountMessage.historySince(session, this.profile.getUsername(), account.getID(),
+                        historyStart + history.size()));
+                if (!(serverResponse instanceof AccountMessage)) {
+                    if (serverResponse instanceof FailureMessage) {
+                        System.out.println("Error: " + ((FailureMessage) serverResponse).getMessage());
+                    }
+                    return false;
+                }
+                msg = (AccountMessage) serverResponse;
+                history.addAll(msg.getTransactionHistory());
+            } while (historyStart + history.size() < msg.getHistoryTotal() && !msg.getTransactionHistory().isEmpty());
+            this.account = createAccount(msg, history);
+            return true;
+        } catch (Exception e) {
+            System.out.println("Account refresh interrupted");
+        }
+        return false;
+    }
+
+    // reads the reply to a full LOAD_ACCOUNT request
+    private boolean readAccount(Message serverResponse) {
         try {
-            Message serverResponse = handler.getMessage();
             if (serverResponse instanceof AccountMessage) {
                 AccountMessage msg = (AccountMessage) serverResponse;
 
+                this.historyStart = msg.getHistoryStart();
                 switch (msg.getAccountType()) {
                     case CHECKING:
-                        this.account = createCheckingAccount(msg);
+                        this.account = createCheckingAccount(msg, msg.getTransactionHistory());
                         break;
                     case SAVING:
-                        this.account = createSavingAccount(msg);
+                        this.account = createSavingAccount(msg, msg.getTransactionHistory());
                         break;
                     case CREDIT_LINE:
-                        this.account = createCreditAccount(msg);
+                        this.account = createCreditAccount(msg, msg.getTransactionHistory());
                         break;
                     default:
                         throw new IllegalStateException("Unknown account type");
@@ -475,19 +553,30 @@ public class TellerApplication {
         return false;
     }
 
-    private Account createCheckingAccount(AccountMessage msg) {
-        CheckingAccount account = new CheckingAccount(msg.getID(), msg.getBalance(), msg.getTransactionHistory());
+    private Account createAccount(AccountMessage msg, List<Transaction> history) {
+        switch (msg.getAccountType()) {
+            case SAVING:
+                return createSavingAccount(msg, history);
+            case CREDIT_LINE:
+                return createCreditAccount(msg, history);
+            default:
+                return createCheckingAccount(msg, history);
+        }
+    }
+
+    private Account createCheckingAccount(AccountMessage msg, List<Transaction> history) {
+        CheckingAccount account = new CheckingAccount(msg.getID(), msg.getBalance(), history);
         return account;
     }
 
-    private Account createSavingAccount(AccountMessage msg) {
-        SavingAccount account = new SavingAccount(msg.getID(), msg.getBalance(), msg.getTransactionHistory(),
+    private Account createSavingAccount(AccountMessage msg, List<Transaction> history) {
+        SavingAccount account = new SavingAccount(msg.getID(), msg.getBalance(), history,
                 msg.getWithdrawCount(), msg.getWithdrawLimit());
         return account;
     }
 
-    private Account createCreditAccount(AccountMessage msg) {
-        CreditLine account = new CreditLine(msg.getID(), msg.getBalance(), msg.getTransactionHistory(),
+    private Account createCreditAccount(AccountMessage msg, List<Transaction> history) {
+        CreditLine account = new CreditLine(msg.getID(), msg.getBalance(), history,
                 msg.getCreditLimit());
         return account;
     }
@@ -2,39 +2,98 @@ package com.bankapp.common;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.function.Supplier;
 
 public abstract class Account implements Serializable{
+	// where new accounts keep their history; the server may swap in an
+	// off-heap store, clients always use the default
+	private static volatile Supplier<List<Transaction>> historyFactory = ArrayList::new;
+
 	private String id;
-	private BigDecimal balance;
+	private Money balance;
 	private List<Transaction> transactionHistory;
 	
 	protected Account() {
-		this.balance = new BigDecimal(0);
-        this.transactionHistory = new ArrayList<>();
+		this.balance = Money.ZERO;
+        this.transactionHistory = newHistory();
     }
 
+	public static void setHistoryFactory(Supplier<List<Transaction>> factory) {
+		historyFactory = factory;
+	}
+
+	// an empty history list from the current factory
+	public static List<Transaction> newHistory() {
+		return historyFactory.get();
+	}
+
 	//constructor for client-side account refresh;
 	protected Account(String id, BigDecimal b, List<Transaction> history) {
 		this.id = id;
-		this.balance = b;
+		this.balance = Money.of(b);
 		this.transactionHistory = history;
 	 }
+	// for display and messages
 	public BigDecimal getBalance() {
+		return this.balance.toBigDecimal();
+	}
+	public Money getBalanceMoney() {
 		return this.balance;
 	}
 	public String getID() {
 		return this.id;
 	}
-	public void setBalance(String s){
-		this.balance = new BigDecimal (s);
-	}
 	public List<Transaction> getTransactionHistory() {
 		return this.transactionHistory;
 	}
-	public void addTransaction(Transaction trans) {
+	// history is read by the checkpoint thread while new transactions arrive,
+	// so appends and copies go through the account's monitor
+	public synchronized int getTransactionCount() {
+		return this.transactionHistory.size();
+	}
+	// copy of the transactions with sequence numbers [from, to)
+	public synchronized List<Transaction> getTransactions(int from, int to) {
+		return new ArrayList<>(this.transactionHistory.subList(from, to));
+	}
+	// The balance only ever moves by appending a transaction, and each stored
+	// transaction carries the balance it left, so the history can be checked
+	// against the balance (server.Reconciler) and queried by time.
+	public synchronized void addTransaction(Transaction trans) {
+		append(trans);
+	}
+	// appends a transaction that was already applied once (journal replay),
+	// skipping the subclass rules that checked it the first time
+	public final synchronized void restoreTransaction(Transaction trans) {
+		append(trans);
+	}
+	private void append(Transaction trans) {
+		Money after = this.balance.plus(trans.getAmountMoney());
+		trans.setBalanceAfter(after);
 		this.transactionHistory.add(trans);
-		this.balance = this.balance.add(trans.getAmount());
+		this.balance = after;
+	}
+	// The balance as of the given time: the running balance of the last
+	// transaction created at or before it, found by binary search over the
+	// history (creation times are non-decreasing). Zero before the first
+	// transaction; null if the history does not carry running balances
+	// (client-side copies).
+	public synchronized Money balanceAt(Date when) {
+		long t = when.getTime();
+		int lo = 0;
+		int hi = this.transactionHistory.size() - 1;
+		int found = -1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (this.transactionHistory.get(mid).getCreated().getTime() <= t) {
+				found = mid;
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return found < 0 ? Money.ZERO : this.transactionHistory.get(found).getBalanceAfter();
 	}
 	public void setID(String id) {
         if (this.id == null && id != null && !id.trim().isEmpty()) {
@@ -25,6 +25,18 @@ public final class AccountMessage extends Message {
 	private final int withdrawLimit; // Only for savings
 	private LocalDate reset;		// only for savings
 	private final String creditLimit; // Only for creditLimit
+
+	// History window. A transaction's sequence number is its position in the
+	// account's history. LOAD_ACCOUNT requests ask for a page of historyPageSize
+	// transactions ending before historyBefore, or, when historySince is set,
+	// for everything from that sequence on. Replies carry the sequence of their
+	// first transaction and the account's total so clients can page or catch up.
+	public static final int NEWEST = -1;
+	private int historyBefore = NEWEST;
+	private int historySince = -1;
+	private int historyPageSize; // 0 = server default
+	private int historyStart;
+	private int historyTotal;
 	
 
 	// Constructor for Requests
@@ -127,6 +139,46 @@ public final class AccountMessage extends Message {
 		this.creditLimit = creditLimit.toPlainString();
 	}
 
+	// Request for a page of history ending before sequence `before` (NEWEST for the latest page)
+	public static AccountMessage historyPage(SessionInfo session, String username, String accountID, int before, int pageSize) {
+		AccountMessage msg = new AccountMessage(TYPE.LOAD_ACCOUNT, session, username, accountID);
+		msg.setHistoryRequest(before, -1, pageSize);
+		return msg;
+	}
+
+	// Request for the transactions recorded since sequence sinceSeq; the reply
+	// still carries the current balance and counters
+	public static AccountMessage historySince(SessionInfo session, String username, String accountID, int sinceSeq) {
+		AccountMessage msg = new AccountMessage(TYPE.LOAD_ACCOUNT, session, username, accountID);
+		msg.setHistoryRequest(NEWEST, sinceSeq, 0);
+		return msg;
+	}
+
+	// used by the binary codec to rebuild a message as it was sent
+	AccountMessage(TYPE type,
+			SessionInfo session,
+			ACCOUNT_TYPE accountType,
+			String username,
+			String id,
+			String balance,
+			List<Transaction> transactionHistory,
+			int withdrawCount,
+			int withdrawLimit,
+			LocalDate lastReset,
+			String creditLimit)
+	{
+		super(type, session);
+		this.account_type = accountType;
+		this.username_owner = username;
+		this.id = id;
+		this.balance = balance;
+		this.transactionHistory = transactionHistory;
+		this.withdrawCount = withdrawCount;
+		this.withdrawLimit = withdrawLimit;
+		this.reset = lastReset;
+		this.creditLimit = creditLimit;
+	}
+
 	// Getters
 	public ACCOUNT_TYPE getAccountType() {
 		return account_type;
@@ -159,4 +211,51 @@ public final class AccountMessage extends Message {
 	public BigDecimal getCreditLimit() {
 		return new BigDecimal(creditLimit);
 	}
+
+	public LocalDate getLastReset() {
+		return reset;
+	}
+
+	public int getHistoryBefore() {
+		return historyBefore;
+	}
+
+	public int getHistorySince() {
+		return historySince;
+	}
+
+	public int getHistoryPageSize() {
+		return historyPageSize;
+	}
+
+	// sequence number of the first transaction in getTransactionHistory()
+	public int getHistoryStart() {
+		return historyStart;
+	}
+
+	// number of transactions the account has in total
+	public int getHistoryTotal() {
+		return historyTotal;
+	}
+
+	// set by the server on a reply before it is sent
+	public void setHistoryWindow(int start, int total) {
+		this.historyStart = start;
+		this.historyTotal = total;
+	}
+
+	void setHistoryRequest(int before, int since, int pageSize) {
+		this.historyBefore = before;
+		this.historySince = since;
+		this.historyPageSize = pageSize;
+	}
+
+	// raw wire values, for the binary codec
+	String getBalanceString() {
+		return balance;
+	}
+
+	String getCreditLimitString() {
+		return creditLimit;
+	}
 }
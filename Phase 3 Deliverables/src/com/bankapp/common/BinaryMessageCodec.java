@@ -0,0 +1,666 @@
+package com.bankapp.common;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import com.bankapp.common.Message.TYPE;
+
+/*
+ * Compact hand-written encoding, one encoder/decoder pair per Message.TYPE.
+ *
+ * payload  := type varlong(requestId) session body
+ * type     := byte, Message.TYPE ordinal
+ * session  := 0 | 1 string(username) string(sessionID) enum(role) varlong(lastActive)
+ * string   := varint(0) for null | varint(utf8 length + 1) utf8 bytes
+ * enum     := byte, ordinal + 1 (0 for null)
+ * decimal  := 0 null | 1 varint(scale) varlong(unscaled) | 2 varint(scale) varint(n) n bytes | 3 string
+ *             (a scale is at most MAX_SCALE either way)
+ *
+ * Integers are zig-zag varints, so small counts and cent amounts take one or
+ * two bytes. Decimal strings are only packed when they round-trip through
+ * BigDecimal.toPlainString unchanged, otherwise they go across as text.
+ */
+public final class BinaryMessageCodec implements MessageCodec {
+	public static final byte ID = 2;
+	public static final BinaryMessageCodec INSTANCE = new BinaryMessageCodec();
+
+	private static final TYPE[] TYPES = TYPE.values();
+	private static final SessionInfo.ROLE[] ROLES = SessionInfo.ROLE.values();
+	private static final AccountMessage.ACCOUNT_TYPE[] ACCOUNT_TYPES = AccountMessage.ACCOUNT_TYPE.values();
+	private static final AccountSummary.ACCOUNT_TYPE[] SUMMARY_TYPES = AccountSummary.ACCOUNT_TYPE.values();
+	private static final Transaction.OPERATION[] OPERATIONS = Transaction.OPERATION.values();
+	// Beyond this a decimal goes across as text. A corrupt scale would
+	// otherwise make toPlainString() build a string billions of digits long.
+	private static final int MAX_SCALE = 1 << 10;
+
+	private BinaryMessageCodec() {
+	}
+
+	@Override
+	public byte id() {
+		return ID;
+	}
+
+	@Override
+	public byte[] encode(Message msg) throws IOException {
+		Writer out = new Writer();
+		out.writeByte(msg.getType().ordinal());
+		out.writeVarLong(msg.getRequestId());
+		writeSession(out, msg.getSession());
+		try {
+			switch (msg.getType()) {
+				case LOGIN_CLIENT:
+				case LOGIN_TELLER:
+					writeLogin(out, (LoginMessage) msg);
+					break;
+				case LOGOUT_ATM:
+				case LOGOUT_CLIENT:
+				case LOGOUT_TELLER:
+				case SHUTDOWN:
+				case DISCONNECT:
+				case SESSION_TIMEOUT:
+					break; // type and session say everything
+				case SUCCESS:
+					out.writeString(((SuccessMessage) msg).getMessage());
+					break;
+				case FAILURE:
+					out.writeString(((FailureMessage) msg).getMessage());
+					break;
+				case LOAD_ACCOUNT:
+				case CREATE_ACCOUNT:
+				case SAVE_ACCOUNT:
+				case DELETE_ACCOUNT:
+				case EXIT_ACCOUNT:
+					writeAccount(out, (AccountMessage) msg);
+					break;
+				case SHARE_ACCOUNT:
+					writeShare(out, (ShareAccountMessage) msg);
+					break;
+				case LOAD_PROFILE:
+				case SAVE_PROFILE:
+				case CREATE_PROFILE:
+				case DELETE_PROFILE:
+				case EXIT_PROFILE:
+					writeProfile(out, (ProfileMessage) msg);
+					break;
+				case TRANSACTION:
+					writeTransactionRequest(out, (TransactionMessage) msg);
+					break;
+				case TRANSACTION_RECEIPT:
+					writeReceipt(out, (TransactionReceiptMessage) msg);
+					break;
+				case TRANSACTION_BATCH:
+					writeBatch(out, (TransactionBatchMessage) msg);
+					break;
+				case TRANSACTION_BATCH_RESULT:
+					writeBatchResult(out, (TransactionBatchResultMessage) msg);
+					break;
+				case TRANSFER:
+					writeTransfer(out, (TransferMessage) msg);
+					break;
+				case TRANSFER_RECEIPT:
+					writeTransferReceipt(out, (TransferReceiptMessage) msg);
+					break;
+				default:
+					throw new IOException("No binary encoding for " + msg.getType());
+			}
+		} catch (ClassCastException e) {
+			throw new IOException("Unexpected " + msg.getClass().getSimpleName() + " for " + msg.getType());
+		}
+		return out.toByteArray();
+	}
+
+	@Override
+	public Message decode(byte[] payload, int offset, int length) throws IOException {
+		try {
+			return read(new Reader(payload, offset, length));
+		} catch (RuntimeException e) {
+			// a field the message refuses, such as an amount that is not a number
+			StreamCorruptedException corrupt = new StreamCorruptedException("Malformed binary message: " + e);
+			corrupt.initCause(e);
+			throw corrupt;
+		}
+	}
+
+	private static Message read(Reader in) throws IOException {
+		int typeCode = in.readByte();
+		if (typeCode < 0 || typeCode >= TYPES.length)
+			throw new StreamCorruptedException("Unknown message type " + typeCode);
+		TYPE type = TYPES[typeCode];
+		long requestId = in.readVarLong();
+		SessionInfo session = readSession(in);
+		Message msg;
+		switch (type) {
+			case LOGIN_CLIENT:
+			case LOGIN_TELLER:
+				msg = new LoginMessage(type, in.readString(), in.readString());
+				break;
+			case LOGOUT_ATM:
+			case LOGOUT_CLIENT:
+			case LOGOUT_TELLER:
+				msg = new LogoutMessage(type, session);
+				break;
+			case SHUTDOWN:
+				msg = new ShutDownMessage();
+				break;
+			case DISCONNECT:
+				msg = new DisconnectMessage(session);
+				break;
+			case SESSION_TIMEOUT:
+				msg = new SessionTimeoutMessage();
+				break;
+			case SUCCESS:
+				msg = new SuccessMessage(in.readString(), session);
+				break;
+			case FAILURE:
+				msg = new FailureMessage(in.readString());
+				break;
+			case LOAD_ACCOUNT:
+			case CREATE_ACCOUNT:
+			case SAVE_ACCOUNT:
+			case DELETE_ACCOUNT:
+			case EXIT_ACCOUNT:
+				msg = readAccount(in, type, session);
+				break;
+			case SHARE_ACCOUNT:
+				msg = new ShareAccountMessage(type, session, in.readString(), in.readString(), in.readString());
+				break;
+			case LOAD_PROFILE:
+			case SAVE_PROFILE:
+			case CREATE_PROFILE:
+			case DELETE_PROFILE:
+			case EXIT_PROFILE:
+				msg = readProfile(in, type, session);
+				break;
+			case TRANSACTION:
+				msg = new TransactionMessage(session, new Date(in.readVarLong()), in.readString(),
+						in.readEnum(OPERATIONS), in.readString());
+				break;
+			case TRANSACTION_RECEIPT:
+				msg = readReceipt(in);
+				break;
+			case TRANSACTION_BATCH:
+				msg = readBatch(in, session);
+				break;
+			case TRANSACTION_BATCH_RESULT:
+				msg = readBatchResult(in);
+				break;
+			case TRANSFER:
+				msg = new TransferMessage(session, in.readString(), in.readString(), in.readString());
+				break;
+			case TRANSFER_RECEIPT:
+				msg = new TransferReceiptMessage(in.readString(), readReceipt(in), readReceipt(in));
+				break;
+			default:
+				throw new StreamCorruptedException("No binary decoding for " + type);
+		}
+		if (in.remaining() != 0)
+			throw new StreamCorruptedException(in.remaining() + " trailing bytes after " + type);
+		msg.setRequestId(requestId);
+		return msg;
+	}
+
+	// ---- per-message bodies ----
+
+	private static void writeSession(Writer out, SessionInfo session) {
+		if (session == null) {
+			out.writeByte(0);
+			return;
+		}
+		out.writeByte(1);
+		out.writeString(session.getUsername());
+		out.writeString(session.getSessionID());
+		out.writeEnum(session.getRole());
+		out.writeVarLong(session.getLastActive());
+	}
+
+	private static SessionInfo readSession(Reader in) throws IOException {
+		if (in.readByte() == 0)
+			return null;
+		return new SessionInfo(in.readString(), in.readString(), in.readEnum(ROLES), in.readVarLong());
+	}
+
+	private static void writeLogin(Writer out, LoginMessage msg) {
+		out.writeString(msg.getUsername());
+		out.writeString(msg.getPassword());
+	}
+
+	private static void writeShare(Writer out, ShareAccountMessage msg) {
+		// constructor order: owner, target, account
+		out.writeString(msg.getOwnerProfile());
+		out.writeString(msg.getTargetProfile());
+		out.writeString(msg.getSharedAccountID());
+	}
+
+	private static void writeTransactionRequest(Writer out, TransactionMessage msg) {
+		out.writeVarLong(msg.getDate().getTime());
+		out.writeString(msg.getAmount()); // raw user input, validated by the server
+		out.writeEnum(msg.getOperation());
+		out.writeString(msg.getAccountID());
+	}
+
+	private static void writeReceipt(Writer out, TransactionReceiptMessage msg) {
+		out.writeString(msg.getMessage());
+		out.writeString(msg.getAccountID());
+		out.writeDecimal(msg.getBalance());
+		out.writeVarInt(msg.getSequence());
+		out.writeVarInt(msg.getWithdrawCount());
+		writeTransaction(out, msg.getTransaction());
+	}
+
+	private static TransactionReceiptMessage readReceipt(Reader in) throws IOException {
+		String message = in.readString();
+		String accountID = in.readString();
+		BigDecimal balance = in.readDecimal();
+		if (balance == null)
+			throw new StreamCorruptedException("Receipt without a balance");
+		int sequence = in.readVarInt();
+		int withdrawCount = in.readVarInt();
+		return new TransactionReceiptMessage(message, accountID, balance, sequence, withdrawCount, readTransaction(in));
+	}
+
+	private static void writeTransaction(Writer out, Transaction t) {
+		out.writeVarLong(t.getCreated().getTime());
+		out.writeDecimal(t.getAmount());
+		out.writeEnum(t.getOperation());
+	}
+
+	private static Transaction readTransaction(Reader in) throws IOException {
+		Date created = new Date(in.readVarLong());
+		BigDecimal amount = in.readDecimal();
+		if (amount == null)
+			throw new StreamCorruptedException("Transaction without an amount");
+		try {
+			return new Transaction(created, amount, in.readEnum(OPERATIONS));
+		} catch (ArithmeticException e) {
+			throw new StreamCorruptedException("Transaction amount is not a whole number of cents");
+		}
+	}
+
+	private static void writeBatch(Writer out, TransactionBatchMessage msg) {
+		List<TransactionBatchMessage.Entry> entries = msg.getEntries();
+		if (entries == null) {
+			out.writeVarInt(0);
+		} else {
+			out.writeVarInt(entries.size() + 1);
+			for (TransactionBatchMessage.Entry e : entries) {
+				out.writeString(e.getAccountID());
+				out.writeString(e.getAmount());
+				out.writeEnum(e.getOperation());
+			}
+		}
+		out.writeByte(msg.isAtomic() ? 1 : 0);
+	}
+
+	private static TransactionBatchMessage readBatch(Reader in, SessionInfo session) throws IOException {
+		List<TransactionBatchMessage.Entry> entries = null;
+		int count = in.readCount();
+		if (count > 0) {
+			entries = new ArrayList<>(count - 1);
+			for (int i = 1; i < count; i++) {
+				entries.add(new TransactionBatchMessage.Entry(in.readString(), in.readString(), in.readEnum(OPERATIONS)));
+			}
+		}
+		return new TransactionBatchMessage(session, entries, in.readByte() != 0);
+	}
+
+	private static void writeBatchResult(Writer out, TransactionBatchResultMessage msg) {
+		out.writeString(msg.getMessage());
+		List<TransactionBatchResultMessage.Result> results = msg.getResults();
+		out.writeVarInt(results.size());
+		for (TransactionBatchResultMessage.Result r : results) {
+			out.writeString(r.getError());
+			out.writeDecimalString(r.getBalanceString());
+			out.writeVarLong(r.getSequence());
+		}
+	}
+
+	private static TransactionBatchResultMessage readBatchResult(Reader in) throws IOException {
+		String message = in.readString();
+		int count = in.readCount();
+		List<TransactionBatchResultMessage.Result> results = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			String error = in.readString();
+			String balance = in.readDecimalString();
+			long sequence = in.readVarLong();
+			if (sequence != (int) sequence)
+				throw new StreamCorruptedException("Sequence out of range");
+			results.add(TransactionBatchResultMessage.Result.of(error, balance, (int) sequence));
+		}
+		return new TransactionBatchResultMessage(message, results);
+	}
+
+	private static void writeTransfer(Writer out, TransferMessage msg) {
+		out.writeString(msg.getFromAccountID());
+		out.writeString(msg.getToAccountID());
+		out.writeString(msg.getAmount()); // raw user input, validated by the server
+	}
+
+	// message, then the debit and credit receipts
+	private static void writeTransferReceipt(Writer out, TransferReceiptMessage msg) {
+		out.writeString(msg.getMessage());
+		writeReceipt(out, msg.getDebit());
+		writeReceipt(out, msg.getCredit());
+	}
+
+	private static void writeAccount(Writer out, AccountMessage msg) {
+		out.writeEnum(msg.getAccountType());
+		out.writeString(msg.getUsername());
+		out.writeString(msg.getID());
+		out.writeDecimalString(msg.getBalanceString());
+		List<Transaction> history = msg.getTransactionHistory();
+		if (history == null) {
+			out.writeVarInt(0);
+		} else {
+			out.writeVarInt(history.size() + 1);
+			for (Transaction t : history) {
+				writeTransaction(out, t);
+			}
+		}
+		out.writeVarInt(msg.getWithdrawCount());
+		out.writeVarInt(msg.getWithdrawLimit());
+		LocalDate reset = msg.getLastReset();
+		if (reset == null) {
+			out.writeByte(0);
+		} else {
+			out.writeByte(1);
+			out.writeVarLong(reset.toEpochDay());
+		}
+		out.writeDecimalString(msg.getCreditLimitString());
+		out.writeVarLong(msg.getHistoryBefore());
+		out.writeVarLong(msg.getHistorySince());
+		out.writeVarInt(msg.getHistoryPageSize());
+		out.writeVarInt(msg.getHistoryStart());
+		out.writeVarInt(msg.getHistoryTotal());
+	}
+
+	private static AccountMessage readAccount(Reader in, TYPE type, SessionInfo session) throws IOException {
+		AccountMessage.ACCOUNT_TYPE accountType = in.readEnum(ACCOUNT_TYPES);
+		String username = in.readString();
+		String id = in.readString();
+		String balance = in.readDecimalString();
+		List<Transaction> history = null;
+		int count = in.readCount();
+		if (count > 0) {
+			history = new ArrayList<>(count - 1);
+			for (int i = 1; i < count; i++) {
+				history.add(readTransaction(in));
+			}
+		}
+		int withdrawCount = in.readVarInt();
+		int withdrawLimit = in.readVarInt();
+		LocalDate reset = in.readByte() == 0 ? null : LocalDate.ofEpochDay(in.readVarLong());
+		String creditLimit = in.readDecimalString();
+		AccountMessage msg = new AccountMessage(type, session, accountType, username, id, balance, history,
+				withdrawCount, withdrawLimit, reset, creditLimit);
+		msg.setHistoryRequest((int) in.readVarLong(), (int) in.readVarLong(), in.readVarInt());
+		msg.setHistoryWindow(in.readVarInt(), in.readVarInt());
+		return msg;
+	}
+
+	private static void writeProfile(Writer out, ProfileMessage msg) {
+		out.writeString(msg.getUsername());
+		out.writeString(msg.getPassword());
+		out.writeString(msg.getPhone());
+		out.writeString(msg.getAddress());
+		out.writeString(msg.getLegalName());
+		List<AccountSummary> accounts = msg.getSummaries();
+		if (accounts == null) {
+			out.writeVarInt(0);
+			return;
+		}
+		out.writeVarInt(accounts.size() + 1);
+		for (AccountSummary summary : accounts) {
+			out.writeString(summary.getID());
+			out.writeEnum(summary.getType());
+			out.writeDecimalString(summary.getBalance());
+		}
+	}
+
+	private static ProfileMessage readProfile(Reader in, TYPE type, SessionInfo session) throws IOException {
+		String username = in.readString();
+		String password = in.readString();
+		String phone = in.readString();
+		String address = in.readString();
+		String legalName = in.readString();
+		List<AccountSummary> accounts = null;
+		int count = in.readCount();
+		if (count > 0) {
+			accounts = new ArrayList<>(count - 1);
+			for (int i = 1; i < count; i++) {
+				String id = in.readString();
+				AccountSummary.ACCOUNT_TYPE summaryType = in.readEnum(SUMMARY_TYPES);
+				String balance = in.readDecimalString();
+				if (balance == null)
+					throw new StreamCorruptedException("Account summary without a balance");
+				BigDecimal amount = new BigDecimal(balance);
+				if (Math.abs(amount.scale()) > MAX_SCALE)
+					throw new StreamCorruptedException("Decimal scale out of range");
+				// AccountSummary keeps toPlainString() of the decimal, which is what was sent
+				accounts.add(new AccountSummary(id, summaryType, amount));
+			}
+		}
+		return new ProfileMessage(type, session, username, password, phone, address, legalName, accounts);
+	}
+
+	// ---- primitives ----
+
+	private static final class Writer {
+		private byte[] buf = new byte[128];
+		private int len;
+
+		private void ensure(int extra) {
+			if (len + extra > buf.length)
+				buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + extra));
+		}
+
+		void writeByte(int b) {
+			ensure(1);
+			buf[len++] = (byte) b;
+		}
+
+		void writeBytes(byte[] bytes) {
+			ensure(bytes.length);
+			System.arraycopy(bytes, 0, buf, len, bytes.length);
+			len += bytes.length;
+		}
+
+		// unsigned LEB128
+		void writeVarInt(int value) {
+			writeUnsigned(value & 0xFFFFFFFFL);
+		}
+
+		// zig-zag so negative values stay short
+		void writeVarLong(long value) {
+			writeUnsigned((value << 1) ^ (value >> 63));
+		}
+
+		private void writeUnsigned(long value) {
+			ensure(10);
+			while ((value & ~0x7FL) != 0) {
+				buf[len++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			buf[len++] = (byte) value;
+		}
+
+		void writeString(String s) {
+			if (s == null) {
+				writeVarInt(0);
+				return;
+			}
+			byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+			writeVarInt(utf8.length + 1);
+			writeBytes(utf8);
+		}
+
+		void writeEnum(Enum<?> e) {
+			writeByte(e == null ? 0 : e.ordinal() + 1);
+		}
+
+		void writeDecimal(BigDecimal d) {
+			if (d == null) {
+				writeByte(0);
+				return;
+			}
+			BigInteger unscaled = d.unscaledValue();
+			if (unscaled.bitLength() < 64) {
+				writeByte(1);
+				writeVarLong(d.scale());
+				writeVarLong(unscaled.longValue());
+			} else {
+				byte[] bytes = unscaled.toByteArray();
+				writeByte(2);
+				writeVarLong(d.scale());
+				writeVarInt(bytes.length);
+				writeBytes(bytes);
+			}
+		}
+
+		void writeDecimalString(String s) {
+			BigDecimal d = null;
+			if (s != null) {
+				try {
+					d = new BigDecimal(s);
+				} catch (NumberFormatException e) {
+					d = null;
+				}
+				if (d == null || Math.abs(d.scale()) > MAX_SCALE || !d.toPlainString().equals(s)) {
+					writeByte(3);
+					writeString(s);
+					return;
+				}
+			}
+			writeDecimal(d);
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(buf, len);
+		}
+	}
+
+	private static final class Reader {
+		private final byte[] buf;
+		private int pos;
+		private final int end;
+
+		Reader(byte[] buf, int offset, int length) {
+			this.buf = buf;
+			this.pos = offset;
+			this.end = offset + length;
+		}
+
+		int remaining() {
+			return end - pos;
+		}
+
+		private void require(int n) throws IOException {
+			if (n < 0 || end - pos < n)
+				throw new StreamCorruptedException("Truncated binary message");
+		}
+
+		int readByte() throws IOException {
+			require(1);
+			return buf[pos++] & 0xFF;
+		}
+
+		private long readUnsigned() throws IOException {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				int b = readByte();
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return value;
+			}
+			throw new StreamCorruptedException("Malformed varint");
+		}
+
+		int readVarInt() throws IOException {
+			long value = readUnsigned();
+			if ((value >>> 32) != 0)
+				throw new StreamCorruptedException("Varint out of range");
+			return (int) value;
+		}
+
+		// a list length, bounded by what is left so a bad count cannot allocate a huge list
+		int readCount() throws IOException {
+			int count = readVarInt();
+			if (count < 0 || count - 1 > remaining())
+				throw new StreamCorruptedException("Bad element count " + count);
+			return count;
+		}
+
+		long readVarLong() throws IOException {
+			long raw = readUnsigned();
+			return (raw >>> 1) ^ -(raw & 1);
+		}
+
+		String readString() throws IOException {
+			int n = readVarInt();
+			if (n == 0)
+				return null;
+			require(n - 1);
+			String s = new String(buf, pos, n - 1, StandardCharsets.UTF_8);
+			pos += n - 1;
+			return s;
+		}
+
+		<E extends Enum<E>> E readEnum(E[] values) throws IOException {
+			int code = readByte();
+			if (code == 0)
+				return null;
+			if (code > values.length)
+				throw new StreamCorruptedException("Unknown " + values[0].getDeclaringClass().getSimpleName() + " " + (code - 1));
+			return values[code - 1];
+		}
+
+		private int readScale() throws IOException {
+			long scale = readVarLong();
+			if (Math.abs(scale) > MAX_SCALE)
+				throw new StreamCorruptedException("Decimal scale out of range");
+			return (int) scale;
+		}
+
+		BigDecimal readDecimal() throws IOException {
+			return readDecimal(readByte());
+		}
+
+		private BigDecimal readDecimal(int tag) throws IOException {
+			switch (tag) {
+				case 0:
+					return null;
+				case 1: {
+					int scale = readScale();
+					return BigDecimal.valueOf(readVarLong(), scale);
+				}
+				case 2: {
+					int scale = readScale();
+					int n = readVarInt();
+					if (n == 0)
+						throw new StreamCorruptedException("Empty decimal");
+					require(n);
+					BigInteger unscaled = new BigInteger(Arrays.copyOfRange(buf, pos, pos + n));
+					pos += n;
+					return new BigDecimal(unscaled, scale);
+				}
+				default:
+					throw new StreamCorruptedException("Bad decimal tag");
+			}
+		}
+
+		String readDecimalString() throws IOException {
+			int tag = readByte();
+			if (tag == 3)
+				return readString();
+			BigDecimal d = readDecimal(tag);
+			return d == null ? null : d.toPlainString();
+		}
+	}
+}
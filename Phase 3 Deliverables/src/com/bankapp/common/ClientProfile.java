@@ -1,8 +1,11 @@
 package com.bankapp.common;
 import java.io.Serializable;
-import java.util.Collections;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class ClientProfile implements Serializable{
 	private String username;
@@ -10,7 +13,13 @@ public class ClientProfile implements Serializable{
 	private String phone;
 	private String address;
 	private String legalName;
-	private List<String> accountIds;
+	// Membership is a hash lookup. The sorted list is only for display: it is
+	// rebuilt on the first read after a change, from the previous sorted list
+	// and the ids added since, so the sort only has a few ids to place.
+	private Set<String> accountIds;
+	private transient List<String> sortedIds;
+	private transient List<String> addedSinceSort;
+	private transient boolean sortedStale;
 	
 	public ClientProfile(String username, String password, String phone, String address, String legalName) {
 		this.username = username;
@@ -18,22 +27,26 @@ public class ClientProfile implements Serializable{
 		this.phone = phone;
 		this.address = address;
 		this.legalName = legalName;
-		// change to list?
-		this.accountIds = new ArrayList<>();
+		this.accountIds = new HashSet<>();
 	}
-	public void addAccountID(String id) {
-        if (id != null && !id.trim().isEmpty() && !this.accountIds.contains(id)) {
-            this.accountIds.add(id.trim());
-            Collections.sort(this.accountIds);
+	public synchronized void addAccountID(String id) {
+        if (id != null && !id.trim().isEmpty() && this.accountIds.add(id.trim())) {
+            if (this.addedSinceSort == null) {
+                this.addedSinceSort = new ArrayList<>();
+            }
+            this.addedSinceSort.add(id.trim());
+            this.sortedStale = true;
         }
     }
-	public void removeAccountID(String id) {
-        if (id != null) {
-            this.accountIds.remove(id);
-			Collections.sort(this.accountIds);
+	public synchronized void removeAccountID(String id) {
+        if (id != null && this.accountIds.remove(id)) {
+            if (this.addedSinceSort != null) {
+                this.addedSinceSort.remove(id);
+            }
+            this.sortedStale = true;
         }
     }
-	public String getAccountID(String id) {
+	public synchronized String getAccountID(String id) {
         if (id != null && this.accountIds.contains(id)) {
             return id;
         }
@@ -55,8 +68,38 @@ public class ClientProfile implements Serializable{
 	public String getLegalName() {
 		return legalName;
 	}
-	public List<String> getAccountIDs() {
-		return accountIds;
+	// the account ids in sorted order, as an unmodifiable list
+	public synchronized List<String> getAccountIDs() {
+		if (this.sortedIds != null && !this.sortedStale) {
+			return this.sortedIds;
+		}
+		String[] ids;
+		if (this.sortedIds == null) {
+			ids = this.accountIds.toArray(new String[0]);
+		} else {
+			// still-linked ids in their old order, then the new ones
+			ids = new String[this.accountIds.size()];
+			int n = 0;
+			for (String id : this.sortedIds) {
+				if (this.accountIds.contains(id)) {
+					ids[n++] = id;
+				}
+			}
+			if (this.addedSinceSort != null) {
+				for (String id : this.addedSinceSort) {
+					// removed and linked again: already kept above
+					if (Collections.binarySearch(this.sortedIds, id) < 0) {
+						ids[n++] = id;
+					}
+				}
+			}
+		}
+		// a sorted run plus a short tail is close to linear for Arrays.sort
+		Arrays.sort(ids);
+		this.sortedIds = List.of(ids);
+		this.addedSinceSort = null;
+		this.sortedStale = false;
+		return this.sortedIds;
 	}
 	public void setUsername(String username) {
 		this.username = username;
@@ -9,25 +9,30 @@ have a checking account with at least $1000 in balance
 - Tellers will set the credit limit when creating a new credit line for the client
 */ 
 public class CreditLine extends Account {
-	private BigDecimal creditLimit;  // maximum overdraft (positive amount)
+	private Money creditLimit;  // maximum overdraft (positive amount)
 
     public CreditLine(String limit) {
         super();
-        this.creditLimit = new BigDecimal(limit);
+        this.creditLimit = Money.parse(limit);
     }
 
     //constructor for client-side refresh
     // constructor for client-side refresh
 	public CreditLine(String id, BigDecimal balance,  List<Transaction> history, BigDecimal limit) {
 		super(id, balance, history);
-        this.creditLimit = limit;
+        this.creditLimit = limit == null ? null : Money.of(limit);
 	}
     
     public void setCreditLimit(String newLimit) {
-        this.creditLimit = new BigDecimal(newLimit);
+        this.creditLimit = Money.parse(newLimit);
     }
     
+    // for display and messages
     public BigDecimal getCreditLimit() {
+        return creditLimit == null ? null : creditLimit.toBigDecimal();
+    }
+
+    public Money getCreditLimitMoney() {
         return creditLimit;
     }
 
@@ -36,12 +41,12 @@ public class CreditLine extends Account {
     public void addTransaction(Transaction trans) {
         // trans.getAmount() is negative for withdrawals,
         // positive for deposits:
-        BigDecimal newBalance = getBalance().add(trans.getAmount());
+        long newBalance = Math.addExact(getBalanceMoney().getCents(), trans.getAmountMoney().getCents());
 
         // check if going over limit
-        if (newBalance.compareTo(creditLimit.negate()) < 0) {
+        if (newBalance < -creditLimit.getCents()) {
             throw new IllegalStateException("Credit limit exceeded: would go to " 
-                + newBalance.toPlainString());
+                + Money.ofCents(newBalance));
         }
 
         super.addTransaction(trans);
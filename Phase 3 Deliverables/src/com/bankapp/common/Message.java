@@ -3,6 +3,7 @@ import java.io.Serializable;
 
 public abstract class Message implements Serializable {
 	private static final long serialVersionUID = 1L;
+	// append new types at the end: the binary codec sends the ordinal
 	public enum TYPE {
 		LOGIN_CLIENT,
 		LOGIN_TELLER,
@@ -24,11 +25,20 @@ public abstract class Message implements Serializable {
 	    EXIT_PROFILE,
 	    TRANSACTION,
 	    SHUTDOWN, 
-		DISCONNECT
+		DISCONNECT,
+		TRANSACTION_RECEIPT,
+		TRANSACTION_BATCH,
+		TRANSACTION_BATCH_RESULT,
+		TRANSFER,
+		TRANSFER_RECEIPT,
+		SESSION_TIMEOUT
 	}
 	
 	private final TYPE type;
     private final SessionInfo session;
+    // set by the client on a request and copied onto the server's reply so
+    // replies can be matched to requests; 0 for unsolicited messages
+    private long requestId;
 
     protected Message(TYPE type, SessionInfo session) {
         this.type = type;
@@ -42,4 +52,12 @@ public abstract class Message implements Serializable {
     public SessionInfo getSession() {
         return session;
     }
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(long requestId) {
+        this.requestId = requestId;
+    }
 }
@@ -0,0 +1,30 @@
+package com.bankapp.common;
+import java.io.IOException;
+
+/*
+ * Turns one Message into a frame payload and back. The codec for a framed
+ * connection is chosen by the client in the connection preamble (see
+ * MessageFrames.writePreamble) and stays fixed for the life of the connection.
+ */
+public interface MessageCodec {
+	// wire id sent in the preamble
+	byte id();
+
+	byte[] encode(Message msg) throws IOException;
+
+	Message decode(byte[] payload, int offset, int length) throws IOException;
+
+	// "binary" or "serialized"; null means no codec (legacy object streams)
+	static MessageCodec forName(String name) {
+		if (name == null || name.isEmpty())
+			return null;
+		switch (name.toLowerCase()) {
+			case "binary":
+				return BinaryMessageCodec.INSTANCE;
+			case "serialized":
+				return SerializedMessageCodec.INSTANCE;
+			default:
+				throw new IllegalArgumentException("Unknown codec: " + name);
+		}
+	}
+}
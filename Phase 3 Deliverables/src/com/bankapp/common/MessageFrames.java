@@ -0,0 +1,86 @@
+package com.bankapp.common;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+
+/*
+ * Length-prefixed message framing used by the non-blocking server transport.
+ * Each frame is a 4-byte big-endian payload length followed by the payload, so
+ * a reader can tell where a message ends without blocking inside readObject.
+ *
+ * A framed connection opens with a 4-byte preamble sent by the client:
+ * 'B' 'K' <protocol version> <codec id>. Every payload after that is encoded
+ * with the codec it names. The magic never collides with the 0xACED header of
+ * a plain ObjectOutputStream, so the blocking server can accept both.
+ */
+public final class MessageFrames {
+	public static final int HEADER_BYTES = 4;
+	public static final int PREAMBLE_BYTES = 4;
+	public static final byte MAGIC_0 = 'B';
+	public static final byte MAGIC_1 = 'K';
+	public static final byte PROTOCOL_VERSION = 1;
+	// refuse anything larger so a bad length prefix cannot make us allocate gigabytes
+	public static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+
+	private MessageFrames() {
+	}
+
+	public static byte[] preamble(MessageCodec codec) {
+		return new byte[] { MAGIC_0, MAGIC_1, PROTOCOL_VERSION, codec.id() };
+	}
+
+	public static boolean isPreamble(int b0, int b1) {
+		return b0 == MAGIC_0 && b1 == MAGIC_1;
+	}
+
+	// validate a preamble and return the codec it selects
+	public static MessageCodec codecFromPreamble(byte[] preamble, int offset) throws IOException {
+		if (!isPreamble(preamble[offset], preamble[offset + 1]))
+			throw new StreamCorruptedException("Not a framed connection");
+		if (preamble[offset + 2] != PROTOCOL_VERSION)
+			throw new StreamCorruptedException("Unsupported protocol version " + preamble[offset + 2]);
+		switch (preamble[offset + 3]) {
+			case SerializedMessageCodec.ID:
+				return SerializedMessageCodec.INSTANCE;
+			case BinaryMessageCodec.ID:
+				return BinaryMessageCodec.INSTANCE;
+			default:
+				throw new StreamCorruptedException("Unknown codec " + preamble[offset + 3]);
+		}
+	}
+
+	public static void checkLength(int length) throws IOException {
+		if (length < 0 || length > MAX_FRAME_BYTES) {
+			throw new StreamCorruptedException("Bad frame length: " + length);
+		}
+	}
+
+	// blocking helpers for framed connections
+	public static void writePreamble(OutputStream out, MessageCodec codec) throws IOException {
+		out.write(preamble(codec));
+		out.flush();
+	}
+
+	public static MessageCodec readPreamble(DataInputStream in) throws IOException {
+		byte[] preamble = new byte[PREAMBLE_BYTES];
+		in.readFully(preamble);
+		return codecFromPreamble(preamble, 0);
+	}
+
+	public static void write(DataOutputStream out, MessageCodec codec, Message msg) throws IOException {
+		byte[] payload = codec.encode(msg);
+		out.writeInt(payload.length);
+		out.write(payload);
+		out.flush();
+	}
+
+	public static Message read(DataInputStream in, MessageCodec codec) throws IOException {
+		int length = in.readInt();
+		checkLength(length);
+		byte[] payload = new byte[length];
+		in.readFully(payload);
+		return codec.decode(payload, 0, length);
+	}
+}
@@ -0,0 +1,126 @@
+package com.bankapp.common;
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+// An amount of money as a whole number of cents. Immutable; arithmetic
+// throws ArithmeticException on overflow rather than wrapping.
+//
+// Balances, limits and transaction amounts are kept as Money so the
+// per-transaction path does long arithmetic. BigDecimal only appears where
+// amounts enter or leave: user input, messages and the UI.
+public final class Money implements Comparable<Money>, Serializable {
+	private static final long serialVersionUID = 1L;
+	// digits after the decimal point
+	public static final int SCALE = 2;
+	public static final Money ZERO = new Money(0);
+
+	private final long cents;
+
+	private Money(long cents) {
+		this.cents = cents;
+	}
+
+	public static Money ofCents(long cents) {
+		return cents == 0 ? ZERO : new Money(cents);
+	}
+
+	// exact: more than two decimal places, or too large, is an ArithmeticException
+	public static Money of(BigDecimal amount) {
+		return ofCents(amount.movePointRight(SCALE).longValueExact());
+	}
+
+	// Parses user input such as "125", "-40.5" or "1e3". Anything that is not
+	// a whole number of cents in range is a NumberFormatException.
+	public static Money parse(String s) {
+		if (s == null) {
+			throw new NumberFormatException("No amount given");
+		}
+		// plain [+-]digits[.dd] without going through BigDecimal
+		int i = 0;
+		int n = s.length();
+		boolean negative = false;
+		if (i < n && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+			negative = s.charAt(i) == '-';
+			i++;
+		}
+		long cents = 0;
+		int digits = 0;
+		int decimals = -1;
+		try {
+			for (; i < n; i++) {
+				char c = s.charAt(i);
+				if (c == '.' && decimals < 0) {
+					decimals = 0;
+					continue;
+				}
+				if (c < '0' || c > '9' || decimals == SCALE) {
+					// exponents, trailing zeros past the cents and the like
+					return of(new BigDecimal(s));
+				}
+				cents = Math.addExact(Math.multiplyExact(cents, 10), c - '0');
+				digits++;
+				if (decimals >= 0) {
+					decimals++;
+				}
+			}
+			if (digits == 0) {
+				throw new NumberFormatException("Not an amount: " + s);
+			}
+			for (int d = Math.max(decimals, 0); d < SCALE; d++) {
+				cents = Math.multiplyExact(cents, 10);
+			}
+		} catch (ArithmeticException e) {
+			throw new NumberFormatException("Not a whole number of cents in range: " + s);
+		}
+		return ofCents(negative ? -cents : cents);
+	}
+
+	public long getCents() {
+		return cents;
+	}
+
+	public Money plus(Money other) {
+		return ofCents(Math.addExact(cents, other.cents));
+	}
+
+	public Money minus(Money other) {
+		return ofCents(Math.subtractExact(cents, other.cents));
+	}
+
+	public Money negate() {
+		return ofCents(Math.negateExact(cents));
+	}
+
+	public int signum() {
+		return Long.signum(cents);
+	}
+
+	public boolean isNegative() {
+		return cents < 0;
+	}
+
+	@Override
+	public int compareTo(Money other) {
+		return Long.compare(cents, other.cents);
+	}
+
+	public BigDecimal toBigDecimal() {
+		return BigDecimal.valueOf(cents, SCALE);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof Money && ((Money) o).cents == cents;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(cents);
+	}
+
+	// plain decimal with two places, e.g. "-40.50"
+	@Override
+	public String toString() {
+		return toBigDecimal().toPlainString();
+	}
+}
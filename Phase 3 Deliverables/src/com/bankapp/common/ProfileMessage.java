@@ -40,7 +40,7 @@ public final class ProfileMessage extends Message {
         this.phone = phone;
         this.address = address;
         this.legalName = legalName;
-        this.accounts = List.copyOf(accounts);
+        this.accounts = accounts == null ? null : List.copyOf(accounts);
     }
 
 //	// Constructor for creating new Profile STEP 1: valid username (unnecessary, failureMessages with a string message should suffice)
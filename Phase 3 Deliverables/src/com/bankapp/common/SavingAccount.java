@@ -49,6 +49,10 @@ public class SavingAccount extends Account {
 	}
     public LocalDate getReset(){
         return this.lastReset;
+    }
+    // restores the month the count belongs to (server snapshot load)
+    public void setReset(LocalDate lastReset) {
+        this.lastReset = lastReset;
     }
 	/**-- Internal reset logic --**/
     private void checkReset() {
@@ -61,18 +65,22 @@ public class SavingAccount extends Account {
     }
 
     /**-- Main transaction hook --**/
+    // holds the account's monitor throughout, so the count moves together
+    // with the history it counts
     @Override
-    public void addTransaction(Transaction trans) {
+    public synchronized void addTransaction(Transaction trans) {
         // reset if we've crossed into a new month
         checkReset();
 
-        if (trans.getOperation() == Transaction.OPERATION.WITHDRAW) {
-            if (withdrawCount >= withdrawLimit) {
-                throw new IllegalStateException("Withdrawal limit reached");
-            }
-            withdrawCount++;
+        boolean withdrawal = trans.getOperation() == Transaction.OPERATION.WITHDRAW;
+        if (withdrawal && withdrawCount >= withdrawLimit) {
+            throw new IllegalStateException("Withdrawal limit reached");
         }
 
         super.addTransaction(trans);
+        // only counted once recorded: the balance may have refused it
+        if (withdrawal) {
+            withdrawCount++;
+        }
     }
 }
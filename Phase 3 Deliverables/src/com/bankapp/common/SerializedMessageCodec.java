@@ -0,0 +1,40 @@
+package com.bankapp.common;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+
+// Java serialization of each message into its own frame. Kept for clients that
+// predate the binary codec; every frame carries its full class descriptors.
+public final class SerializedMessageCodec implements MessageCodec {
+	public static final byte ID = 1;
+	public static final SerializedMessageCodec INSTANCE = new SerializedMessageCodec();
+
+	private SerializedMessageCodec() {
+	}
+
+	@Override
+	public byte id() {
+		return ID;
+	}
+
+	@Override
+	public byte[] encode(Message msg) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(msg);
+		}
+		return bytes.toByteArray();
+	}
+
+	@Override
+	public Message decode(byte[] payload, int offset, int length) throws IOException {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload, offset, length))) {
+			return (Message) in.readObject();
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw new StreamCorruptedException("Unknown message in frame: " + e.getMessage());
+		}
+	}
+}
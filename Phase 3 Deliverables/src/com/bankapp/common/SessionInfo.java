@@ -11,7 +11,8 @@ public final class SessionInfo implements Serializable {
 	private final String username;
 	private final String session_id;
 	private final ROLE role;
-	private long lastActive;
+	// stamped by each request, read by the server's idle-session reaper
+	private volatile long lastActive;
 	
 	public SessionInfo() {
 		this.username = null;
@@ -26,6 +27,14 @@ public final class SessionInfo implements Serializable {
 		this.role = role;
         this.lastActive = System.currentTimeMillis();
 	}
+
+	// used by the binary codec to rebuild a session as it was sent
+	SessionInfo(String username, String sessionID, ROLE role, long lastActive) {
+		this.username = username;
+		this.session_id = sessionID;
+		this.role = role;
+		this.lastActive = lastActive;
+	}
 	public String getUsername() {
 		return username;
 	}
@@ -0,0 +1,12 @@
+package com.bankapp.common;
+import com.bankapp.common.Message.TYPE;
+
+// Sent, unrequested, when the server ends a session that has been idle for
+// longer than its session timeout; the server then closes the connection.
+public class SessionTimeoutMessage extends Message {
+	private static final long serialVersionUID = 1L;
+
+	public SessionTimeoutMessage() {
+		super(TYPE.SESSION_TIMEOUT, null);
+	}
+}
@@ -15,6 +15,12 @@ public class SuccessMessage extends Message {
         this.message = message;
     }
 
+    // for replies that are successes carrying extra data
+    protected SuccessMessage(TYPE type, String message, SessionInfo session) {
+        super(type, session);
+        this.message = message;
+    }
+
     public String getMessage() {
         return message;
     }
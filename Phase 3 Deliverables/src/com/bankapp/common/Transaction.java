@@ -10,14 +10,32 @@ public class Transaction implements Serializable {
 		DEPOSIT
 	}
 	private Date created;
-	private BigDecimal amount;
+	private Money amount;
 	private OPERATION op;
+	// the account's balance once this transaction was applied; set when the
+	// server appends it, null in histories rebuilt from messages
+	private Money balanceAfter;
 	
 	public Transaction(String amount, OPERATION op) {
-		this.created = new Date();
-		this.amount = new BigDecimal(amount);
+		this(Money.parse(amount), op);
+	}
+	public Transaction(Money amount, OPERATION op) {
+		this(new Date(), amount, op);
+	}
+	// rebuilds a transaction as it was recorded (wire codec, server journal)
+	public Transaction(Date created, BigDecimal amount, OPERATION op) {
+		this(created, Money.of(amount), op);
+	}
+	public Transaction(Date created, Money amount, OPERATION op) {
+		this.created = created;
+		this.amount = amount;
 		this.op = op;
 	}
+	// a stored transaction together with the running balance it left
+	public Transaction(Date created, Money amount, OPERATION op, Money balanceAfter) {
+		this(created, amount, op);
+		this.balanceAfter = balanceAfter;
+	}
 	public String getDate() {
 		// getter for formatted date
 		SimpleDateFormat format = new SimpleDateFormat("MM/dd/yyyy");
@@ -27,10 +45,21 @@ public class Transaction implements Serializable {
 	public Date getCreated(){
 		return this.created;
 	}
+	// for display and messages
 	public BigDecimal getAmount() {
+		return amount.toBigDecimal();
+	}
+	public Money getAmountMoney() {
 		return amount;
 	}
 	public OPERATION getOperation() {
 		return op;
 	}
+	public Money getBalanceAfter() {
+		return balanceAfter;
+	}
+	// stamped by Account as the transaction is appended to its history
+	void setBalanceAfter(Money balance) {
+		this.balanceAfter = balance;
+	}
 }
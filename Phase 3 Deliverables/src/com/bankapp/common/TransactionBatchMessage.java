@@ -0,0 +1,48 @@
+package com.bankapp.common;
+import java.io.Serializable;
+import java.util.List;
+
+// A teller's batch of transactions, e.g. a stack of deposits or an ACH-style
+// file. The server applies the entries in order, in one pass, and journals
+// them as one record. When atomic, either every entry is applied or none is.
+// The reply is a TransactionBatchResultMessage with one result per entry.
+public final class TransactionBatchMessage extends Message {
+	private static final long serialVersionUID = 1L;
+
+	public static final class Entry implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final String accountID;
+		private final String amount; // raw input, validated by the server
+		private final Transaction.OPERATION op;
+
+		public Entry(String accountID, String amount, Transaction.OPERATION op) {
+			this.accountID = accountID;
+			this.amount = amount;
+			this.op = op;
+		}
+		public String getAccountID() {
+			return accountID;
+		}
+		public String getAmount() {
+			return amount;
+		}
+		public Transaction.OPERATION getOperation() {
+			return op;
+		}
+	}
+
+	private final List<Entry> entries;
+	private final boolean atomic;
+
+	public TransactionBatchMessage(SessionInfo session, List<Entry> entries, boolean atomic) {
+		super(Message.TYPE.TRANSACTION_BATCH, session);
+		this.entries = entries;
+		this.atomic = atomic;
+	}
+	public List<Entry> getEntries() {
+		return entries;
+	}
+	public boolean isAtomic() {
+		return atomic;
+	}
+}
@@ -0,0 +1,68 @@
+package com.bankapp.common;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.List;
+
+import com.bankapp.common.Message.TYPE;
+
+// Reply to a TRANSACTION_BATCH: one result per entry, in the batch's order.
+public class TransactionBatchResultMessage extends SuccessMessage {
+	private static final long serialVersionUID = 1L;
+
+	public static final class Result implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final String error; // null when the entry was applied
+		private final String balance; // account balance after the entry, if applied
+		private final int sequence; // position in the account history, -1 if not applied
+
+		private Result(String error, String balance, int sequence) {
+			this.error = error;
+			this.balance = balance;
+			this.sequence = sequence;
+		}
+		public static Result applied(BigDecimal balance, int sequence) {
+			return new Result(null, balance.toPlainString(), sequence);
+		}
+		public static Result failed(String error) {
+			return new Result(error, null, -1);
+		}
+		public boolean isApplied() {
+			return error == null;
+		}
+		public String getError() {
+			return error;
+		}
+		public BigDecimal getBalance() {
+			return balance == null ? null : new BigDecimal(balance);
+		}
+		public int getSequence() {
+			return sequence;
+		}
+		// for the binary codec
+		String getBalanceString() {
+			return balance;
+		}
+		static Result of(String error, String balance, int sequence) {
+			return new Result(error, balance, sequence);
+		}
+	}
+
+	private final List<Result> results;
+
+	public TransactionBatchResultMessage(String message, List<Result> results) {
+		super(TYPE.TRANSACTION_BATCH_RESULT, message, null);
+		this.results = results;
+	}
+	public List<Result> getResults() {
+		return results;
+	}
+	public int getAppliedCount() {
+		int applied = 0;
+		for (Result r : results) {
+			if (r.isApplied()) {
+				applied++;
+			}
+		}
+		return applied;
+	}
+}
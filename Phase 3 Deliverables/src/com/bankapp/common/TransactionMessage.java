@@ -17,6 +17,14 @@ public final class TransactionMessage extends Message {
 		this.op = op;
 		this.accountID = accountID;
 	}
+	// used by the binary codec to rebuild a message as it was sent
+	TransactionMessage(SessionInfo session_id, Date created, String amount, Transaction.OPERATION op, String accountID) {
+		super(Message.TYPE.TRANSACTION, session_id);
+		this.amount = amount;
+		this.created = created;
+		this.op = op;
+		this.accountID = accountID;
+	}
 	public Date getDate() {
 		return created;
 	}
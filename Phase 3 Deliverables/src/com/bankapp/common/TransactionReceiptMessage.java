@@ -0,0 +1,45 @@
+package com.bankapp.common;
+import java.math.BigDecimal;
+
+import com.bankapp.common.Message.TYPE;
+
+// Reply to a successful TRANSACTION. Carries the account state after the
+// transaction so clients can update their copy without reloading the account.
+public class TransactionReceiptMessage extends SuccessMessage {
+    private static final long serialVersionUID = 1L;
+    private final String accountID;
+    private final String balance; // big-decimal→string
+    private final int sequence; // position of the transaction in the account history
+    private final int withdrawCount; // only for savings
+    private final Transaction transaction;
+
+    public TransactionReceiptMessage(String message, String accountID, BigDecimal balance, int sequence,
+            int withdrawCount, Transaction transaction) {
+        super(TYPE.TRANSACTION_RECEIPT, message, null);
+        this.accountID = accountID;
+        this.balance = balance.toPlainString();
+        this.sequence = sequence;
+        this.withdrawCount = withdrawCount;
+        this.transaction = transaction;
+    }
+
+    public String getAccountID() {
+        return accountID;
+    }
+
+    public BigDecimal getBalance() {
+        return new BigDecimal(balance);
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public int getWithdrawCount() {
+        return withdrawCount;
+    }
+
+    public Transaction getTransaction() {
+        return transaction;
+    }
+}
@@ -0,0 +1,27 @@
+package com.bankapp.common;
+
+// Moves money from one account to another as a single change: the server
+// records a withdrawal on the source and a deposit on the destination, or
+// neither. The reply is a TransferReceiptMessage carrying both legs.
+public final class TransferMessage extends Message {
+	private static final long serialVersionUID = 1L;
+	private final String fromAccountID;
+	private final String toAccountID;
+	private final String amount; // raw input, validated by the server
+
+	public TransferMessage(SessionInfo session, String fromAccountID, String toAccountID, String amount) {
+		super(Message.TYPE.TRANSFER, session);
+		this.fromAccountID = fromAccountID;
+		this.toAccountID = toAccountID;
+		this.amount = amount;
+	}
+	public String getFromAccountID() {
+		return fromAccountID;
+	}
+	public String getToAccountID() {
+		return toAccountID;
+	}
+	public String getAmount() {
+		return amount;
+	}
+}
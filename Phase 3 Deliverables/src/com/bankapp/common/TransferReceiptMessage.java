@@ -0,0 +1,25 @@
+package com.bankapp.common;
+
+import com.bankapp.common.Message.TYPE;
+
+// Reply to a successful TRANSFER: the receipt for each leg, so a client can
+// update whichever of the two accounts it has open without reloading it.
+public class TransferReceiptMessage extends SuccessMessage {
+	private static final long serialVersionUID = 1L;
+	private final TransactionReceiptMessage debit;
+	private final TransactionReceiptMessage credit;
+
+	public TransferReceiptMessage(String message, TransactionReceiptMessage debit, TransactionReceiptMessage credit) {
+		super(TYPE.TRANSFER_RECEIPT, message, null);
+		this.debit = debit;
+		this.credit = credit;
+	}
+	// the withdrawal from the source account
+	public TransactionReceiptMessage getDebit() {
+		return debit;
+	}
+	// the deposit into the destination account
+	public TransactionReceiptMessage getCredit() {
+		return credit;
+	}
+}
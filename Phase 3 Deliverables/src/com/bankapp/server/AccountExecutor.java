@@ -0,0 +1,118 @@
+package com.bankapp.server;
+
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Runs account mutations one at a time per account. Every account id hashes
+// to one of a fixed set of single-threaded lanes, so all of an account's
+// operations are applied in arrival order on one thread, and never race one
+// another, while different accounts proceed in parallel. Sessions sharing an
+// account (SHARE_ACCOUNT) can therefore transact on it at the same time
+// without having to take turns holding it.
+public class AccountExecutor {
+    private final ExecutorService[] lanes;
+
+    public AccountExecutor(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        lanes = new ExecutorService[threads];
+        for (int i = 0; i < threads; i++) {
+            String name = "account-worker-" + i;
+            lanes[i] = Executors.newSingleThreadExecutor(task -> {
+                Thread t = new Thread(task, name);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    // queues task behind everything already queued for the same account
+    public void execute(String accountId, Runnable task) {
+        lanes[laneOf(accountId)].execute(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                ServerLog.error("Account operation failed", "account", accountId, "error", e);
+            }
+        });
+    }
+
+    // Runs task once nothing else is running on any of the given accounts:
+    // every lane involved is parked behind it, and it runs on the first. Tasks
+    // spanning lanes are queued on all of their lanes in one step, so any two
+    // are in the same order on every lane they share and never wait on each
+    // other.
+    public void executeAcross(Collection<String> accountIds, Runnable task) {
+        int[] involved = accountIds.stream().mapToInt(this::laneOf).distinct().sorted().toArray();
+        if (involved.length <= 1) {
+            execute(involved.length == 0 ? null : accountIds.iterator().next(), task);
+            return;
+        }
+        CountDownLatch parked = new CountDownLatch(involved.length - 1);
+        CountDownLatch done = new CountDownLatch(1);
+        synchronized (this) {
+            lanes[involved[0]].execute(() -> {
+                try {
+                    awaitUninterruptibly(parked);
+                    task.run();
+                } catch (RuntimeException e) {
+                    ServerLog.error("Account operation failed", "accounts", accountIds, "error", e);
+                } finally {
+                    done.countDown();
+                }
+            });
+            for (int i = 1; i < involved.length; i++) {
+                lanes[involved[i]].execute(() -> {
+                    parked.countDown();
+                    awaitUninterruptibly(done);
+                });
+            }
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int laneOf(String accountId) {
+        if (accountId == null) {
+            return 0;
+        }
+        int h = accountId.hashCode();
+        h ^= h >>> 16; // spread ids that differ only in their last characters
+        return Math.floorMod(h, lanes.length);
+    }
+
+    // stops taking work and waits for what is already queued, so every
+    // accepted change reaches the journal before it closes
+    public void shutdown() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        try {
+            for (ExecutorService lane : lanes) {
+                if (!lane.awaitTermination(10, TimeUnit.SECONDS)) {
+                    System.out.println("[Server] Account operations still queued at shutdown were dropped.");
+                    lane.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
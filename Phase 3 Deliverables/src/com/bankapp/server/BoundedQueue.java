@@ -0,0 +1,98 @@
+package com.bankapp.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// A connection's queue: at most capacity items, in an array allocated up
+// front, plus room for one end marker, which always fits so the consumer can
+// be told to stop even while the queue is full. Any number of producers, one
+// consumer.
+final class BoundedQueue<T> {
+    private final ArrayBlockingQueue<T> items;
+    // free places for items (the marker's is kept aside)
+    private final Semaphore room;
+    private final T marker;
+    private final AtomicBoolean markerQueued = new AtomicBoolean();
+    private final int capacity;
+
+    BoundedQueue(int capacity, T marker) {
+        this.items = new ArrayBlockingQueue<>(capacity + 1);
+        this.room = new Semaphore(capacity);
+        this.marker = marker;
+        this.capacity = capacity;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    // Queues item if there is room, waiting up to waitMillis for some (0 =
+    // not at all). False if there was none, or the wait was interrupted.
+    boolean offer(T item, long waitMillis) {
+        try {
+            if (waitMillis <= 0 ? !room.tryAcquire() : !room.tryAcquire(waitMillis, TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        items.add(item);
+        return true;
+    }
+
+    // Waits up to waitMillis until there is room for an item, without taking
+    // it. False if there was none, or the wait was interrupted.
+    boolean awaitRoom(long waitMillis) {
+        try {
+            if (!room.tryAcquire(waitMillis, TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        room.release();
+        return true;
+    }
+
+    // Queues item, waiting as long as it takes for room.
+    void put(T item) throws InterruptedException {
+        room.acquire();
+        items.add(item);
+    }
+
+    // Queues the end marker behind everything queued so far; only the first
+    // call does anything.
+    void offerMarker() {
+        if (markerQueued.compareAndSet(false, true)) {
+            items.add(marker);
+        }
+    }
+
+    T take() throws InterruptedException {
+        return freed(items.take());
+    }
+
+    T peek() {
+        return items.peek();
+    }
+
+    // removes the head, or returns null when empty
+    T poll() {
+        return freed(items.poll());
+    }
+
+    boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    private T freed(T item) {
+        if (item != null && item != marker) {
+            room.release();
+        }
+        return item;
+    }
+}
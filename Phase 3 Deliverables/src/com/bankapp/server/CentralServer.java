@@ -1,17 +1,27 @@
 package com.bankapp.server;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
 
 import com.bankapp.common.Account;
 import com.bankapp.common.AccountMessage;
@@ -24,23 +34,29 @@ import com.bankapp.common.FailureMessage;
 import com.bankapp.common.LoginMessage;
 import com.bankapp.common.LogoutMessage;
 import com.bankapp.common.Message;
+import com.bankapp.common.Money;
 import com.bankapp.common.ProfileMessage;
 import com.bankapp.common.SavingAccount;
 import com.bankapp.common.SessionInfo;
+import com.bankapp.common.SessionTimeoutMessage;
 import com.bankapp.common.ShareAccountMessage;
 import com.bankapp.common.ShutDownMessage;
 import com.bankapp.common.SuccessMessage;
 import com.bankapp.common.Transaction;
+import com.bankapp.common.TransactionBatchMessage;
+import com.bankapp.common.TransactionBatchResultMessage;
 import com.bankapp.common.TransactionMessage;
+import com.bankapp.common.TransactionReceiptMessage;
+import com.bankapp.common.TransferMessage;
+import com.bankapp.common.TransferReceiptMessage;
 import com.bankapp.common.Message.TYPE;
 import com.bankapp.common.SessionInfo.ROLE;
 import com.bankapp.common.Transaction.OPERATION;
 
 public class CentralServer {
-	// file to hold persistent database data
-	// private static final String saveFile = "src/com/bankapp/server/database.ser";
-	// // ABSOLUTELY MUST HAVE SAME FILEPATH!!
-	// private final Database DB;
+	private final ServerConfig config;
+	// owns the maps below and persists them (journal + snapshots)
+	private final Database DB;
 
 	// username -> password
 	private final Map<String, String> tellerDatabase;
@@ -48,76 +64,148 @@ public class CentralServer {
 	private final Map<String, ClientProfile> clientDatabase;
 	// id -> account objects
 	private final Map<String, Account> accountDatabase;
-	private int nextAccountId;
+	// every change to clientDatabase/accountDatabase is recorded here before
+	// the client hears it succeeded
+	private final Journal journal;
 
-	// session_ids -> sessionInfo
-	private final ConcurrentMap<String, SessionInfo> sessionIDs = new ConcurrentHashMap<>();
+	// transactions per LOAD_ACCOUNT reply when the client does not ask for a size,
+	// and the most any one reply will carry
+	private static final int HISTORY_PAGE_SIZE = 50;
+	private static final int MAX_HISTORY_PAGE = 1000;
+
+	// most entries one TRANSACTION_BATCH may carry (keeps its journal record
+	// well under Journal's size limit)
+	private static final int MAX_BATCH_ENTRIES = 10_000;
+
+	// a credit line needs a checking account holding at least this much
+	private static final Money CREDIT_LINE_MIN_CHECKING = Money.ofCents(1000_00);
+
+	// live sessions, by session id and by (username, role)
+	private final SessionTable sessions = new SessionTable();
+	// ends sessions left idle longer than the session timeout
+	private final SessionReaper reaper;
+	// LOAD_PROFILE's account summaries as of each profile's last load
+	private final ProfileSummaries summaries;
 
 	// checks and prevent concurrent accounts, profiles, and tellers from being
 	// opened
-	// username -> lock
-	private final ConcurrentMap<String, ReentrantLock> accountLocks = new ConcurrentHashMap<>();
-	private final ConcurrentMap<String, ReentrantLock> profileLocks = new ConcurrentHashMap<>();
-	private final ConcurrentMap<String, ReentrantLock> tellerLocks = new ConcurrentHashMap<>();
+	// id/username -> lease naming the owning session and its expiry
+	// ownership belongs to the session rather than the thread, so a session's
+	// requests may be handled on any thread (NIO loops, virtual threads)
+	private final LeaseTable accountLocks;
+	private final LeaseTable profileLocks;
+	private final LeaseTable tellerLocks;
+
+	// applies TRANSACTION, SAVE_ACCOUNT, DELETE_ACCOUNT and SHARE_ACCOUNT one
+	// at a time per account, off the connection's thread
+	private final AccountExecutor accountExecutor;
+
+	// per message type counters and latencies, and the connections' queues
+	private final ServerMetrics metrics = new ServerMetrics(this::connectionMetrics);
 
 	// thread-safe variant of ArrayList in Java
 	// best choice if read operation is most frequently used
-	private final List<ClientHandler> client_list = new CopyOnWriteArrayList<>();
+	private final List<ClientConnection> client_list = new CopyOnWriteArrayList<>();
 
 	public CentralServer() {
-		/*
-		 * Database fooDB = Database.loadDatabase(saveFile);
-		 * boolean isFresh = (fooDB == null);
-		 * 
-		 * // load in database info if needed
-		 * if (isFresh) {
-		 * System.out.println("Starting with fresh database");
-		 * DB = Database.getInstance();
-		 * 
-		 * } else {
-		 * this.DB = fooDB;
-		 * }
-		 */
-
-		// initialize data structures owned by CentralServer;
-		this.tellerDatabase = new ConcurrentHashMap<>(); // DB.getTellerDatabase();
-		this.clientDatabase = new ConcurrentHashMap<>(); // DB.getClientDatabase();
-		this.accountDatabase = new ConcurrentHashMap<>();// DB.getAccountDatabase();
-
-		// if (isFresh) {
-
-		ClientProfile alice = new ClientProfile(
-				"alice", "pass123", "555-0001", "123 Maple St.", "Alice Anderson");
-
-		CheckingAccount aliceChk = new CheckingAccount();
-		aliceChk.addTransaction(new Transaction("500.00", Transaction.OPERATION.DEPOSIT));
-		String aliceChkId = generateNewAccountId();
-		aliceChk.setID(aliceChkId);
-		accountDatabase.putIfAbsent(aliceChkId, aliceChk);
-		alice.addAccountID(aliceChkId);
-
-		clientDatabase.putIfAbsent("alice", alice);
-
-		ClientProfile bob = new ClientProfile(
-				"bob", "password", "555-0002", "456 Oak Ave.", "Bob Brown");
-		CheckingAccount bobChk = new CheckingAccount();
-		bobChk.addTransaction(new Transaction("1500.00", Transaction.OPERATION.DEPOSIT));
-		String bobChkId = generateNewAccountId();
-		bobChk.setID(bobChkId);
-		accountDatabase.putIfAbsent(bobChkId, bobChk);
-		bob.addAccountID(bobChkId);
-
-		clientDatabase.putIfAbsent("bob", bob);
+		this(new ServerConfig());
+	}
+
+	public CentralServer(ServerConfig config) {
+		this.config = config;
+		ServerLog.setLevel(config.getLogLevel());
+		this.accountLocks = new LeaseTable(config.getLeaseTtlMillis());
+		this.profileLocks = new LeaseTable(config.getLeaseTtlMillis());
+		this.tellerLocks = new LeaseTable(config.getLeaseTtlMillis());
+		this.accountExecutor = new AccountExecutor(config.getAccountThreads());
+		this.reaper = new SessionReaper(sessions, config.getSessionTimeoutMillis(), config.getReaperTickMillis(),
+				this::expireSession);
+
+		// load in database info: latest snapshot plus the journal after it;
+		// only a fresh database gets seed data
+		boolean isFresh;
+		try {
+			this.DB = new Database(config);
+			isFresh = DB.recover();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not load the database in " + config.getDataDir(), e);
+		}
+
+		// initialize data structures owned by the Database
+		this.tellerDatabase = DB.getTellerDatabase();
+		this.clientDatabase = DB.getClientDatabase();
+		this.accountDatabase = DB.getAccountDatabase();
+		this.journal = DB.getJournal();
+		this.summaries = new ProfileSummaries(accountDatabase);
+
+		if (isFresh) {
+			seedClient("alice", "pass123", "555-0001", "123 Maple St.", "Alice Anderson", "500.00");
+			seedClient("bob", "password", "555-0002", "456 Oak Ave.", "Bob Brown", "1500.00");
+		}
 
 		// teller
 		tellerDatabase.putIfAbsent("teller1", "letmein");
+		if (config.getTellersFile() != null) {
+			loadTellers(Paths.get(config.getTellersFile()));
+		}
 
-		// }
+		DB.startCheckpointer(config.getCheckpointMillis());
+		DB.startReconciler(config.getReconcileMillis());
+
+		if (config.isJmxEnabled()) {
+			metrics.registerMBeans();
+		}
+		metrics.startDumper(config.getMetricsMillis());
+	}
+
+	// Provisions the tellers listed in the file, one "username:password" per
+	// line; blank lines and lines starting with # are skipped.
+	private void loadTellers(Path file) {
+		List<String> lines;
+		try {
+			lines = Files.readAllLines(file);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read tellers from " + file, e);
+		}
+		int loaded = 0;
+		for (String line : lines) {
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			int colon = line.indexOf(':');
+			if (colon <= 0) {
+				throw new IllegalArgumentException(file + ": expected username:password, got " + line);
+			}
+			tellerDatabase.put(line.substring(0, colon), line.substring(colon + 1));
+			loaded++;
+		}
+		System.out.println("[Server] Loaded " + loaded + " teller(s) from " + file + ".");
+	}
+
+	// demo client with one checking account holding an opening deposit
+	private void seedClient(String username, String password, String phone, String address, String legalName,
+			String deposit) {
+		ClientProfile profile = new ClientProfile(username, password, phone, address, legalName);
+		clientDatabase.putIfAbsent(username, profile);
+		journal.createProfile(username, password, phone, address, legalName);
+
+		CheckingAccount checking = new CheckingAccount();
+		String checkingId = generateNewAccountId();
+		checking.setID(checkingId);
+		accountDatabase.putIfAbsent(checkingId, checking);
+		profile.addAccountID(checkingId);
+		journal.createAccount(username, checkingId, AccountMessage.ACCOUNT_TYPE.CHECKING, 0, null);
+
+		Transaction opening = new Transaction(deposit, Transaction.OPERATION.DEPOSIT);
+		checking.addTransaction(opening);
+		journal.transaction(checkingId, 0, opening, 0);
 	}
 
 	// Runs the actual server
 	public static void main(String[] args) {
-		CentralServer serverInstance = new CentralServer(); // <== Create instance
+		ServerConfig config = ServerConfig.fromArgs(args);
+		CentralServer serverInstance = new CentralServer(config); // <== Create instance
 
 		// In case the server unexpectedly or forcefully closes
 		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -141,16 +229,35 @@ public class CentralServer {
 		consoleListener.setDaemon(true); // won’t block JVM exit
 		consoleListener.start();
 
-		try (ServerSocket server = new ServerSocket(7777)) {
-			System.out.println("[Server] Server Initiated on port 7777.");
+		if (config.getTransport() == ServerConfig.TRANSPORT.NIO) {
+			try {
+				new NioServer(serverInstance, config).serve();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return;
+		}
+
+		Executor connectionExecutor;
+		if (config.getExecutor() == ServerConfig.EXECUTOR.VIRTUAL) {
+			connectionExecutor = newVirtualThreadExecutor();
+		} else {
+			connectionExecutor = task -> new Thread(task).start();
+		}
+
+		try (ServerSocket server = new ServerSocket(config.getPort())) {
+			System.out.println("[Server] Server Initiated on port " + config.getPort()
+					+ " (" + config.getExecutor() + " threads).");
 			server.setReuseAddress(true);
 			while (true) {
 				Socket client = server.accept();
-				System.out.println("[Server] New Client Connected: " + client.getInetAddress().getHostAddress());
+				ServerLog.info("Client connected", "peer", client.getRemoteSocketAddress());
+				// replies are small single writes; don't let Nagle hold them back
+				client.setTcpNoDelay(true);
 
-				ClientHandler clientSock = new ClientHandler(client, serverInstance);
+				ClientHandler clientSock = new ClientHandler(client, serverInstance, connectionExecutor);
 				serverInstance.addClient(clientSock); // Add to list
-				new Thread(clientSock).start();
+				connectionExecutor.execute(clientSock);
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -158,89 +265,155 @@ public class CentralServer {
 	}
 
 
+	// Executors.newVirtualThreadPerTaskExecutor() only exists on Java 21+, so look
+	// it up reflectively and fall back to pooled platform threads elsewhere
+	static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			System.out.println("[Server] Virtual threads unavailable on this JVM, using platform threads.");
+			return Executors.newCachedThreadPool();
+		}
+	}
+
 	public int getNextAccountId() { 
-        return this.nextAccountId;
+        return DB.getNextAccountId();
     }
 
-    // this will be called in handleCreateAccount()
-    public void setNextAccountID(int n){
-        this.nextAccountId = n;
-    }
-	// helper for new account creation
+	// helper for new account creation; handlers on different lanes may call
+	// it at once, so the number is taken in one step
 	private String generateNewAccountId() {
-		int nextNum = getNextAccountId();
-		String newId = "ACC" + nextNum;
-		setNextAccountID(nextNum + 1);
-		return newId;
+		return "ACC" + DB.allocateAccountId();
+	}
+
+	public void handleMessage(Message msg, ClientConnection connection) {
+		long start = System.nanoTime();
+		// a checkpoint waits for changes in progress and briefly holds off new ones
+		Lock changes = DB.changes();
+		changes.lock();
+		try {
+			dispatchMessage(msg, connection, start);
+		} finally {
+			changes.unlock();
+			metrics.of(msg.getType()).handle.recordSince(start);
+		}
+	}
+
+	// Queues a change to one account on that account's lane. It runs holding
+	// the change lock, like everything handleMessage runs. If it throws, the
+	// request still gets a reply (the lane logs the exception).
+	private void applyToAccount(String accountID, ClientConnection handler, Runnable change) {
+		accountExecutor.execute(accountID, () -> applyChange(handler, change));
+	}
 
+	// Like applyToAccount for a change spanning several accounts: it runs once
+	// nothing else is running on any of them.
+	private void applyToAccounts(Collection<String> accountIDs, ClientConnection handler, Runnable change) {
+		accountExecutor.executeAcross(accountIDs, () -> applyChange(handler, change));
 	}
 
-	public void handleMessage(Message msg, ClientHandler handler) {
+	private void applyChange(ClientConnection handler, Runnable change) {
+		Lock changes = DB.changes();
+		changes.lock();
+		try {
+			change.run();
+		} catch (RuntimeException e) {
+			handler.sendMessage(new FailureMessage("The server could not apply the change."));
+			throw e;
+		} finally {
+			changes.unlock();
+		}
+	}
+
+	// Tellers change an account while holding its lease (their LOAD_ACCOUNT
+	// takes it). Clients need the account on their own profile and no teller
+	// editing it: they take no lease themselves, their changes being
+	// serialized per account by accountExecutor, so sessions sharing an
+	// account can transact on it at the same time.
+	private boolean mayChangeAccount(SessionInfo session, String accountID) {
+		if (session.getRole() == ROLE.TELLER) {
+			return accountLocks.isHeldBy(accountID, session.getSessionID());
+		}
+		ClientProfile profile = clientDatabase.get(session.getUsername());
+		return profile != null && profile.getAccountID(accountID) != null
+				&& !heldByOther(accountID, session.getSessionID());
+	}
+
+	private void dispatchMessage(Message msg, ClientConnection connection, long start) {
 		// handles disconnects (whether authenticated or not)
 		if (msg.getType() == Message.TYPE.DISCONNECT) {
-			handleClientDisconnect((DisconnectMessage) msg, handler);
+			handleClientDisconnect((DisconnectMessage) msg, connection);
 		}
+		// replies carry the request's ID so pipelined clients can match them,
+		// and the first one is timed from when the request arrived
+		ServerMetrics.Request requestMetrics = metrics.of(msg.getType());
+		ClientConnection handler = new ReplyConnection(connection, msg.getRequestId(), requestMetrics, start);
 		// Only allow login messages before authentication
 		if (msg.getSession() == null) {
 			if (msg instanceof LoginMessage) {
+				SessionInfo before = connection.getSession();
 				handleLogin((LoginMessage) msg, handler);
+				// a new session starts its idle clock on the connection itself
+				SessionInfo after = connection.getSession();
+				if (after != null && after != before) {
+					reaper.watch(after, connection);
+				}
 			} else {
 				handler.sendMessage(new FailureMessage("You must log in first."));
 			}
 			return;
 		}
-		// update client's activity after receiving a message from them
-		updateLastActive(msg.getSession().getUsername());
-		if (sessionIDs.get(msg.getSession().getSessionID()) == null) {
+		// ownership is keyed by session id, so only trust sessions we issued;
+		// handlers act as the message's username, so it must be the session's
+		SessionInfo known = sessions.get(msg.getSession().getSessionID());
+		if (known == null || known.getRole() != msg.getSession().getRole()
+				|| !known.getUsername().equals(msg.getSession().getUsername())) {
 			handler.sendMessage(new FailureMessage("Unauthorized Client."));
+			return;
 		}
+		// update client's activity after receiving a message from them
+		updateLastActive(known.getUsername(), known.getRole());
+		// activity keeps this session's leases from expiring
+		renewLeases(known);
 
 		// Once authenticated, delegate to role-based handlers
+		long dispatched = System.nanoTime();
 		switch (msg.getSession().getRole()) {
 			case CLIENT:
 				handleClientMessages(msg, handler);
+				requestMetrics.clientDispatch.recordSince(dispatched);
 				break;
 			case TELLER:
 				handleTellerMessage(msg, handler);
+				requestMetrics.tellerDispatch.recordSince(dispatched);
 				break;
 			default:
 				handler.sendMessage(new FailureMessage("Unknown message type."));
 		}
 	}
 
-	private void handleClientDisconnect(DisconnectMessage msg, ClientHandler handler) {
-		String username = msg.getSession().getUsername();
-		System.out.println("[Server] Client " + username + " has disconnected.");
+	private void handleClientDisconnect(DisconnectMessage msg, ClientConnection handler) {
+		SessionInfo session = msg.getSession();
+		String username = session.getUsername();
+		ServerLog.info("Client disconnected", "username", username, "session", session.getSessionID());
 		// Release locks, cleanup if needed
-		ReentrantLock profileLock = profileLocks.get(username);
-		if (profileLock != null && profileLock.isHeldByCurrentThread()) {
-			try {
-				if (profileLock.getHoldCount() > 0) {
-					profileLock.unlock();
-					System.out.println("Released profile lock for: " + username);
-				}
-			} catch (IllegalMonitorStateException e) {
-				System.err.println("Error releasing profile lock for:  " + username + e.getMessage());
-			}
-			profileLocks.remove(username); // Clean up
+		if (profileLocks.release(username, session.getSessionID())) {
+			ServerLog.debug("Released profile lock", "username", username, "session", session.getSessionID());
 		}
 
 		ClientProfile profile = clientDatabase.get(username);
-		String[] accountIDs = profile.getAccountIDs().toArray(new String[profile.getAccountIDs().size()]);
-		;
-		// Handle account lock
-		for (String accountID : accountIDs) {
-			ReentrantLock accountLock = accountLocks.get(accountID);
-			if (accountLock != null && accountLock.isHeldByCurrentThread()) {
-				accountLock.unlock();
-				accountLocks.remove(accountID); // Clean up
+		if (profile != null) {
+			String[] accountIDs = profile.getAccountIDs().toArray(new String[profile.getAccountIDs().size()]);
+			// Handle account lock
+			for (String accountID : accountIDs) {
+				accountLocks.release(accountID, session.getSessionID());
 			}
 		}
 		client_list.remove(handler);
 	}
 
 	// delegated method to handle teller functions
-	private void handleTellerMessage(Message msg, ClientHandler handler) {
+	private void handleTellerMessage(Message msg, ClientConnection handler) {
 		if (msg instanceof ProfileMessage) {
 			switch (msg.getType()) {
 				case LOAD_PROFILE:
@@ -267,10 +440,12 @@ public class CentralServer {
 					handleLoadAccount((AccountMessage) msg, handler);
 					break;
 				case SAVE_ACCOUNT:
-					handleSaveAccount((AccountMessage) msg, handler);
+					applyToAccount(((AccountMessage) msg).getID(), handler,
+							() -> handleSaveAccount((AccountMessage) msg, handler));
 					break;
 				case DELETE_ACCOUNT:
-					handleDeleteAccount((AccountMessage) msg, handler);
+					applyToAccount(((AccountMessage) msg).getID(), handler,
+							() -> handleDeleteAccount((AccountMessage) msg, handler));
 					break;
 				case CREATE_ACCOUNT:
 					handleCreateAccount((AccountMessage) msg, handler);
@@ -290,7 +465,7 @@ public class CentralServer {
 		} else if (msg instanceof TransactionMessage) {
 			switch (msg.getType()) {
 				case TRANSACTION:
-					handleTransaction((TransactionMessage) msg, handler);
+					submitTransaction((TransactionMessage) msg, handler);
 					break;
 				default:
 					break;
@@ -298,18 +473,33 @@ public class CentralServer {
 		} else if (msg instanceof ShareAccountMessage) {
 			switch (msg.getType()) {
 				case SHARE_ACCOUNT:
-					handleShareAccount((ShareAccountMessage) msg, handler);
+					applyToAccount(((ShareAccountMessage) msg).getSharedAccountID(), handler,
+							() -> handleShareAccount((ShareAccountMessage) msg, handler));
 					break;
 				default:
 					break;
 			}
+		} else if (msg instanceof TransactionBatchMessage batch) {
+			List<TransactionBatchMessage.Entry> entries = batch.getEntries();
+			if (entries == null || entries.isEmpty() || entries.size() > MAX_BATCH_ENTRIES) {
+				handler.sendMessage(new FailureMessage(
+						"A batch must have between 1 and " + MAX_BATCH_ENTRIES + " entries."));
+				return;
+			}
+			Set<String> accountIDs = new HashSet<>();
+			for (TransactionBatchMessage.Entry entry : entries) {
+				accountIDs.add(entry.getAccountID());
+			}
+			applyToAccounts(accountIDs, handler, () -> handleTransactionBatch(batch, handler));
+		} else if (msg instanceof TransferMessage transfer) {
+			submitTransfer(transfer, handler);
 		} else {
 			handler.sendMessage(new FailureMessage("What you doing?"));
 		}
 	}
 
 	// delegated method to handle client functions
-	private void handleClientMessages(Message msg, ClientHandler handler) {
+	private void handleClientMessages(Message msg, ClientConnection handler) {
 		if (msg instanceof ProfileMessage) {
 			switch (msg.getType()) {
 				case LOAD_PROFILE:
@@ -339,7 +529,7 @@ public class CentralServer {
 		} else if (msg instanceof TransactionMessage) {
 			switch (msg.getType()) {
 				case TRANSACTION:
-					handleTransaction((TransactionMessage) msg, handler);
+					submitTransaction((TransactionMessage) msg, handler);
 					break;
 				default:
 					break;
@@ -347,23 +537,27 @@ public class CentralServer {
 		} else if (msg instanceof ShareAccountMessage) {
 			switch (msg.getType()) {
 				case SHARE_ACCOUNT:
-					handleShareAccount((ShareAccountMessage) msg, handler);
+					applyToAccount(((ShareAccountMessage) msg).getSharedAccountID(), handler,
+							() -> handleShareAccount((ShareAccountMessage) msg, handler));
 					break;
 				default:
 					break;
 			}
+		} else if (msg instanceof TransferMessage transfer) {
+			submitTransfer(transfer, handler);
 		} else {
 			handler.sendMessage(new FailureMessage("What you doing?"));
 		}
 	}
 
-	private void handleTransaction(TransactionMessage msg, ClientHandler handler) {
-		// 1. Parse amount
-		BigDecimal amount;
-		BigDecimal foo;
+	// Checks what can be checked without the account before queuing the
+	// transaction on its lane, so a malformed request is answered at once.
+	private void submitTransaction(TransactionMessage msg, ClientConnection handler) {
+		// 1. Parse amount and operation
+		Money amount;
 		try {
-			amount = new BigDecimal(msg.getAmount());
-			if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+			amount = Money.parse(msg.getAmount());
+			if (amount.signum() <= 0) {
 				handler.sendMessage(new FailureMessage("Amount must be positive."));
 				return;
 			}
@@ -371,48 +565,289 @@ public class CentralServer {
 			handler.sendMessage(new FailureMessage("Invalid amount format."));
 			return;
 		}
+		if (msg.getOperation() == null) {
+			handler.sendMessage(new FailureMessage("Transaction needs an operation."));
+			return;
+		}
+		if (msg.getAccountID() == null) {
+			handler.sendMessage(new FailureMessage("Account not found."));
+			return;
+		}
+		applyToAccount(msg.getAccountID(), handler, () -> handleTransaction(msg, amount, handler));
+	}
 
-		// 2. Acquire the lock
+	private void handleTransaction(TransactionMessage msg, Money amount, ClientConnection handler) {
+		Money foo;
+
+		// 2. Check the session may change the account (runs on the account's
+		// lane, so nothing else changes it meanwhile)
 		String accountID = msg.getAccountID();
-		ReentrantLock lock = accountLocks.get(accountID);
 		try {
-			if (lock == null || !lock.isHeldByCurrentThread()) {
+			if (!mayChangeAccount(msg.getSession(), accountID)) {
 				handler.sendMessage(new FailureMessage("You are not authorized to edit this account."));
 				return;
 			}
 
-			// 3. Load & authorize
+			// 3. Load
 			Account account = accountDatabase.get(accountID);
 			if (account == null) {
 				handler.sendMessage(new FailureMessage("Account not found."));
 				return;
 			}
-			String username = msg.getSession().getUsername();
-			if (clientDatabase.get(username).getAccountID(accountID) == null) {
-				handler.sendMessage(new FailureMessage("Not authorized for this account."));
-				return;
-			}
 
-			Transaction.OPERATION operation = Transaction.OPERATION.valueOf(msg.getOperation().name());
+			Transaction.OPERATION operation = msg.getOperation();
 			// 4. Attempt the transaction
 			if (operation == Transaction.OPERATION.WITHDRAW) {
 				foo = amount.negate();
 			} else {
 				foo = amount;
 			}
-			Transaction tx = new Transaction(foo.toPlainString(), operation);
+			Transaction tx = new Transaction(foo, operation);
 			account.addTransaction(tx);
+			summaries.accountChanged(accountID);
 
-			handler.sendMessage(new SuccessMessage("Transaction applied successfully."));
+			// 5. Reply with the resulting account state so the client needs no reload
+			int withdrawCount = account instanceof SavingAccount s ? s.getWithdrawCount() : 0;
+			int sequence = account.getTransactionCount() - 1;
+			replyWhenDurable(journal.transaction(accountID, sequence, tx, withdrawCount), handler,
+					new TransactionReceiptMessage("Transaction applied successfully.",
+							accountID, account.getBalance(), sequence, withdrawCount, tx));
 
 		} catch (IllegalStateException | IllegalArgumentException e) {
 			// Your subclasses throw IllegalStateException for anything from overdraft to
 			// credit-limit
 			handler.sendMessage(new FailureMessage(e.getMessage()));
+		} catch (ArithmeticException e) {
+			// the balance would overflow
+			handler.sendMessage(new FailureMessage("Amount is out of range."));
+		}
+	}
+
+	// Applies a teller's batch in one pass, with nothing else running on its
+	// accounts, and journals it as one record. Entries are checked as
+	// handleTransaction would, except that the teller need not have each
+	// account open: an account is only refused while another session holds
+	// it. An atomic batch is first tried on copies of its accounts, and if
+	// any entry would fail, none is applied.
+	private void handleTransactionBatch(TransactionBatchMessage msg, ClientConnection handler) {
+		String sessionID = msg.getSession().getSessionID();
+		List<TransactionBatchMessage.Entry> entries = msg.getEntries();
+		int n = entries.size();
+		String[] errors = new String[n];
+		Account[] accounts = new Account[n];
+		Transaction[] txs = new Transaction[n];
+
+		// 1. Parse and authorize every entry
+		for (int i = 0; i < n; i++) {
+			TransactionBatchMessage.Entry entry = entries.get(i);
+			String accountID = entry.getAccountID();
+			accounts[i] = accountID == null ? null : accountDatabase.get(accountID);
+			if (accounts[i] == null) {
+				errors[i] = "Account not found.";
+				continue;
+			}
+			if (heldByOther(accountID, sessionID)) {
+				errors[i] = "Account is currently in use.";
+				continue;
+			}
+			if (entry.getOperation() == null) {
+				errors[i] = "Operation missing.";
+				continue;
+			}
+			try {
+				Money amount = Money.parse(entry.getAmount());
+				if (amount.signum() <= 0) {
+					errors[i] = "Amount must be positive.";
+					continue;
+				}
+				Transaction.OPERATION operation = entry.getOperation();
+				txs[i] = new Transaction(operation == OPERATION.WITHDRAW ? amount.negate() : amount, operation);
+			} catch (NumberFormatException e) {
+				errors[i] = "Invalid amount format.";
+			}
+		}
+
+		// 2. All or nothing: run the whole batch against copies first
+		if (msg.isAtomic()) {
+			Map<Account, Account> trial = new HashMap<>();
+			boolean failed = false;
+			for (int i = 0; i < n; i++) {
+				if (errors[i] == null) {
+					Account copy = trial.computeIfAbsent(accounts[i], CentralServer::trialCopy);
+					errors[i] = tryAdd(copy,
+							new Transaction(txs[i].getCreated(), txs[i].getAmountMoney(), txs[i].getOperation()));
+				}
+				failed |= errors[i] != null;
+			}
+			if (failed) {
+				List<TransactionBatchResultMessage.Result> results = new ArrayList<>(n);
+				for (int i = 0; i < n; i++) {
+					results.add(TransactionBatchResultMessage.Result.failed(
+							errors[i] != null ? errors[i] : "Not applied: another entry in the batch failed."));
+				}
+				handler.sendMessage(new TransactionBatchResultMessage("Batch rejected, nothing was applied.", results));
+				return;
+			}
+		}
+
+		// 3. Apply, collecting one journal record for the lot
+		List<TransactionBatchResultMessage.Result> results = new ArrayList<>(n);
+		List<Journal.TransactionRecord> records = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			if (errors[i] == null) {
+				errors[i] = tryAdd(accounts[i], txs[i]);
+			}
+			if (errors[i] != null) {
+				results.add(TransactionBatchResultMessage.Result.failed(errors[i]));
+				continue;
+			}
+			Account account = accounts[i];
+			summaries.accountChanged(account.getID());
+			int withdrawCount = account instanceof SavingAccount s ? s.getWithdrawCount() : 0;
+			int sequence = account.getTransactionCount() - 1;
+			records.add(new Journal.TransactionRecord(account.getID(), sequence, txs[i], withdrawCount));
+			results.add(TransactionBatchResultMessage.Result.applied(txs[i].getBalanceAfter().toBigDecimal(), sequence));
+		}
+		replyWhenDurable(journal.transactions(records), handler, new TransactionBatchResultMessage(
+				records.size() + " of " + n + " transactions applied.", results));
+	}
+
+	// Queues a transfer on both accounts' lanes. executeAcross parks the lanes
+	// in ascending lane order, so two transfers in opposite directions between
+	// the same accounts are ordered the same way on both and cannot deadlock.
+	private void submitTransfer(TransferMessage msg, ClientConnection handler) {
+		String fromID = msg.getFromAccountID();
+		String toID = msg.getToAccountID();
+		if (fromID == null || toID == null) {
+			handler.sendMessage(new FailureMessage("Transfer needs a source and a destination account."));
+			return;
+		}
+		if (fromID.equals(toID)) {
+			handler.sendMessage(new FailureMessage("Cannot transfer to the same account."));
+			return;
+		}
+		applyToAccounts(List.of(fromID, toID), handler, () -> handleTransfer(msg, handler));
+	}
+
+	// Withdraws from one account and deposits into another as one change: both
+	// legs are tried on copies first, so the withdrawal rules (savings
+	// withdrawal limit, credit limit) and the deposit are checked before either
+	// account moves, and both legs are journaled as one record, which replay
+	// applies all or none. Runs with both lanes parked and under both accounts'
+	// monitors, taken in account id order. Readers lock one account at a time
+	// (LOAD_ACCOUNT, ProfileSummaries, the checkpoint, the Reconciler), so each
+	// account is seen before or after its own leg, but a reader going through
+	// both can see one leg applied and not yet the other.
+	private void handleTransfer(TransferMessage msg, ClientConnection handler) {
+		SessionInfo session = msg.getSession();
+		String fromID = msg.getFromAccountID();
+		String toID = msg.getToAccountID();
+
+		// 1. Parse amount
+		Money amount;
+		try {
+			amount = Money.parse(msg.getAmount());
+			if (amount.signum() <= 0) {
+				handler.sendMessage(new FailureMessage("Amount must be positive."));
+				return;
+			}
+		} catch (NumberFormatException e) {
+			handler.sendMessage(new FailureMessage("Invalid amount format."));
+			return;
+		}
+
+		// 2. Load and authorize: a client needs both accounts on their profile; a
+		// teller needs neither lease, but either account being open in another
+		// session (its lease held) refuses the transfer, for clients too
+		Account from = accountDatabase.get(fromID);
+		Account to = accountDatabase.get(toID);
+		if (from == null || to == null) {
+			handler.sendMessage(new FailureMessage("Account not found."));
+			return;
+		}
+		boolean allowed = session.getRole() == ROLE.TELLER
+				? !heldByOther(fromID, session.getSessionID()) && !heldByOther(toID, session.getSessionID())
+				: mayChangeAccount(session, fromID) && mayChangeAccount(session, toID);
+		if (!allowed) {
+			handler.sendMessage(new FailureMessage("You are not authorized to edit this account."));
+			return;
+		}
+
+		Account first = fromID.compareTo(toID) < 0 ? from : to;
+		Account second = first == from ? to : from;
+		synchronized (first) {
+			synchronized (second) {
+				Transaction debit = new Transaction(amount.negate(), OPERATION.WITHDRAW);
+				Transaction credit = new Transaction(debit.getCreated(), amount, OPERATION.DEPOSIT);
+
+				// 3. Try both legs on copies
+				String error = tryAdd(trialCopy(from),
+						new Transaction(debit.getCreated(), debit.getAmountMoney(), debit.getOperation()));
+				if (error == null) {
+					error = tryAdd(trialCopy(to),
+							new Transaction(credit.getCreated(), credit.getAmountMoney(), credit.getOperation()));
+				}
+				if (error != null) {
+					handler.sendMessage(new FailureMessage("Transfer failed: " + error));
+					return;
+				}
+
+				// 4. Apply both and journal them together
+				from.addTransaction(debit);
+				to.addTransaction(credit);
+				summaries.accountChanged(fromID);
+				summaries.accountChanged(toID);
+				TransactionReceiptMessage debitReceipt = receipt(from, debit);
+				TransactionReceiptMessage creditReceipt = receipt(to, credit);
+				replyWhenDurable(journal.transactions(List.of(
+						new Journal.TransactionRecord(fromID, debitReceipt.getSequence(), debit,
+								debitReceipt.getWithdrawCount()),
+						new Journal.TransactionRecord(toID, creditReceipt.getSequence(), credit,
+								creditReceipt.getWithdrawCount()))),
+						handler, new TransferReceiptMessage("Transferred " + amount + " from " + fromID + " to " + toID + ".",
+								debitReceipt, creditReceipt));
+			}
 		}
 	}
 
-	private void handleExitProfile(ProfileMessage msg, ClientHandler handler) {
+	// the receipt for a transaction just added to the account
+	private static TransactionReceiptMessage receipt(Account account, Transaction tx) {
+		int withdrawCount = account instanceof SavingAccount s ? s.getWithdrawCount() : 0;
+		return new TransactionReceiptMessage("Transaction applied successfully.", account.getID(),
+				tx.getBalanceAfter().toBigDecimal(), account.getTransactionCount() - 1, withdrawCount, tx);
+	}
+
+	// another session has the account open (a teller's LOAD_ACCOUNT lease)
+	private boolean heldByOther(String accountID, String sessionID) {
+		return accountLocks.isHeld(accountID) && !accountLocks.isHeldBy(accountID, sessionID);
+	}
+
+	// null if the transaction was added, otherwise why not
+	private static String tryAdd(Account account, Transaction tx) {
+		try {
+			account.addTransaction(tx);
+			return null;
+		} catch (IllegalStateException | IllegalArgumentException e) {
+			return e.getMessage();
+		} catch (ArithmeticException e) {
+			return "Amount is out of range.";
+		}
+	}
+
+	// a detached copy of the account's balance and rules, with an empty history
+	private static Account trialCopy(Account account) {
+		if (account instanceof SavingAccount s) {
+			SavingAccount copy = new SavingAccount(s.getID(), s.getBalance(), new ArrayList<>(), s.getWithdrawCount(),
+					s.getWithdrawLimit());
+			copy.setReset(s.getReset());
+			return copy;
+		} else if (account instanceof CreditLine l) {
+			return new CreditLine(l.getID(), l.getBalance(), new ArrayList<>(), l.getCreditLimit());
+		}
+		return new CheckingAccount(account.getID(), account.getBalance(), new ArrayList<>());
+	}
+
+	private void handleExitProfile(ProfileMessage msg, ClientConnection handler) {
 
 		String username = msg.getUsername();
 
@@ -421,7 +856,7 @@ public class CentralServer {
 			return;
 		}
 
-		boolean released = releaseUserProfileLock(username);
+		boolean released = releaseUserProfileLock(username, msg.getSession());
 
 		if (released) {
 			handler.sendMessage(new SuccessMessage("Exited profile successfully. Lock released."));
@@ -430,7 +865,7 @@ public class CentralServer {
 		}
 	}
 
-	private void handleDeleteProfile(ProfileMessage msg, ClientHandler handler) {
+	private void handleDeleteProfile(ProfileMessage msg, ClientConnection handler) {
 
 		String username = msg.getUsername();
 		if (username == null)
@@ -443,31 +878,26 @@ public class CentralServer {
 			return;
 		}
 
-		// Lock profile
-		ReentrantLock plock = profileLocks.get(username);
-		plock.lock();
-		if (plock == null || !plock.isHeldByCurrentThread()) {
+		// Profile must be opened (locked) by this session
+		if (!profileLocks.isHeldBy(username, msg.getSession().getSessionID())) {
 			handler.sendMessage(new FailureMessage("You are not authorized to delete this account."));
 			return;
 		}
 
-		try {
-			// remove from db
+		// journal the deletion, then remove from db
+		CompletableFuture<Void> written = journal.deleteProfile(username);
+		applyIfJournaled(written, () -> {
 			synchronized (clientDatabase) {
 				clientDatabase.remove(username);
 			}
 			profileLocks.remove(username); // remove lock from map
+			summaries.forget(username);
+		});
 
-			handler.sendMessage(new SuccessMessage("Profile deleted successfully."));
-		} finally {
-			// Always unlock even if an error occurs
-			if (plock.isHeldByCurrentThread()) {
-				plock.unlock();
-			}
-		}
+		replyWhenDurable(written, handler, new SuccessMessage("Profile deleted successfully."));
 	}
 
-	private void handleSaveProfile(ProfileMessage msg, ClientHandler handler) {
+	private void handleSaveProfile(ProfileMessage msg, ClientConnection handler) {
 		SessionInfo session = msg.getSession();
 
 		String username = msg.getUsername();
@@ -478,26 +908,29 @@ public class CentralServer {
 		}
 
 		// check if locked
-		ReentrantLock lock = profileLocks.get(username);
-		if (lock == null || !lock.isHeldByCurrentThread()) {
+		if (!profileLocks.isHeldBy(username, session.getSessionID())) {
 			handler.sendMessage(new FailureMessage("You do not own the profile lock."));
 			return;
 		}
 
-		current.setPhone(msg.getPhone());
-		current.setAddress(msg.getAddress());
-		current.setLegalName(msg.getLegalName());
-		current.setUsername(username);
-		current.setPassword(msg.getPassword());
+		CompletableFuture<Void> written = journal.saveProfile(username, msg.getPassword(), msg.getPhone(),
+				msg.getAddress(), msg.getLegalName());
+		applyIfJournaled(written, () -> {
+			current.setPhone(msg.getPhone());
+			current.setAddress(msg.getAddress());
+			current.setLegalName(msg.getLegalName());
+			current.setUsername(username);
+			current.setPassword(msg.getPassword());
+		});
 
-		handler.sendMessage(new SuccessMessage("Profile saved successfully."));
+		replyWhenDurable(written, handler, new SuccessMessage("Profile saved successfully."));
 	}
 
 	// client requests a profile and server attempts to retrieve using the username
 	// inside session id
 	// gives the profile to the client and locks that profile from being opened by
 	// another client
-	private void handleLoadProfile(ProfileMessage msg, ClientHandler handler) {
+	private void handleLoadProfile(ProfileMessage msg, ClientConnection handler) {
 		String username = msg.getUsername();
 
 		// Step 1: Valid client profile exists
@@ -508,9 +941,8 @@ public class CentralServer {
 		}
 
 		// Step 2: Lock profile access
-		// computeIfAbsent handles race conditions
-		ReentrantLock lock = profileLocks.computeIfAbsent(msg.getUsername(), key -> new ReentrantLock());
-		if (!lock.tryLock()) {
+		// putIfAbsent handles race conditions
+		if (!profileLocks.tryAcquire(msg.getUsername(), msg.getSession().getSessionID())) {
 			handler.sendMessage(new FailureMessage("Client profile is currently in use."));
 			return;
 		}
@@ -518,34 +950,14 @@ public class CentralServer {
 		// Step 3: Update Session Activity
 		// updateLastActive(msg.getSession().getUsername());
 
-		// Step 4: Build AccountSummary list
-		List<AccountSummary> summaries = new ArrayList<>();
-		for (String accID : profile.getAccountIDs()) {
-			Account acc = accountDatabase.get(accID);
-			if (acc != null) {
-				if (acc instanceof CheckingAccount) {
-					summaries.add(new AccountSummary(
-							acc.getID(),
-							AccountSummary.ACCOUNT_TYPE.CHECKING,
-							acc.getBalance()));
-				} else if (acc instanceof SavingAccount) {
-					summaries.add(new AccountSummary(
-							acc.getID(),
-							AccountSummary.ACCOUNT_TYPE.SAVING,
-							acc.getBalance()));
-				} else {
-					summaries.add(new AccountSummary(
-							acc.getID(),
-							AccountSummary.ACCOUNT_TYPE.CREDIT_LINE,
-							acc.getBalance()));
-				}
-			}
-		}
+		// Step 4: AccountSummary list, a single lookup unless the profile's
+		// accounts changed since it was last loaded
+		List<AccountSummary> summaries = this.summaries.of(profile);
 
 		// Step 5: Send ProfileMessage with summaries
 		ProfileMessage profileMsg = new ProfileMessage(
 				Message.TYPE.LOAD_PROFILE,
-				sessionIDs.get(username),
+				msg.getSession(),
 				profile.getUsername(),
 				profile.getPassword(),
 				profile.getPhone(),
@@ -557,7 +969,7 @@ public class CentralServer {
 		handler.sendMessage(profileMsg);
 	}
 
-	private void handleCreateProfile(ProfileMessage msg, ClientHandler handler) {
+	private void handleCreateProfile(ProfileMessage msg, ClientConnection handler) {
 		String username = msg.getUsername();
 
 		// Step 1: Check if profile already exists
@@ -574,19 +986,19 @@ public class CentralServer {
 				msg.getAddress(),
 				msg.getLegalName());
 
-		// Step 3: Save the new profile to the database
-		clientDatabase.put(username, newProfile);
-
-		// Step 4: Create a lock for this profile
-		profileLocks.putIfAbsent(username, new ReentrantLock());
+		// Step 3: Journal the new profile, then save it to the database
+		CompletableFuture<Void> written = journal.createProfile(newProfile.getUsername(), newProfile.getPassword(),
+				newProfile.getPhone(), newProfile.getAddress(), newProfile.getLegalName());
+		applyIfJournaled(written, () -> clientDatabase.put(username, newProfile));
 
-		// Step 5: Confirm success
-		handler.sendMessage(new SuccessMessage("New profile created successfully."));
+		// Step 4: Confirm success
+		replyWhenDurable(written, handler, new SuccessMessage("New profile created successfully."));
 	}
 
 	// client requests an account by specifying the account id
-	private void handleLoadAccount(AccountMessage msg, ClientHandler handler) {
-		String username = msg.getUsername();
+	private void handleLoadAccount(AccountMessage msg, ClientConnection handler) {
+		SessionInfo loader = msg.getSession();
+		String username = loader.getRole() == ROLE.CLIENT ? loader.getUsername() : msg.getUsername();
 		String account_id = msg.getID();
 
 		// Step 1. Check account exists in database
@@ -602,11 +1014,9 @@ public class CentralServer {
 			return;
 		}
 
-		// Step 3: Check if account is in use
-		accountLocks.putIfAbsent(account_id, new ReentrantLock());
-		ReentrantLock lock = accountLocks.get(account_id);
-
-		if (!lock.tryLock()) {
+		// Step 3: A teller takes the account's lease to edit it; clients share
+		// it, their changes being serialized by accountExecutor
+		if (loader.getRole() == ROLE.TELLER && !accountLocks.tryAcquire(account_id, loader.getSessionID())) {
 			handler.sendMessage(new FailureMessage("Account is currently in use."));
 			return;
 		}
@@ -614,49 +1024,69 @@ public class CentralServer {
 		// Step 4: Update Session Activity
 		// updateLastActive(username);
 
-		// Step 5: Determine account type and create appropriate message
+		// Step 5: Work out which slice of history was asked for. A delta request
+		// gets everything since its sequence number, otherwise a page ending
+		// before the cursor (the newest page by default). Lanes keep changing the
+		// account meanwhile, so the window, the history and the balance and
+		// savings fields sent with it are read under its monitor as one snapshot.
+		SessionInfo session = msg.getSession(); // the requester's own session
 		AccountMessage accountMsg;
-		SessionInfo session = sessionIDs.get(username); // cache session for reuse
-
-		if (account instanceof CheckingAccount c) {
-			accountMsg = new AccountMessage(
-					Message.TYPE.LOAD_ACCOUNT,
-					session,
-					username,
-					c.getID(),
-					c.getBalance(),
-					c.getTransactionHistory());
-		} else if (account instanceof SavingAccount s) {
-			accountMsg = new AccountMessage(
-					Message.TYPE.LOAD_ACCOUNT,
-					session,
-					username,
-					s.getID(),
-					s.getBalance(),
-					s.getTransactionHistory(),
-					s.getWithdrawCount(),
-					s.getWithdrawLimit(),
-					s.getReset());
-		} else if (account instanceof CreditLine l) {
-			accountMsg = new AccountMessage(
-					Message.TYPE.LOAD_ACCOUNT,
-					session,
-					username,
-					l.getID(),
-					l.getBalance(),
-					l.getTransactionHistory(),
-					l.getCreditLimit());
-		} else {
-			handler.sendMessage(new FailureMessage("Unsupported account type."));
-			lock.unlock();
-			return;
+		int total, from, to;
+		synchronized (account) {
+			total = account.getTransactionCount();
+			int pageSize = msg.getHistoryPageSize() > 0 ? Math.min(msg.getHistoryPageSize(), MAX_HISTORY_PAGE) : HISTORY_PAGE_SIZE;
+			if (msg.getHistorySince() >= 0) {
+				from = Math.min(msg.getHistorySince(), total);
+				to = Math.min(total, from + MAX_HISTORY_PAGE);
+			} else {
+				to = msg.getHistoryBefore() == AccountMessage.NEWEST ? total : Math.max(0, Math.min(msg.getHistoryBefore(), total));
+				from = Math.max(0, to - pageSize);
+			}
+			List<Transaction> history = account.getTransactions(from, to);
+
+			// Step 6: Determine account type and create appropriate message
+			if (account instanceof CheckingAccount c) {
+				accountMsg = new AccountMessage(
+						Message.TYPE.LOAD_ACCOUNT,
+						session,
+						username,
+						c.getID(),
+						c.getBalance(),
+						history);
+			} else if (account instanceof SavingAccount s) {
+				accountMsg = new AccountMessage(
+						Message.TYPE.LOAD_ACCOUNT,
+						session,
+						username,
+						s.getID(),
+						s.getBalance(),
+						history,
+						s.getWithdrawCount(),
+						s.getWithdrawLimit(),
+						s.getReset());
+			} else if (account instanceof CreditLine l) {
+				accountMsg = new AccountMessage(
+						Message.TYPE.LOAD_ACCOUNT,
+						session,
+						username,
+						l.getID(),
+						l.getBalance(),
+						history,
+						l.getCreditLimit());
+			} else {
+				handler.sendMessage(new FailureMessage("Unsupported account type."));
+				accountLocks.release(account_id, msg.getSession().getSessionID());
+				return;
+			}
+
+			accountMsg.setHistoryWindow(from, total);
 		}
 
-		// Step 6: Send Account Information over network
+		// Step 7: Send Account Information over network
 		handler.sendMessage(accountMsg);
 	}
 
-	private void handleSaveAccount(AccountMessage msg, ClientHandler handler) {
+	private void handleSaveAccount(AccountMessage msg, ClientConnection handler) {
 		SessionInfo session = msg.getSession();
 		String username;
 		if (session.getRole() == SessionInfo.ROLE.CLIENT) {
@@ -679,15 +1109,15 @@ public class CentralServer {
 			return;
 		}
 
-		// Step 3: Ensure account is locked by this thread/session
-		ReentrantLock lock = accountLocks.get(accountID);
-		if (lock == null || !lock.isHeldByCurrentThread()) {
+		// Step 3: Ensure account is locked by this session
+		if (!accountLocks.isHeldBy(accountID, session.getSessionID())) {
 			handler.sendMessage(new FailureMessage("Account not locked for editing."));
 			return;
 		}
 
-		// Step 4: Save updates based on account type
+		// Step 4: Journal the updates based on account type, then save them
 		try {
+			CompletableFuture<Void> written;
 			switch (msg.getAccountType()) {
 				// case CHECKING: // redundant but additional functionality could be added later
 				// if (!(account instanceof CheckingAccount checking)) {
@@ -700,27 +1130,36 @@ public class CentralServer {
 						handler.sendMessage(new FailureMessage("Account type mismatch."));
 						return;
 					}
-					saving.setWithdrawCount(msg.getWithdrawCount());
-					saving.setWithdrawLimit(msg.getWithdrawLimit());
+					written = journal.saveAccount(accountID, msg.getWithdrawCount(), msg.getWithdrawLimit(), null);
+					// under the monitor LOAD_ACCOUNT reads the pair under
+					applyIfJournaled(written, () -> {
+						synchronized (saving) {
+							saving.setWithdrawCount(msg.getWithdrawCount());
+							saving.setWithdrawLimit(msg.getWithdrawLimit());
+						}
+					});
 					break;
 				case CREDIT_LINE:
 					if (!(account instanceof CreditLine credit)) {
 						handler.sendMessage(new FailureMessage("Account type mismatch."));
 						return;
 					}
-					credit.setCreditLimit(msg.getCreditLimit().toString());
+					// parsed first: a limit that is not an amount is refused before it is journaled
+					Money limit = Money.parse(msg.getCreditLimit().toString());
+					written = journal.saveAccount(accountID, 0, 0, limit.toBigDecimal());
+					applyIfJournaled(written, () -> credit.setCreditLimit(limit.toString()));
 					break;
 				default:
 					handler.sendMessage(new FailureMessage("Unsupported account type."));
 					return;
 			}
-			handler.sendMessage(new SuccessMessage("Account saved successfully."));
+			replyWhenDurable(written, handler, new SuccessMessage("Account saved successfully."));
 		} catch (Exception e) {
 			handler.sendMessage(new FailureMessage("Failed to save account: " + e.getMessage()));
 		}
 	}
 
-	private void handleCreateAccount(AccountMessage msg, ClientHandler handler) {
+	private void handleCreateAccount(AccountMessage msg, ClientConnection handler) {
 		String username = msg.getUsername();
 
 		// Step 1: Check if client profile exists
@@ -751,7 +1190,7 @@ public class CentralServer {
 					for (String id : client.getAccountIDs()) {
 						Account acct = accountDatabase.get(id);
 						if (acct instanceof CheckingAccount checking &&
-								checking.getBalance().compareTo(new BigDecimal("1000.00")) >= 0) {
+								checking.getBalanceMoney().compareTo(CREDIT_LINE_MIN_CHECKING) >= 0) {
 							eligible = true;
 							break;
 						}
@@ -777,16 +1216,21 @@ public class CentralServer {
 		String newAccountId = generateNewAccountId();
 		newAccount.setID(newAccountId);
 
-		// Step 4: Register the account in the system
-		accountDatabase.put(newAccount.getID(), newAccount);
-		client.addAccountID(newAccount.getID()); // Assuming `ClientProfile` has this method
-		accountLocks.putIfAbsent(newAccountId, new ReentrantLock());
+		// Step 4: Journal the account, then register it in the system; until
+		// then no transaction on it can be journaled ahead of its creation
+		CompletableFuture<Void> written = journal.createAccount(username, newAccountId, msg.getAccountType(),
+				newAccount instanceof SavingAccount saving ? saving.getWithdrawLimit() : 0,
+				newAccount instanceof CreditLine credit ? credit.getCreditLimit() : null);
+		applyIfJournaled(written, () -> {
+			accountDatabase.put(newAccount.getID(), newAccount);
+			client.addAccountID(newAccount.getID());
+		});
 
 		// Step 5: Confirm success
-		handler.sendMessage(new SuccessMessage("New account created successfully."));
+		replyWhenDurable(written, handler, new SuccessMessage("New account created successfully."));
 	}
 
-	private void handleDeleteAccount(AccountMessage msg, ClientHandler handler) {
+	private void handleDeleteAccount(AccountMessage msg, ClientConnection handler) {
 		SessionInfo session = msg.getSession();
 		String username = msg.getUsername();
 		String accountID = msg.getID();
@@ -805,37 +1249,26 @@ public class CentralServer {
 		}
 
 		// Step 3: Validate session and lock
-		ReentrantLock lock = accountLocks.get(accountID);
-		if (lock == null || !lock.isHeldByCurrentThread()) {
+		if (!accountLocks.isHeldBy(accountID, session.getSessionID())) {
 			handler.sendMessage(new FailureMessage("Account not locked for editing."));
 			return;
 		}
-		lock.lock();
 
-		try {
-			ClientProfile profile = this.clientDatabase.get(username);
-			// lock profile and remove acc from profile
-			ReentrantLock profileLock = profileLocks.computeIfAbsent(username, key -> new ReentrantLock());
-			try {
-				profile.removeAccountID(accountID);
-			} finally {
-				profileLock.unlock();
-			}
-			// remove acc from database
+		// journal the deletion, then remove acc from profile and database
+		ClientProfile profile = this.clientDatabase.get(username);
+		CompletableFuture<Void> written = journal.deleteAccount(username, accountID);
+		applyIfJournaled(written, () -> {
+			profile.removeAccountID(accountID);
 			this.accountDatabase.remove(accountID);
-
+			// other profiles it was shared with still list it
+			summaries.accountChanged(accountID);
 			// remove lock from map
 			accountLocks.remove(accountID);
-			handler.sendMessage(new SuccessMessage("Account deleted successfully."));
-		} finally {
-			// unlock
-			if (lock.isHeldByCurrentThread()) {
-				lock.unlock();
-			}
-		}
+		});
+		replyWhenDurable(written, handler, new SuccessMessage("Account deleted successfully."));
 	}
 
-	private void handleExitAccount(AccountMessage msg, ClientHandler handler) {
+	private void handleExitAccount(AccountMessage msg, ClientConnection handler) {
 		String username = msg.getUsername(); // Client username
 		String accountId = msg.getID(); // Account being exited
 
@@ -844,7 +1277,13 @@ public class CentralServer {
 			return;
 		}
 
-		boolean released = releaseAccountLock(accountId);
+		if (msg.getSession().getRole() == ROLE.CLIENT) {
+			// clients hold no lease on an account (handleLoadAccount)
+			handler.sendMessage(new SuccessMessage("Exited account successfully."));
+			return;
+		}
+
+		boolean released = releaseAccountLock(accountId, msg.getSession());
 
 		if (released) {
 			handler.sendMessage(new SuccessMessage("Exited account successfully. Lock released."));
@@ -854,7 +1293,7 @@ public class CentralServer {
 
 	}
 
-	private void handleShareAccount(ShareAccountMessage msg, ClientHandler handler) {
+	private void handleShareAccount(ShareAccountMessage msg, ClientConnection handler) {
 		SessionInfo session = msg.getSession();
 		if (session == null) {
 			handler.sendMessage(new FailureMessage("Not authenticated."));
@@ -878,12 +1317,16 @@ public class CentralServer {
 			return;
 		}
 
-		// 3) Check the lock—or active-accounts—to ensure this user “owns” it
-		ReentrantLock acctLock = accountLocks.get(accountId);
-		if (acctLock == null || !acctLock.isHeldByCurrentThread()) {
+		// 3) A teller must have the account open; a client can only share
+		// from their own profile
+		if (!mayChangeAccount(session, accountId)) {
 			handler.sendMessage(new FailureMessage("You are not authorized to edit this account."));
 			return;
 		}
+		if (session.getRole() == ROLE.CLIENT && !session.getUsername().equals(ownerUsername)) {
+			handler.sendMessage(new FailureMessage("You do not own that account."));
+			return;
+		}
 
 		// 5) Verify the owner actually has the account in their profile
 		if (ownerProfile.getAccountID(accountId) == null) {
@@ -898,17 +1341,43 @@ public class CentralServer {
 			return;
 		}
 
-		// 7) Add the account ID to the target (no lock needed on their side)
-		targetProfile.addAccountID(accountId);
+		// 7) Journal the share, then add the account ID to the target (no lock
+		// needed on their side)
+		CompletableFuture<Void> written = journal.shareAccount(accountId, targetUsername);
+		applyIfJournaled(written, () -> targetProfile.addAccountID(accountId));
 
 		// 8) Success!
-		handler.sendMessage(new SuccessMessage(
+		replyWhenDurable(written, handler, new SuccessMessage(
 				"Account " + accountId + " shared with " + targetUsername + "."));
 
 	}
 
+	// Applies a change whose record has just been appended, unless the
+	// journal refused it outright (replyWhenDurable then reports the
+	// failure), so memory never holds a change the journal does not. An
+	// account or share only becomes reachable here, after its record, so
+	// nothing depending on it can reach the journal first.
+	private static void applyIfJournaled(CompletableFuture<Void> written, Runnable change) {
+		if (!written.isCompletedExceptionally()) {
+			change.run();
+		}
+	}
+
+	// sends the reply once the journal record for the change is durable, so a
+	// client is never told about a change a crash could still lose
+	private void replyWhenDurable(CompletableFuture<Void> written, ClientConnection handler, Message reply) {
+		written.whenComplete((ignored, error) -> {
+			if (error == null) {
+				handler.sendMessage(reply);
+			} else {
+				ServerLog.error("Journal write failed", "type", reply.getType(), "error", error.getMessage());
+				handler.sendMessage(new FailureMessage("Change could not be saved."));
+			}
+		});
+	}
+
 	// delegated method to handle teller and client login
-	private void handleLogin(LoginMessage msg, ClientHandler handler) {
+	private void handleLogin(LoginMessage msg, ClientConnection handler) {
 		if (msg.getType() == Message.TYPE.LOGIN_CLIENT) {
 			handleClientLogin(msg, handler);
 		} else if (msg.getType() == Message.TYPE.LOGIN_TELLER) {
@@ -917,188 +1386,209 @@ public class CentralServer {
 
 	}
 
-	private void handleClientLogin(LoginMessage msg, ClientHandler handler) {
+	private void handleClientLogin(LoginMessage msg, ClientConnection handler) {
 		String username = msg.getUsername();
 		String password = msg.getPassword();
 
 		ClientProfile profile = this.clientDatabase.get(username);
 		if (profile == null ){
-			System.out.printf("[Server] LOGIN FAILED for client '%s'%n", username + "Due to profile == null");
+			ServerLog.warn("Login failed", "role", ROLE.CLIENT, "username", username, "reason", "no such profile");
 			return;
 		}
 		if (!profile.getPassword().equals(password)) {
 			handler.sendMessage(new FailureMessage("Invalid credentials."));
-			System.out.printf("[Server] LOGIN FAILED for client '%s'%n", username + "Due to");
+			ServerLog.warn("Login failed", "role", ROLE.CLIENT, "username", username, "reason", "bad password");
 			return;
 		}
-		// check sessions
-		for (SessionInfo existingSession : sessionIDs.values()) {
-			if (username.equals(existingSession.getUsername())
-					&& existingSession.getRole() == SessionInfo.ROLE.CLIENT) {
-				handler.sendMessage(new FailureMessage("User '" + username + "' is already logged in elsewhere."));
-				return;
-			}
+		// Create session info and track it, unless the user already has a
+		// client session; the profile lock is taken in its name
+		SessionInfo session = new SessionInfo(username, SessionInfo.ROLE.CLIENT);
+		if (!sessions.add(session)) {
+			handler.sendMessage(new FailureMessage("User '" + username + "' is already logged in elsewhere."));
+			return;
 		}
 
-		// Locking this specific profile for login session check
-		profileLocks.putIfAbsent(username, new ReentrantLock());
-		ReentrantLock lock = profileLocks.get(username);
-
 		// check locks
-		if (!lock.tryLock()) {
+		if (!profileLocks.tryAcquire(username, session.getSessionID())) {
+			sessions.remove(session.getSessionID());
 			handler.sendMessage(new FailureMessage("Client profile is already in use."));
 			return;
 		}
 
-		// Create session info and track it
-		SessionInfo session = new SessionInfo(username, SessionInfo.ROLE.CLIENT);
-		sessionIDs.put(session.getSessionID(), session);
+		handler.setSession(session);
+		handler.setAuthenticated(true);
 
 		// Send session info back to client
 		handler.sendMessage(new SuccessMessage("Login successful.", session));
 	}
 
-	private void handleTellerLogin(LoginMessage msg, ClientHandler handler) {
+	private void handleTellerLogin(LoginMessage msg, ClientConnection handler) {
 		String username = msg.getUsername();
 		String password = msg.getPassword();
 
 		if (username == null || !password.equals(this.tellerDatabase.get(username))) {
 			handler.sendMessage(new FailureMessage("Invalid credentials."));
-			System.out.printf("[Server] LOGIN FAILED for Teller '%s'%n", username);
+			ServerLog.warn("Login failed", "role", ROLE.TELLER, "username", username, "reason", "bad credentials");
 			return;
 		}
-		for (SessionInfo existingSession : sessionIDs.values()) {
-			if (username.equals(existingSession.getUsername())
-					&& existingSession.getRole() == SessionInfo.ROLE.TELLER) {
-				handler.sendMessage(new FailureMessage("User '" + username + "' is already logged in elsewhere."));
-				return;
-			}
+		// Create session info and track it, unless the teller is already
+		// logged in; the teller lock is taken in its name
+		SessionInfo session = new SessionInfo(username, SessionInfo.ROLE.TELLER);
+		if (!sessions.add(session)) {
+			handler.sendMessage(new FailureMessage("User '" + username + "' is already logged in elsewhere."));
+			return;
 		}
 
-		// Locking this specific profile for login session check
-		tellerLocks.putIfAbsent(username, new ReentrantLock());
-		ReentrantLock lock = tellerLocks.get(username);
-
-		if (!lock.tryLock()) {
+		if (!tellerLocks.tryAcquire(username, session.getSessionID())) {
+			sessions.remove(session.getSessionID());
 			handler.sendMessage(new FailureMessage("Teller profile is already in use."));
 			return;
 		}
 
-		// Create session info and track it
-		SessionInfo session = new SessionInfo(username, SessionInfo.ROLE.TELLER);
-		sessionIDs.put(session.getSessionID(), session);
+		handler.setSession(session);
+		handler.setAuthenticated(true);
 
 		// Send session info back to client
 		handler.sendMessage(new SuccessMessage("Login successful.", session));
 	}
 
-	private void handleClientLogout(LogoutMessage msg, ClientHandler handler) {
+	private void handleClientLogout(LogoutMessage msg, ClientConnection handler) {
 		SessionInfo session = msg.getSession();
 		String username = session.getUsername();
 
-		sessionIDs.remove(session.getSessionID());
+		sessions.remove(session.getSessionID());
 
-		// unlock profile
-		if (username != null) {
-			releaseUserProfileLock(username);
-			releaseAllUserAccountLocks(username);
-		}
+		// unlock profile and accounts
+		int released = releaseLeases(session);
+		ServerLog.debug("Released leases", "username", username, "session", session.getSessionID(),
+				"leasesReleased", released);
 
 		handler.sendMessage(new SuccessMessage("Log Out Successful"));
 		handler.setAuthenticated(false);
+		handler.setSession(null);
 	}
 
 	// Handles Logout for Tellers
-	private void handleTellerLogout(LogoutMessage msg, ClientHandler handler) {
+	private void handleTellerLogout(LogoutMessage msg, ClientConnection handler) {
 		SessionInfo session = msg.getSession();
 		if (session != null) {
-			sessionIDs.remove(session.getSessionID());
+			sessions.remove(session.getSessionID());
 		}
-		// remove lock on teller profile
-		ReentrantLock lock = tellerLocks.get(session.getUsername());
-		if (lock != null && lock.isLocked()) {
-			try {
-				while (lock.isHeldByCurrentThread() && lock.getHoldCount() > 0) {
-					lock.unlock();
-				}
-				if (lock.isLocked()) {
-					System.err.println("Teller lock for " + session.getUsername() + " still held after logout attempt");
-				} else {
-					System.out.println("Released teller lock for teller: " + session.getUsername());
-				}
-			} catch (IllegalMonitorStateException e) {
-				System.err.println("Error releasing teller lock for " + session.getUsername() + e.getMessage());
-			}
+		// remove lock on teller profile, and on any account left open
+		int released = releaseLeases(session);
+		if (released > 0) {
+			ServerLog.debug("Released leases", "username", session.getUsername(), "session",
+					session.getSessionID(), "leasesReleased", released);
+		}
+		if (tellerLocks.isHeld(session.getUsername())) {
+			ServerLog.warn("Teller lock still held after logout", "username", session.getUsername(), "session",
+					session.getSessionID());
 		}
 		handler.setAuthenticated(false);
+		handler.setSession(null);
 		handler.sendMessage(new SuccessMessage("Log Out Successful"));
 	}
 
-	private void addClient(ClientHandler handler) {
+	void addClient(ClientConnection handler) {
 		client_list.add(handler);
 	}
 
-	private void updateLastActive(String username) {
-		SessionInfo session = this.sessionIDs.get(username);
+	ServerMetrics getMetrics() {
+		return metrics;
+	}
+
+	ServerConfig getConfig() {
+		return config;
+	}
+
+	// the open connections' queues, for the metrics
+	private List<ConnectionMetrics> connectionMetrics() {
+		List<ConnectionMetrics> open = new ArrayList<>(client_list.size());
+		for (ClientConnection connection : client_list) {
+			if (connection.metrics() != null) {
+				open.add(connection.metrics());
+			}
+		}
+		return open;
+	}
+
+	// Called by a connection once its socket is gone. Ends the session that was
+	// logged in over it and frees its leases now rather than when they expire.
+	void connectionClosed(ClientConnection handler) {
+		client_list.remove(handler);
+		SessionInfo session = handler.getSession();
+		if (session == null)
+			return;
+		handler.setSession(null);
+		sessions.remove(session.getSessionID());
+		int released = releaseLeases(session);
+		ServerLog.info("Session closed with its connection", "username", session.getUsername(), "session",
+				session.getSessionID(), "leasesReleased", released);
+	}
+
+	// Ends a session the reaper found idle for the whole session timeout: its
+	// leases are freed now, the client is told why, and the connection is
+	// closed once that message is out.
+	private void expireSession(SessionInfo session, ClientConnection connection) {
+		if (sessions.remove(session.getSessionID()) == null)
+			return; // logged out meanwhile
+		if (connection.getSession() == session) {
+			connection.setSession(null);
+			connection.setAuthenticated(false);
+		}
+		int released = releaseLeases(session);
+		ServerLog.info("Session timed out", "username", session.getUsername(), "session", session.getSessionID(),
+				"leasesReleased", released);
+		connection.closeAfter(new SessionTimeoutMessage());
+	}
+
+	// frees every lease the session holds; returns how many there were
+	private int releaseLeases(SessionInfo session) {
+		return accountLocks.releaseAll(session.getSessionID())
+				+ profileLocks.releaseAll(session.getSessionID())
+				+ tellerLocks.releaseAll(session.getSessionID());
+	}
+
+	private void renewLeases(SessionInfo session) {
+		accountLocks.renewAll(session.getSessionID());
+		profileLocks.renewAll(session.getSessionID());
+		tellerLocks.renewAll(session.getSessionID());
+	}
+
+	private void updateLastActive(String username, ROLE role) {
+		SessionInfo session = this.sessions.find(username, role);
 		if (session != null) {
 			session.setLastActive(System.currentTimeMillis());
 		}
 	}
 
-	private boolean releaseUserProfileLock(String username) {
+	private boolean releaseUserProfileLock(String username, SessionInfo session) {
 		if (username == null || username.isBlank())
 			return false;
-		ReentrantLock profileLock = profileLocks.get(username);
-		boolean released = false;
-		if (profileLock != null && profileLock.isLocked()) {
-			try {
-				if (profileLock.isHeldByCurrentThread()) {
-					profileLock.unlock();
-					System.out.println("Released profile lock for user: " + username);
-					return true;
-				}
-			} catch (IllegalMonitorStateException e) {
-				System.err.println("Error releasing lock for " + username + e.getMessage());
-			}
+		if (profileLocks.release(username, session.getSessionID())) {
+			ServerLog.debug("Released profile lock", "username", username, "session", session.getSessionID());
+			return true;
 		}
-		return released;
+		return false;
 	}
 
-	private void releaseAllUserAccountLocks(String username) {
-		ClientProfile profile = clientDatabase.get(username);
-		if (profile != null) {
-			List<String> accountIDs = new ArrayList<>(profile.getAccountIDs());
-			for (String accountID : accountIDs) {
-				releaseAccountLock(accountID);
-			}
-		}
-	}
-
-	private boolean releaseAccountLock(String accountId) {
+	private boolean releaseAccountLock(String accountId, SessionInfo session) {
 		if (accountId == null || accountId.isBlank())
 			return false;
-		ReentrantLock accountLock = accountLocks.get(accountId);
-		boolean released = false;
-		if (accountLock != null && accountLock.isLocked()) {
-			try {
-				if (accountLock.isHeldByCurrentThread()) {
-					accountLock.unlock();
-					System.out.println("Released account lock for: " + accountId);
-					return true;
-				}
-			} catch (IllegalMonitorStateException e) {
-				System.err.println("Error releasing account lock for " + accountId + e.getMessage());
-			}
+		if (accountLocks.release(accountId, session.getSessionID())) {
+			ServerLog.debug("Released account lock", "account", accountId, "session", session.getSessionID());
+			return true;
 		}
-		return released;
+		return false;
 	}
 
+
 	/** Shut down all clients, save databases, and clear server state */
 	private void serverShutDown() {
 		System.out.println("[Server] Shutting down, notifying clients...");
 
 		// 1. Notify clients and shut them down
-		for (ClientHandler handler : client_list) {
+		for (ClientConnection handler : client_list) {
 			try {
 				handler.sendMessage(new ShutDownMessage());
 			} catch (Exception e) {
@@ -1108,20 +1598,28 @@ public class CentralServer {
 			}
 		}
 
-		// 2. save and serialize everything in the Database class
-		// Database.getInstance().saveDatabase(saveFile);
+		reaper.close();
+		metrics.close();
+
+		// 2. let queued account changes finish; everything is then journaled,
+		// so checkpoint so the next start has nothing to replay and close the
+		// journal
+		accountExecutor.shutdown();
+		DB.close();
 
 		// 3. Clear client handler list
 		client_list.clear();
 
-		// 4. Clear session IDs
-		sessionIDs.clear();
+		// 4. Clear sessions
+		sessions.clear();
 
 		// 5. Release all locks
 		accountLocks.clear();
 		profileLocks.clear();
 		tellerLocks.clear();
 
+		// what the connections logged on their way out goes first
+		ServerLog.flush();
 		System.out.println("[Server] Shutdown complete. All clients disconnected.");
 	}
 }
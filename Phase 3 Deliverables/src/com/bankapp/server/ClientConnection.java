@@ -0,0 +1,31 @@
+package com.bankapp.server;
+
+import com.bankapp.common.Message;
+import com.bankapp.common.SessionInfo;
+
+// What CentralServer needs from a connected client, independent of whether the
+// socket is served by a blocking ClientHandler or by the NIO front end.
+public interface ClientConnection {
+    // Queue a message to send
+    void sendMessage(Message msg);
+
+    // Signal this connection to stop and clean up immediately
+    void shutDown();
+
+    // Queue a last message and close the connection once it has been sent
+    void closeAfter(Message last);
+
+    boolean isAuthenticated();
+
+    void setAuthenticated(boolean authenticated);
+
+    // session logged in over this connection, or null
+    SessionInfo getSession();
+
+    void setSession(SessionInfo session);
+
+    // its outgoing queue's depth and latency, or null if it keeps none
+    default ConnectionMetrics metrics() {
+        return null;
+    }
+}
@@ -1,36 +1,78 @@
 package com.bankapp.server;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.Socket;
 import java.net.SocketException;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 
+import com.bankapp.common.DisconnectMessage;
 import com.bankapp.common.Message;
+import com.bankapp.common.MessageCodec;
+import com.bankapp.common.MessageFrames;
+import com.bankapp.common.SessionInfo;
 
-public class ClientHandler implements Runnable {
+public class ClientHandler implements Runnable, ClientConnection {
     // Dependencies
     private final Socket socket; // holds socket to the client
     private final CentralServer server; // holds reference to server
+    private final Executor loopExecutor; // runs the read/write loops
 
     // I/O Streams
     private ObjectOutputStream objectOutputStream;
     private ObjectInputStream objectInputStream;
+    // framed clients (preamble instead of an object stream header) use these
+    private MessageCodec codec;
+    private DataInputStream framedIn;
+    private DataOutputStream framedOut;
 
-    // Queues for holding message traffic
-    private final BlockingQueue<Message> incoming = new LinkedBlockingQueue<>();
-    private final BlockingQueue<Message> outgoing = new LinkedBlockingQueue<>();
+    // queued by the reader when the stream ends so the dispatcher drains what
+    // was already read and then exits; never handed to the server
+    private static final Message END_OF_STREAM = new DisconnectMessage(null);
+    // queued by closeAfter behind the last message; never sent
+    private static final Queued CLOSE = new Queued(null, 0);
+
+    // Queues for holding message traffic, both bounded: a full incoming queue
+    // stops the reader (and TCP then stops the client), a full outgoing one
+    // means the client isn't reading and the overflow policy applies
+    private final BoundedQueue<Message> incoming;
+    private final BoundedQueue<Queued> outgoing;
+    private final ServerConfig.OVERFLOW overflow;
+    private final long overflowBlockMillis;
+    // depth of outgoing and how long messages wait in it
+    private final ConnectionMetrics metrics;
 
     // Thread and control flag
     private volatile boolean running; // checks for if clientHandler is running
     private volatile boolean authenticated;
-    private Thread reader, writer;
+    private volatile SessionInfo session;
+    // set by each loop once it is running, so shutDown can interrupt it
+    private volatile Thread reader, writer;
+    private final CountDownLatch loopsDone = new CountDownLatch(2);
 
     public ClientHandler(Socket socket, CentralServer server) {
+        this(socket, server, task -> new Thread(task).start());
+    }
+
+    // loopExecutor decides what kind of thread the read/write loops get,
+    // e.g. a virtual-thread-per-task executor
+    public ClientHandler(Socket socket, CentralServer server, Executor loopExecutor) {
         this.socket = socket;
         this.server = server;
+        this.loopExecutor = loopExecutor;
+        this.metrics = server.getMetrics().newConnection(String.valueOf(socket.getRemoteSocketAddress()), this);
+        ServerConfig config = server.getConfig();
+        this.incoming = new BoundedQueue<>(config.getQueueCapacity(), END_OF_STREAM);
+        this.outgoing = new BoundedQueue<>(config.getQueueCapacity(), CLOSE);
+        this.overflow = config.getOverflow();
+        this.overflowBlockMillis = config.getOverflowBlockMillis();
         running = true;
         setAuthenticated(false);
     }
@@ -38,28 +80,45 @@ public class ClientHandler implements Runnable {
     @Override
     public void run() {
         try {
-            objectOutputStream = new ObjectOutputStream(socket.getOutputStream());
-            objectInputStream = new ObjectInputStream(socket.getInputStream());
+            // peek at the first two bytes: a framed client starts with the
+            // preamble magic, a legacy one with the object stream header
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            in.mark(2);
+            int b0 = in.read();
+            int b1 = in.read();
+            in.reset();
+            if (MessageFrames.isPreamble(b0, b1)) {
+                framedIn = new DataInputStream(in);
+                codec = MessageFrames.readPreamble(framedIn);
+                framedOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            } else {
+                objectOutputStream = new ObjectOutputStream(socket.getOutputStream());
+                objectInputStream = new ObjectInputStream(in);
+            }
         } catch (IOException e) {
-            e.printStackTrace();
+            ServerLog.warn("Connection setup failed", "peer", metrics.getPeer(), "error", e.getMessage());
+            server.connectionClosed(this);
             return;
         }
 
-        reader = new Thread(this::readLoop);
-        writer = new Thread(this::writeLoop);
-        reader.start();
-        writer.start();
+        loopExecutor.execute(this::readLoop);
+        loopExecutor.execute(this::writeLoop);
 
         // while clientHandler is running, the handler will take messages from client
         // from the incoming queue and hand it to the server
         try {
-            while (running) {
+            while (true) {
+                if (!roomForReplies())
+                    break;
                 Message msg = incoming.take();
+                if (msg == END_OF_STREAM)
+                    break;
                 server.handleMessage(msg, this);
             }
         } catch (InterruptedException ignored) {
         } finally {
             cleanUp();
+            server.connectionClosed(this);
         }
 
         // Wait for I/O threads to finish
@@ -67,54 +126,123 @@ public class ClientHandler implements Runnable {
     }
 
     private void readLoop() {
+        reader = Thread.currentThread();
         try {
             while (running) {
-                Message msg = (Message) objectInputStream.readObject();
+                Message msg = codec != null
+                        ? MessageFrames.read(framedIn, codec)
+                        : (Message) objectInputStream.readObject();
                 incoming.put(msg);
             }
         } catch (EOFException | SocketException eof) {
             // expected when client disconnects
         } catch (Exception e) {
             if (running)
-                System.out.println("[Server] Read error: " + e.getMessage());
+                ServerLog.warn("Read failed", "peer", metrics.getPeer(), "error", e.getMessage());
         } finally {
             running = false;
+            // wake the dispatcher and writer blocked in take() so they exit too
+            incoming.offerMarker();
+            interrupt(writer);
+            loopsDone.countDown();
         }
     }
 
     private void writeLoop() {
+        writer = Thread.currentThread();
         try {
             while (running) {
-                Message msg = outgoing.take();
-                objectOutputStream.writeObject(msg);
-                objectOutputStream.flush();
+                Queued next = outgoing.take();
+                if (next == CLOSE) {
+                    shutDown();
+                    break;
+                }
+                Message msg = next.msg;
+                if (codec != null) {
+                    MessageFrames.write(framedOut, codec, msg);
+                } else {
+                    objectOutputStream.writeObject(msg);
+                    objectOutputStream.flush();
+                }
+                metrics.sent(next.queuedAt);
             }
         } catch (InterruptedException ie) {
             // thread interrupted
         } catch (IOException e) {
             if (running)
-                System.out.println("[Server] Write error: " + e.getMessage());
+                ServerLog.warn("Write failed", "peer", metrics.getPeer(), "error", e.getMessage());
         } finally {
             running = false;
+            loopsDone.countDown();
         }
     }
 
-    // Queue a message to send
+    // BLOCK holds back the client's next request while its replies can't be
+    // queued, for up to overflowBlockMillis, then disconnects it. Only this
+    // connection's dispatcher waits, between requests and so holding no lock.
+    private boolean roomForReplies() {
+        if (overflow != ServerConfig.OVERFLOW.BLOCK || outgoing.awaitRoom(overflowBlockMillis))
+            return true;
+        ServerLog.warn("Outgoing queue full, disconnecting", "peer", metrics.getPeer(), "username",
+                metrics.getUsername(), "capacity", outgoing.capacity());
+        shutDown();
+        return false;
+    }
+
+    // Queue a message to send. With the queue full, DROP loses it; DISCONNECT
+    // and BLOCK close the connection. It never waits: the sender may be an
+    // account lane or the journal's sync thread, serving other clients too.
     public void sendMessage(Message msg) {
-        outgoing.offer(msg);
+        if (!running)
+            return; // nothing drains the queue any more
+        if (outgoing.offer(new Queued(msg, metrics.queued()), 0))
+            return;
+        metrics.dropped();
+        if (overflow == ServerConfig.OVERFLOW.DROP) {
+            ServerLog.warn("Outgoing queue full, message dropped", "peer", metrics.getPeer(), "username",
+                    metrics.getUsername(), "type", msg.getType(), "capacity", outgoing.capacity());
+            return;
+        }
+        ServerLog.warn("Outgoing queue full, disconnecting", "peer", metrics.getPeer(), "username",
+                metrics.getUsername(), "type", msg.getType(), "capacity", outgoing.capacity());
+        shutDown();
+    }
+
+    // The writer sends everything queued before the CLOSE marker, then shuts
+    // the handler down
+    @Override
+    public void closeAfter(Message last) {
+        sendMessage(last);
+        outgoing.offerMarker();
+    }
+
+    @Override
+    public ConnectionMetrics metrics() {
+        return metrics;
+    }
+
+    // a message waiting for the writer, and when it was queued
+    private static final class Queued {
+        final Message msg;
+        final long queuedAt;
+
+        Queued(Message msg, long queuedAt) {
+            this.msg = msg;
+            this.queuedAt = queuedAt;
+        }
     }
 
     // Signal this handler to stop and clean up immediately
     public void shutDown() {
         running = false;
-        reader.interrupt();
-        writer.interrupt();
+        interrupt(reader);
+        interrupt(writer);
         try {
             socket.close();
         } catch (IOException ignored) {
         }
         cleanUp();
-        System.out.println("[Server] Client Disconnected");
+        ServerLog.info("Connection closed", "peer", metrics.getPeer());
     }
 
     // Close socket and streams
@@ -125,13 +253,14 @@ public class ClientHandler implements Runnable {
         }
     }
 
+    private static void interrupt(Thread t) {
+        if (t != null)
+            t.interrupt();
+    }
+
     private void joinThreads() {
         try {
-            reader.join();
-        } catch (InterruptedException ignored) {
-        }
-        try {
-            writer.join();
+            loopsDone.await();
         } catch (InterruptedException ignored) {
         }
     }
@@ -143,4 +272,12 @@ public class ClientHandler implements Runnable {
     public void setAuthenticated(boolean authenticated) {
         this.authenticated = authenticated;
     }
+
+    public SessionInfo getSession() {
+        return session;
+    }
+
+    public void setSession(SessionInfo session) {
+        this.session = session;
+    }
 }
@@ -0,0 +1,94 @@
+package com.bankapp.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.bankapp.common.SessionInfo;
+
+// One connection's outgoing queue: how many messages are waiting to be
+// written, and how long they waited (from sendMessage until the write of
+// their frame returned). Every send is also recorded in the server-wide send
+// histogram; a connection only keeps totals, as there may be thousands.
+// The getters are what JMX shows of it (see ConnectionsMXBean).
+public final class ConnectionMetrics {
+    private final String peer;
+    private final ClientConnection connection;
+    private final LatencyHistogram sendLatency;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger maxQueued = new AtomicInteger();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong sendNanos = new AtomicLong();
+    private final AtomicLong maxSendNanos = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    ConnectionMetrics(String peer, ClientConnection connection, LatencyHistogram sendLatency) {
+        this.peer = peer;
+        this.connection = connection;
+        this.sendLatency = sendLatency;
+    }
+
+    // A message joined the queue; returns the time to hand to sent().
+    long queued() {
+        int depth = queued.incrementAndGet();
+        if (depth > maxQueued.get()) {
+            maxQueued.accumulateAndGet(depth, Math::max);
+        }
+        return System.nanoTime();
+    }
+
+    // The message queued at queuedAt has been written.
+    void sent(long queuedAt) {
+        long nanos = System.nanoTime() - queuedAt;
+        queued.decrementAndGet();
+        sent.incrementAndGet();
+        sendNanos.addAndGet(nanos);
+        if (nanos > maxSendNanos.get()) {
+            maxSendNanos.accumulateAndGet(nanos, Math::max);
+        }
+        sendLatency.record(nanos);
+    }
+
+    // The message queued at queued() will never be written: there was no
+    // room for it.
+    void dropped() {
+        queued.decrementAndGet();
+        dropped.incrementAndGet();
+    }
+
+    public String getPeer() {
+        return peer;
+    }
+
+    // who is logged in over the connection, if anyone
+    public String getUsername() {
+        SessionInfo session = connection.getSession();
+        return session == null ? "" : session.getUsername();
+    }
+
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueued.get();
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public double getMeanSendMicros() {
+        long n = sent.get();
+        return n == 0 ? 0 : sendNanos.get() / 1000.0 / n;
+    }
+
+    public double getMaxSendMicros() {
+        return maxSendNanos.get() / 1000.0;
+    }
+
+    // messages lost to a full queue
+    public long getDropped() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,21 @@
+package com.bankapp.server;
+
+import java.util.List;
+
+// The open connections' outgoing queues, registered with the platform MBean
+// server as com.bankapp:type=Connections.
+public interface ConnectionsMXBean {
+    int getOpenConnections();
+
+    // messages queued on every connection, not yet written
+    int getQueuedMessages();
+
+    // messages the open connections lost to a full queue
+    long getDroppedMessages();
+
+    // from sendMessage until the frame was written, over every connection
+    // since the server started
+    LatencyHistogram.Summary getSend();
+
+    List<ConnectionMetrics> getConnections();
+}
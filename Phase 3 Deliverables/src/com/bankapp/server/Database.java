@@ -1,83 +1,151 @@
 package com.bankapp.server;
-import java.io.Serializable;
-import java.io.ObjectOutputStream;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.bankapp.common.Account;
 import com.bankapp.common.ClientProfile;
 
-// singleton
-public class Database implements Serializable {
-    private static volatile Database instance;
+// Owns the server's data on top of a storage engine (see Storage): the lock
+// every change is made under, and the background jobs that keep the data
+// honest. With a durable engine a checkpointer periodically folds the
+// journal into a snapshot; the reconciler checks balances against histories.
+public class Database {
+    private final Storage storage;
+    // changes (applied in memory, then journaled) hold the read side; a
+    // checkpoint holds the write side just long enough to rotate the journal
+    // and capture the databases, so the snapshot matches the segment boundary
+    private final ReentrantReadWriteLock changeLock = new ReentrantReadWriteLock();
+    private ScheduledExecutorService checkpointer;
+    private final Reconciler reconciler;
+    private ScheduledExecutorService reconcileTimer;
+
+    // the engine named by --storage
+    public Database(ServerConfig config) throws IOException {
+        this(Storage.open(config));
+    }
 
-    // username -> password
-    private final Map<String, String> tellerDatabase = new HashMap<>();
-    // username -> clientProfile objects
-    private final Map<String, ClientProfile> clientDatabase = new HashMap<>();
-    // id -> account objects
-    private final Map<String, Account> accountDatabase = new HashMap<>();
+    public Database(Storage storage) {
+        this.storage = storage;
+        this.reconciler = new Reconciler(storage.accounts());
+        // before anything creates an account
+        Account.setHistoryFactory(storage::newHistory);
+    }
 
-    private int nextAccountId = 1;
-    // private constructor
-    private Database() {
+    // Loads what the engine kept from an earlier run. Returns true when there
+    // was nothing to load.
+    public boolean recover() throws IOException {
+        return storage.recover();
+    }
 
+    // hold while applying a change and appending its journal record
+    public Lock changes() {
+        return changeLock.readLock();
     }
 
-    public static Database getInstance() {
-        if (instance == null) {
-            instance = new Database();
-        }
-        return instance;
+    public Journal getJournal() {
+        return storage.journal();
     }
 
-    public void saveDatabase(String filename) {
-        try (ObjectOutputStream s = new ObjectOutputStream(new FileOutputStream(filename))) {
-            s.writeObject(this); // save entire database class to .ser file
-        } catch (IOException e) {
-            System.err.println("Failed to save to database. Reason: " + e.getMessage());
+    public Storage getStorage() {
+        return storage;
+    }
+
+    // checkpoints every intervalMillis on a background thread; 0 disables
+    public synchronized void startCheckpointer(long intervalMillis) {
+        if (!getJournal().isEnabled() || intervalMillis <= 0 || checkpointer != null) {
+            return;
         }
+        checkpointer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread t = new Thread(task, "checkpointer");
+            t.setDaemon(true);
+            return t;
+        });
+        checkpointer.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (IOException | RuntimeException e) {
+                System.out.println("[Server] Checkpoint failed: " + e.getMessage());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
     }
 
-    public static Database loadDatabase(String filename) {
-        try (ObjectInputStream s = new ObjectInputStream(new FileInputStream(filename))) {
-            Database d = (Database) s.readObject();
-            instance = d;
-            return instance;
-        } catch (IOException | ClassNotFoundException c) {
-            System.err.println("Failed to load in database. Reason: " + c.getMessage());
-            return null;
+    // checks every account's balance against its history every intervalMillis
+    // on a background thread; 0 disables
+    public synchronized void startReconciler(long intervalMillis) {
+        if (intervalMillis <= 0 || reconcileTimer != null) {
+            return;
         }
+        reconcileTimer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread t = new Thread(task, "reconciler");
+            t.setDaemon(true);
+            return t;
+        });
+        reconcileTimer.scheduleWithFixedDelay(() -> {
+            try {
+                reconcile();
+            } catch (RuntimeException e) {
+                System.out.println("[Server] Reconciliation failed: " + e.getMessage());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
     }
 
-    // protect singleton-ness of singleton upon server startup
-    public Object readResolve() {
-        instance = this;
-        return this;
+    // Checks now; returns the ids of the accounts whose balance diverges from
+    // the sum of their transactions (each is also logged).
+    public List<String> reconcile() {
+        return reconciler.reconcile();
+    }
+
+    // Makes the changes so far durable without the journal (for DiskStorage,
+    // writes a snapshot and deletes the journal segments it covers). Returns
+    // false if nothing changed since the last checkpoint.
+    public synchronized boolean checkpoint() throws IOException {
+        return storage.checkpoint(changeLock.writeLock());
+    }
+
+    // takes a last checkpoint so the next start has no journal to replay,
+    // then closes the storage
+    public synchronized void close() {
+        if (reconcileTimer != null) {
+            reconcileTimer.shutdownNow();
+        }
+        reconciler.close();
+        if (checkpointer != null) {
+            checkpointer.shutdown(); // not shutdownNow: an interrupt would close the journal's channels
+        }
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            System.out.println("[Server] Final checkpoint failed, the journal still has everything: "
+                    + e.getMessage());
+        }
+        storage.close();
     }
 
-    public int getNextAccountId() { 
-        return this.nextAccountId;
+    public int getNextAccountId() {
+        return storage.getNextAccountId();
     }
 
-    public void setNextAccountID(int n){
-        this.nextAccountId = n;
+    // the number for a new account's id; see Storage.allocateAccountId
+    public int allocateAccountId() {
+        return storage.allocateAccountId();
     }
 
     public Map<String, String> getTellerDatabase() {
-        return tellerDatabase;
+        return storage.tellers();
     }
 
     public Map<String, ClientProfile> getClientDatabase() {
-        return clientDatabase;
+        return storage.profiles();
     }
 
     public Map<String, Account> getAccountDatabase() {
-        return accountDatabase;
+        return storage.accounts();
     }
 
 
@@ -0,0 +1,82 @@
+package com.bankapp.server;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+
+import com.bankapp.common.Transaction;
+
+// The durable engine (--storage=disk). The maps stay the working
+// set; every change is appended to the journal under the data directory, and
+// a checkpoint writes a snapshot and drops the journal segments it covers.
+// recover() loads the latest snapshot and replays only the journal written
+// after it, so restart time follows the changes since the last checkpoint
+// rather than the whole history.
+public class DiskStorage extends MemoryStorage {
+    private static final String SNAPSHOT_FILE = "snapshot.dat";
+
+    private final Journal journal;
+    private final Path snapshotFile;
+    private final SnapshotHistory snapshotHistory;
+
+    public DiskStorage(Path dir, Journal.FSYNC fsync, long groupCommitMillis,
+            Supplier<List<Transaction>> histories) throws IOException {
+        super(histories);
+        this.journal = Journal.open(dir, fsync, groupCommitMillis);
+        this.snapshotFile = dir.resolve(SNAPSHOT_FILE);
+        this.snapshotHistory = new SnapshotHistory(dir);
+    }
+
+    @Override
+    public Journal journal() {
+        return journal;
+    }
+
+    @Override
+    public boolean recover() throws IOException {
+        long start = System.nanoTime();
+        long covered = Snapshot.load(snapshotFile, snapshotHistory, this);
+        JournalReplayer replayer = new JournalReplayer(profiles(), accounts());
+        int records = journal.replay(covered, replayer);
+        skipAccountIdsBelow(replayer.getNextAccountId());
+        if (covered > 0 || records > 0) {
+            System.out.println("[Server] Recovered " + profiles().size() + " profiles and "
+                    + accounts().size() + " accounts in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms.");
+        }
+        return covered == 0 && records == 0;
+    }
+
+    // Changes are held off only while the journal rotates and the maps are
+    // captured; the snapshot itself is written with them flowing.
+    @Override
+    public synchronized boolean checkpoint(Lock exclusive) throws IOException {
+        Snapshot snapshot;
+        long start = System.nanoTime();
+        exclusive.lock();
+        try {
+            if (journal.isSegmentEmpty()) {
+                return false;
+            }
+            long segment = journal.rotate();
+            snapshot = Snapshot.capture(segment, getNextAccountId(), profiles(), accounts());
+        } finally {
+            exclusive.unlock();
+        }
+        long paused = System.nanoTime() - start;
+        snapshot.write(snapshotFile, snapshotHistory);
+        journal.deleteSegmentsThrough(snapshot.getSegment());
+        System.out.println("[Server] Checkpoint through journal segment " + snapshot.getSegment() + " ("
+                + TimeUnit.NANOSECONDS.toMillis(paused) + " ms paused, "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms total).");
+        return true;
+    }
+
+    @Override
+    public void close() {
+        journal.close();
+    }
+}
@@ -0,0 +1,657 @@
+package com.bankapp.server;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32;
+
+import com.bankapp.common.AccountMessage;
+import com.bankapp.common.Money;
+import com.bankapp.common.Transaction;
+
+// Append-only log of every change made to the client and account databases.
+// Handlers append a record here, apply the change in memory unless the
+// append failed outright, and reply once the returned future completes, i.e.
+// once the record is as durable as the fsync policy makes it. A transaction
+// is the exception: its record carries the sequence it got, so it is applied
+// first, on its account's lane, where nothing else touches the account. On
+// startup replay() feeds the records back to rebuild the databases.
+//
+// The journal is split into numbered segments so that the part a snapshot
+// covers can be dropped as whole files (see DiskStorage).
+//
+// record:  [int payload length][int crc32 of payload][payload]
+// payload: kind byte, then the kind's fields (see the append methods)
+//
+// A record cut short by a crash, or one whose checksum does not match, can
+// only be at the end of the newest segment: replay stops there and the tail
+// is truncated away. Every other segment was forced whole before the next
+// one took appends, so a bad record in one is damage, and replay refuses to
+// go on, as the records after it are deltas on what was lost.
+public class Journal implements AutoCloseable {
+    public enum FSYNC {
+        ALWAYS, // force every record before completing it
+        GROUP,  // one force covers every record appended during the commit window
+        NONE    // leave flushing to the OS; a crash can lose acknowledged changes
+    }
+
+    // the ordinal is what goes on disk: append new kinds at the end
+    private enum KIND {
+        CREATE_PROFILE,
+        SAVE_PROFILE,
+        DELETE_PROFILE,
+        CREATE_ACCOUNT,
+        SAVE_ACCOUNT,
+        DELETE_ACCOUNT,
+        TRANSACTION,       // amount as a decimal string; only read now
+        SHARE_ACCOUNT,
+        TRANSACTION_CENTS, // amount as a long of cents
+        TRANSACTION_BATCH  // several TRANSACTION_CENTS bodies, replayed all or none
+    }
+
+    // receives the records in the order they were appended
+    public interface Listener {
+        void createProfile(String username, String password, String phone, String address, String legalName);
+
+        void saveProfile(String username, String password, String phone, String address, String legalName);
+
+        void deleteProfile(String username);
+
+        void createAccount(String username, String accountId, AccountMessage.ACCOUNT_TYPE type,
+                int withdrawLimit, BigDecimal creditLimit);
+
+        void saveAccount(String accountId, int withdrawCount, int withdrawLimit, BigDecimal creditLimit);
+
+        void deleteAccount(String username, String accountId);
+
+        // sequence is the transaction's index in the account's history
+        void transaction(String accountId, int sequence, Transaction tx, int withdrawCount);
+
+        void shareAccount(String accountId, String targetUsername);
+    }
+
+    // one transaction of a batch appended by transactions()
+    public static final class TransactionRecord {
+        final String accountId;
+        final int sequence;
+        final Transaction tx;
+        final int withdrawCount;
+
+        public TransactionRecord(String accountId, int sequence, Transaction tx, int withdrawCount) {
+            this.accountId = accountId;
+            this.sequence = sequence;
+            this.tx = tx;
+            this.withdrawCount = withdrawCount;
+        }
+    }
+
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    private final Path dir;
+    private final FSYNC fsync;
+    private final long groupCommitMillis;
+
+    private final Object lock = new Object();
+    // segment being appended to and its file; swapped by rotate()
+    private long segment;
+    private FileChannel channel;
+    private long segmentRecords;
+    // GROUP: records written but not yet forced
+    private List<CompletableFuture<Void>> unsynced = new ArrayList<>();
+    private boolean closed;
+    private Thread syncThread;
+    // held while forcing, so rotate() never closes a channel mid-force
+    private final Object syncLock = new Object();
+
+    private Journal(Path dir, FSYNC fsync, long groupCommitMillis) {
+        this.dir = dir;
+        this.fsync = fsync;
+        this.groupCommitMillis = groupCommitMillis;
+    }
+
+    // segments are <dir>/journal-<n>.log; nothing is opened until replay()
+    public static Journal open(Path dir, FSYNC fsync, long groupCommitMillis) throws IOException {
+        Files.createDirectories(dir);
+        return new Journal(dir, fsync, groupCommitMillis);
+    }
+
+    // a journal that records nothing, for --storage=memory
+    public static Journal disabled() {
+        return new Journal(null, FSYNC.NONE, 0);
+    }
+
+    public boolean isEnabled() {
+        return dir != null;
+    }
+
+    // Feeds every intact record in the segments after afterSegment (the last one
+    // a snapshot covers, 0 for none) to the listener, and leaves the journal
+    // ready to append. Must be called once, before the first append. Returns the
+    // number of records replayed.
+    public int replay(long afterSegment, Listener listener) throws IOException {
+        if (dir == null) {
+            return 0;
+        }
+        List<Long> segments = segments();
+        int records = 0;
+        long last = afterSegment;
+        for (int i = 0; i < segments.size(); i++) {
+            long n = segments.get(i);
+            if (n <= afterSegment) {
+                continue; // a snapshot was written but the segment not yet deleted
+            }
+            records += replaySegment(n, listener, i == segments.size() - 1);
+            last = n;
+        }
+        deleteSegmentsThrough(afterSegment);
+        synchronized (lock) {
+            segment = last > afterSegment ? last : afterSegment + 1;
+            channel = openSegment(segment);
+            channel.position(channel.size());
+            // none of the replayed records are in a snapshot yet
+            segmentRecords = records;
+        }
+        System.out.println("[Server] Replayed " + records + " journal records from " + dir + ".");
+        return records;
+    }
+
+    // a bad record ends the segment; in the newest one that is a crash mid-write
+    // and the tail is cut off so appends continue from the last good record,
+    // in any other it fails the replay
+    private int replaySegment(long n, Listener listener, boolean newest) throws IOException {
+        Path file = segmentFile(n);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            DataInputStream data = new DataInputStream(new BufferedInputStream(Channels.newInputStream(in), 1 << 16));
+            long valid = 0;
+            long size = in.size();
+            int records = 0;
+            CRC32 crc = new CRC32();
+            while (valid < size) {
+                byte[] payload;
+                try {
+                    int length = data.readInt();
+                    int checksum = data.readInt();
+                    if (length <= 0 || length > MAX_RECORD_BYTES) {
+                        System.out.println("[Server] " + file + ": bad record length at offset " + valid + ".");
+                        break;
+                    }
+                    payload = new byte[length];
+                    data.readFully(payload);
+                    crc.reset();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != checksum) {
+                        System.out.println("[Server] " + file + ": record at offset " + valid + " fails its checksum.");
+                        break;
+                    }
+                } catch (EOFException e) {
+                    System.out.println("[Server] " + file + ": partial record at offset " + valid + ".");
+                    break;
+                }
+                apply(payload, listener);
+                valid += HEADER_BYTES + payload.length;
+                records++;
+            }
+            if (valid < size) {
+                if (!newest) {
+                    throw new IOException(file + " is damaged at offset " + valid
+                            + "; the segments after it cannot be replayed without it");
+                }
+                System.out.println("[Server] Dropping the journal tail after offset " + valid + ".");
+                in.truncate(valid);
+                in.force(true);
+            }
+            return records;
+        }
+    }
+
+    // number of the segment being appended to
+    public long currentSegment() {
+        synchronized (lock) {
+            return segment;
+        }
+    }
+
+    // true if no record has been appended (or replayed) since the last rotate()
+    public boolean isSegmentEmpty() {
+        synchronized (lock) {
+            return segmentRecords == 0;
+        }
+    }
+
+    // Closes the current segment, forcing it first, and starts the next one.
+    // Returns the number of the segment just closed: a snapshot taken while no
+    // change can be appended covers it and everything before it.
+    public long rotate() throws IOException {
+        if (dir == null) {
+            return 0;
+        }
+        synchronized (syncLock) {
+            FileChannel old;
+            List<CompletableFuture<Void>> batch;
+            long closedSegment;
+            IOException failure = null;
+            synchronized (lock) {
+                if (closed) {
+                    throw new IOException("Journal is closed");
+                }
+                closedSegment = segment;
+                old = channel;
+                batch = unsynced;
+                unsynced = new ArrayList<>();
+                // forced before the next segment takes an append, so only the
+                // newest segment can end in a torn record (see replaySegment)
+                try {
+                    old.force(false);
+                } catch (IOException e) {
+                    failure = e;
+                }
+                channel = openSegment(segment + 1);
+                segment++;
+                segmentRecords = 0;
+            }
+            complete(batch, failure);
+            old.close();
+            return closedSegment;
+        }
+    }
+
+    // removes segment files a durable snapshot has made redundant
+    public void deleteSegmentsThrough(long n) throws IOException {
+        if (dir == null) {
+            return;
+        }
+        for (long s : segments()) {
+            if (s <= n) {
+                Files.deleteIfExists(segmentFile(s));
+            }
+        }
+    }
+
+    private List<Long> segments() throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "journal-*.log")) {
+            for (Path f : files) {
+                String name = f.getFileName().toString();
+                try {
+                    segments.add(Long.parseLong(name.substring("journal-".length(), name.length() - ".log".length())));
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private Path segmentFile(long n) {
+        return dir.resolve(String.format("journal-%08d.log", n));
+    }
+
+    private FileChannel openSegment(long n) throws IOException {
+        return FileChannel.open(segmentFile(n),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static void apply(byte[] payload, Listener listener) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int kind = in.readUnsignedByte();
+        if (kind >= KIND.values().length) {
+            throw new IOException("Unknown journal record kind " + kind);
+        }
+        switch (KIND.values()[kind]) {
+            case CREATE_PROFILE:
+                listener.createProfile(readString(in), readString(in), readString(in), readString(in), readString(in));
+                break;
+            case SAVE_PROFILE:
+                listener.saveProfile(readString(in), readString(in), readString(in), readString(in), readString(in));
+                break;
+            case DELETE_PROFILE:
+                listener.deleteProfile(readString(in));
+                break;
+            case CREATE_ACCOUNT:
+                listener.createAccount(readString(in), readString(in),
+                        AccountMessage.ACCOUNT_TYPE.values()[in.readUnsignedByte()], in.readInt(), readDecimal(in));
+                break;
+            case SAVE_ACCOUNT:
+                listener.saveAccount(readString(in), in.readInt(), in.readInt(), readDecimal(in));
+                break;
+            case DELETE_ACCOUNT:
+                listener.deleteAccount(readString(in), readString(in));
+                break;
+            case TRANSACTION: {
+                String accountId = readString(in);
+                int sequence = in.readInt();
+                Date created = new Date(in.readLong());
+                BigDecimal amount = readDecimal(in);
+                Transaction.OPERATION op = Transaction.OPERATION.values()[in.readUnsignedByte()];
+                listener.transaction(accountId, sequence, new Transaction(created, amount, op), in.readInt());
+                break;
+            }
+            case TRANSACTION_CENTS:
+                applyTransaction(in, listener);
+                break;
+            case TRANSACTION_BATCH: {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    applyTransaction(in, listener);
+                }
+                break;
+            }
+            case SHARE_ACCOUNT:
+                listener.shareAccount(readString(in), readString(in));
+                break;
+        }
+    }
+
+    private static void applyTransaction(DataInputStream in, Listener listener) throws IOException {
+        String accountId = readString(in);
+        int sequence = in.readInt();
+        Date created = new Date(in.readLong());
+        Money amount = Money.ofCents(in.readLong());
+        Transaction.OPERATION op = Transaction.OPERATION.values()[in.readUnsignedByte()];
+        listener.transaction(accountId, sequence, new Transaction(created, amount, op), in.readInt());
+    }
+
+    public CompletableFuture<Void> createProfile(String username, String password, String phone, String address,
+            String legalName) {
+        return append(KIND.CREATE_PROFILE, out -> {
+            writeString(out, username);
+            writeString(out, password);
+            writeString(out, phone);
+            writeString(out, address);
+            writeString(out, legalName);
+        });
+    }
+
+    public CompletableFuture<Void> saveProfile(String username, String password, String phone, String address,
+            String legalName) {
+        return append(KIND.SAVE_PROFILE, out -> {
+            writeString(out, username);
+            writeString(out, password);
+            writeString(out, phone);
+            writeString(out, address);
+            writeString(out, legalName);
+        });
+    }
+
+    public CompletableFuture<Void> deleteProfile(String username) {
+        return append(KIND.DELETE_PROFILE, out -> writeString(out, username));
+    }
+
+    public CompletableFuture<Void> createAccount(String username, String accountId, AccountMessage.ACCOUNT_TYPE type,
+            int withdrawLimit, BigDecimal creditLimit) {
+        return append(KIND.CREATE_ACCOUNT, out -> {
+            writeString(out, username);
+            writeString(out, accountId);
+            out.writeByte(type.ordinal());
+            out.writeInt(withdrawLimit);
+            writeDecimal(out, creditLimit);
+        });
+    }
+
+    public CompletableFuture<Void> saveAccount(String accountId, int withdrawCount, int withdrawLimit,
+            BigDecimal creditLimit) {
+        return append(KIND.SAVE_ACCOUNT, out -> {
+            writeString(out, accountId);
+            out.writeInt(withdrawCount);
+            out.writeInt(withdrawLimit);
+            writeDecimal(out, creditLimit);
+        });
+    }
+
+    public CompletableFuture<Void> deleteAccount(String username, String accountId) {
+        return append(KIND.DELETE_ACCOUNT, out -> {
+            writeString(out, username);
+            writeString(out, accountId);
+        });
+    }
+
+    // withdrawCount is the account's count after the transaction (0 unless saving)
+    public CompletableFuture<Void> transaction(String accountId, int sequence, Transaction tx, int withdrawCount) {
+        return append(KIND.TRANSACTION_CENTS,
+                out -> writeTransaction(out, new TransactionRecord(accountId, sequence, tx, withdrawCount)));
+    }
+
+    // Several transactions as a single record: one write, one force, and a
+    // crash keeps either all of them or none.
+    public CompletableFuture<Void> transactions(List<TransactionRecord> records) {
+        if (records.isEmpty()) {
+            return DONE;
+        }
+        return append(KIND.TRANSACTION_BATCH, out -> {
+            out.writeInt(records.size());
+            for (TransactionRecord record : records) {
+                writeTransaction(out, record);
+            }
+        });
+    }
+
+    private static void writeTransaction(DataOutputStream out, TransactionRecord record) throws IOException {
+        writeString(out, record.accountId);
+        out.writeInt(record.sequence);
+        out.writeLong(record.tx.getCreated().getTime());
+        out.writeLong(record.tx.getAmountMoney().getCents());
+        out.writeByte(record.tx.getOperation().ordinal());
+        out.writeInt(record.withdrawCount);
+    }
+
+    public CompletableFuture<Void> shareAccount(String accountId, String targetUsername) {
+        return append(KIND.SHARE_ACCOUNT, out -> {
+            writeString(out, accountId);
+            writeString(out, targetUsername);
+        });
+    }
+
+    private interface Body {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private CompletableFuture<Void> append(KIND kind, Body body) {
+        if (dir == null) {
+            return DONE;
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        ByteBuffer record;
+        try {
+            record = frame(kind, body);
+        } catch (IOException e) {
+            done.completeExceptionally(e);
+            return done;
+        }
+        // completed outside the lock: completion runs the caller's reply
+        IOException failure = null;
+        synchronized (lock) {
+            if (closed || channel == null) {
+                failure = new IOException(closed ? "Journal is closed" : "Journal not replayed yet");
+            } else {
+                try {
+                    while (record.hasRemaining()) {
+                        channel.write(record);
+                    }
+                    segmentRecords++;
+                    switch (fsync) {
+                        case ALWAYS:
+                            channel.force(false);
+                            break;
+                        case GROUP:
+                            startSyncThread();
+                            unsynced.add(done);
+                            lock.notifyAll();
+                            return done;
+                        case NONE:
+                            break;
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure == null) {
+            done.complete(null);
+        } else {
+            done.completeExceptionally(failure);
+        }
+        return done;
+    }
+
+    private static ByteBuffer frame(KIND kind, Body body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0); // length and checksum, filled in below
+        out.writeInt(0);
+        out.writeByte(kind.ordinal());
+        body.write(out);
+        out.flush();
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        int length = record.remaining() - HEADER_BYTES;
+        if (length > MAX_RECORD_BYTES) {
+            throw new IOException("Journal record too large: " + length + " bytes");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_BYTES, length);
+        record.putInt(0, length);
+        record.putInt(4, (int) crc.getValue());
+        return record;
+    }
+
+    // called with the lock held
+    private void startSyncThread() {
+        if (syncThread == null) {
+            syncThread = new Thread(this::syncLoop, "journal-sync");
+            syncThread.setDaemon(true);
+            syncThread.start();
+        }
+    }
+
+    // GROUP: waits for a record, lets the commit window fill, then completes
+    // everything written so far with a single force
+    private void syncLoop() {
+        while (true) {
+            synchronized (lock) {
+                while (unsynced.isEmpty() && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (unsynced.isEmpty()) {
+                    return; // closed and drained
+                }
+            }
+            if (groupCommitMillis > 0) {
+                try {
+                    Thread.sleep(groupCommitMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (syncLock) {
+                List<CompletableFuture<Void>> batch;
+                FileChannel target;
+                synchronized (lock) {
+                    batch = unsynced;
+                    unsynced = new ArrayList<>();
+                    target = channel;
+                }
+                force(target, batch);
+            }
+        }
+    }
+
+    private static void force(FileChannel target, List<CompletableFuture<Void>> batch) {
+        IOException failure = null;
+        try {
+            target.force(false);
+        } catch (IOException e) {
+            failure = e;
+        }
+        complete(batch, failure);
+    }
+
+    private static void complete(List<CompletableFuture<Void>> batch, IOException failure) {
+        for (CompletableFuture<Void> f : batch) {
+            if (failure == null) {
+                f.complete(null);
+            } else {
+                f.completeExceptionally(failure);
+            }
+        }
+    }
+
+    // forces whatever is outstanding; appends after this fail
+    @Override
+    public void close() {
+        if (dir == null) {
+            return;
+        }
+        Thread sync;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            sync = syncThread;
+            lock.notifyAll();
+        }
+        if (sync != null) {
+            try {
+                sync.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("[Server] Failed to close journal: " + e.getMessage());
+        }
+    }
+
+    // nullable strings: presence flag, then modified UTF-8
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    // exact decimals keep their scale, so "500.00" replays as "500.00"
+    private static void writeDecimal(DataOutputStream out, BigDecimal d) throws IOException {
+        writeString(out, d == null ? null : d.toString());
+    }
+
+    private static BigDecimal readDecimal(DataInputStream in) throws IOException {
+        String s = readString(in);
+        return s == null ? null : new BigDecimal(s);
+    }
+}
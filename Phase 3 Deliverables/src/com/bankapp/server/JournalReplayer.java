@@ -0,0 +1,145 @@
+package com.bankapp.server;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import com.bankapp.common.Account;
+import com.bankapp.common.AccountMessage;
+import com.bankapp.common.CheckingAccount;
+import com.bankapp.common.ClientProfile;
+import com.bankapp.common.CreditLine;
+import com.bankapp.common.SavingAccount;
+import com.bankapp.common.Transaction;
+
+// Rebuilds the client and account databases from journal records. Records
+// were only written after the change was validated and applied, so they are
+// applied here as they stand; a record that no longer fits (say, for an
+// account that is gone) is reported and skipped rather than failing startup.
+class JournalReplayer implements Journal.Listener {
+    private final Map<String, ClientProfile> clientDatabase;
+    private final Map<String, Account> accountDatabase;
+    // one past the highest "ACC<n>" seen, so new IDs never reuse a replayed one
+    private int nextAccountId;
+
+    JournalReplayer(Map<String, ClientProfile> clientDatabase, Map<String, Account> accountDatabase) {
+        this.clientDatabase = clientDatabase;
+        this.accountDatabase = accountDatabase;
+    }
+
+    int getNextAccountId() {
+        return nextAccountId;
+    }
+
+    @Override
+    public void createProfile(String username, String password, String phone, String address, String legalName) {
+        clientDatabase.put(username, new ClientProfile(username, password, phone, address, legalName));
+    }
+
+    @Override
+    public void saveProfile(String username, String password, String phone, String address, String legalName) {
+        ClientProfile profile = clientDatabase.get(username);
+        if (profile == null) {
+            skip("profile save", username);
+            return;
+        }
+        profile.setPassword(password);
+        profile.setPhone(phone);
+        profile.setAddress(address);
+        profile.setLegalName(legalName);
+    }
+
+    @Override
+    public void deleteProfile(String username) {
+        clientDatabase.remove(username);
+    }
+
+    @Override
+    public void createAccount(String username, String accountId, AccountMessage.ACCOUNT_TYPE type,
+            int withdrawLimit, BigDecimal creditLimit) {
+        Account account;
+        switch (type) {
+            case CHECKING:
+                account = new CheckingAccount();
+                break;
+            case SAVING:
+                account = new SavingAccount(withdrawLimit);
+                break;
+            case CREDIT_LINE:
+                account = new CreditLine(creditLimit.toPlainString());
+                break;
+            default:
+                skip("account create", accountId);
+                return;
+        }
+        account.setID(accountId);
+        accountDatabase.put(accountId, account);
+        ClientProfile profile = clientDatabase.get(username);
+        if (profile != null) {
+            profile.addAccountID(accountId);
+        }
+        if (accountId.startsWith("ACC")) {
+            try {
+                nextAccountId = Math.max(nextAccountId, Integer.parseInt(accountId.substring(3)) + 1);
+            } catch (NumberFormatException e) {
+                // not one of ours; it cannot collide with a generated ID
+            }
+        }
+    }
+
+    @Override
+    public void saveAccount(String accountId, int withdrawCount, int withdrawLimit, BigDecimal creditLimit) {
+        Account account = accountDatabase.get(accountId);
+        if (account instanceof SavingAccount saving) {
+            saving.setWithdrawCount(withdrawCount);
+            saving.setWithdrawLimit(withdrawLimit);
+        } else if (account instanceof CreditLine credit && creditLimit != null) {
+            credit.setCreditLimit(creditLimit.toPlainString());
+        } else if (account == null) {
+            skip("account save", accountId);
+        }
+    }
+
+    @Override
+    public void deleteAccount(String username, String accountId) {
+        ClientProfile profile = clientDatabase.get(username);
+        if (profile != null) {
+            profile.removeAccountID(accountId);
+        }
+        accountDatabase.remove(accountId);
+    }
+
+    @Override
+    public void transaction(String accountId, int sequence, Transaction tx, int withdrawCount) {
+        Account account = accountDatabase.get(accountId);
+        if (account == null) {
+            skip("transaction", accountId);
+            return;
+        }
+        if (sequence < account.getTransactionCount()) {
+            return; // already applied
+        }
+        if (sequence > account.getTransactionCount()) {
+            System.out.println("[Server] Journal is missing transactions " + account.getTransactionCount()
+                    + ".." + (sequence - 1) + " of " + accountId + ".");
+        }
+        // the limit checks ran when the transaction was first made
+        account.restoreTransaction(tx);
+        if (account instanceof SavingAccount saving) {
+            saving.setWithdrawCount(withdrawCount);
+        }
+    }
+
+    @Override
+    public void shareAccount(String accountId, String targetUsername) {
+        ClientProfile target = clientDatabase.get(targetUsername);
+        if (target == null) {
+            skip("account share", targetUsername);
+            return;
+        }
+        target.addAccountID(accountId);
+    }
+
+    private static void skip(String what, String key) {
+        System.out.println("[Server] Journal " + what + " for unknown " + key + ", skipped.");
+    }
+}
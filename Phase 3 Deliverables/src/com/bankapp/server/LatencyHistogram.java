@@ -0,0 +1,139 @@
+package com.bankapp.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Latencies in nanoseconds, recorded from any number of threads without a
+// lock. Buckets are 1/16 of a power of two wide, so every value is counted
+// within about 6% of what it was at any magnitude (as HdrHistogram does with
+// one significant digit), in a fixed 4.7 KB of counts; anything over 2^40 ns
+// (about 18 minutes) is counted as that.
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_BITS = 40;
+    private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_BITS - SUB_BITS + 1) * SUB_BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long v = Math.min(Math.max(0, nanos), MAX_VALUE);
+        counts.incrementAndGet(index(v));
+        total.incrementAndGet();
+        sum.addAndGet(v);
+        if (v > max.get()) {
+            max.accumulateAndGet(v, Math::max);
+        }
+    }
+
+    // the time since startNanos (a System.nanoTime reading)
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return total.get();
+    }
+
+    private static int index(long v) {
+        if (v < SUB_BUCKETS) {
+            return (int) v;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // the smallest value counted in the bucket
+    private static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = index % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+    }
+
+    // A copy of the counts so far. Recording carries on meanwhile, so the
+    // copy may be a few values off from any one instant, never inconsistent.
+    public Summary summary() {
+        long[] copy = new long[counts.length()];
+        long n = 0;
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+            n += copy[i];
+        }
+        long highest = max.get();
+        return new Summary(n, n == 0 ? 0 : (double) sum.get() / total.get(),
+                percentile(copy, n, 50, highest), percentile(copy, n, 90, highest),
+                percentile(copy, n, 99, highest), percentile(copy, n, 99.9, highest), highest);
+    }
+
+    private static long percentile(long[] counts, long n, double p, long max) {
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(lowerBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    // What JMX shows of a histogram (an MXBean turns it into CompositeData),
+    // in microseconds.
+    public static final class Summary {
+        private final long count;
+        private final double mean;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        Summary(long count, double meanNanos, long p50, long p90, long p99, long p999, long max) {
+            this.count = count;
+            this.mean = meanNanos;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMicros() {
+            return mean / 1000.0;
+        }
+
+        public double getP50Micros() {
+            return p50 / 1000.0;
+        }
+
+        public double getP90Micros() {
+            return p90 / 1000.0;
+        }
+
+        public double getP99Micros() {
+            return p99 / 1000.0;
+        }
+
+        public double getP999Micros() {
+            return p999 / 1000.0;
+        }
+
+        public double getMaxMicros() {
+            return max / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.bankapp.server;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Records which session currently has an account, profile or teller login
+// open. A lease names the owning session id and an expiry time, and every
+// operation is a single compare-and-set on the entry, so any thread may act
+// for any session. An expired lease can be taken over by another session,
+// which is how leases left behind by a dead connection get reclaimed.
+public class LeaseTable {
+    private static final class Lease {
+        final String sessionID;
+        final long expiresAt;
+
+        Lease(String sessionID, long expiresAt) {
+            this.sessionID = sessionID;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long ttlMillis;
+    // key (account id / username) -> current lease
+    private final ConcurrentMap<String, Lease> leases = new ConcurrentHashMap<>();
+    // session id -> keys it may hold, for renew/release of a whole session
+    private final ConcurrentMap<String, Set<String>> keysBySession = new ConcurrentHashMap<>();
+
+    public LeaseTable(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    // Take the lease if it is free, expired, or already ours (which renews it)
+    public boolean tryAcquire(String key, String sessionID) {
+        if (key == null || sessionID == null)
+            return false;
+        long now = System.currentTimeMillis();
+        Lease fresh = new Lease(sessionID, now + ttlMillis);
+        while (true) {
+            Lease current = leases.putIfAbsent(key, fresh);
+            if (current == null) {
+                break;
+            }
+            if (!current.sessionID.equals(sessionID) && current.expiresAt > now) {
+                return false;
+            }
+            if (leases.replace(key, current, fresh)) {
+                if (!current.sessionID.equals(sessionID)) {
+                    forget(current.sessionID, key); // taken over after expiry
+                }
+                break;
+            }
+        }
+        // compute, like forget, so the set can't be dropped for being empty
+        // just as this adds to it
+        keysBySession.compute(sessionID, (id, keys) -> {
+            if (keys == null) {
+                keys = ConcurrentHashMap.newKeySet();
+            }
+            keys.add(key);
+            return keys;
+        });
+        return true;
+    }
+
+    public boolean isHeldBy(String key, String sessionID) {
+        if (key == null || sessionID == null)
+            return false;
+        Lease lease = leases.get(key);
+        return lease != null && lease.sessionID.equals(sessionID)
+                && lease.expiresAt > System.currentTimeMillis();
+    }
+
+    // true if some session holds an unexpired lease on key
+    public boolean isHeld(String key) {
+        Lease lease = leases.get(key);
+        return lease != null && lease.expiresAt > System.currentTimeMillis();
+    }
+
+    // Give the lease back; only the owning session can
+    public boolean release(String key, String sessionID) {
+        if (key == null || sessionID == null)
+            return false;
+        Lease lease = leases.get(key);
+        while (lease != null && lease.sessionID.equals(sessionID)) {
+            if (leases.remove(key, lease)) {
+                forget(sessionID, key);
+                return true;
+            }
+            lease = leases.get(key);
+        }
+        return false;
+    }
+
+    // Drop a lease regardless of owner, e.g. when the account itself is deleted
+    public void remove(String key) {
+        Lease lease = leases.remove(key);
+        if (lease != null) {
+            forget(lease.sessionID, key);
+        }
+    }
+
+    // Push out the expiry of everything this session holds
+    public void renewAll(String sessionID) {
+        Set<String> keys = keysBySession.get(sessionID);
+        if (keys == null)
+            return;
+        for (String key : keys) {
+            Lease current = leases.get(key);
+            if (current != null && current.sessionID.equals(sessionID)) {
+                leases.replace(key, current, new Lease(sessionID, System.currentTimeMillis() + ttlMillis));
+            }
+        }
+    }
+
+    // Release everything this session holds; returns how many leases were freed
+    public int releaseAll(String sessionID) {
+        Set<String> keys = keysBySession.remove(sessionID);
+        if (keys == null)
+            return 0;
+        int released = 0;
+        for (String key : keys) {
+            Lease current = leases.get(key);
+            if (current != null && current.sessionID.equals(sessionID) && leases.remove(key, current)) {
+                released++;
+            }
+        }
+        return released;
+    }
+
+    public void clear() {
+        leases.clear();
+        keysBySession.clear();
+    }
+
+    // a session that holds nothing more is dropped, not left as an empty set
+    private void forget(String sessionID, String key) {
+        keysBySession.computeIfPresent(sessionID, (id, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+}
@@ -0,0 +1,176 @@
+package com.bankapp.server;
+
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.RandomAccess;
+
+import com.bankapp.common.Money;
+import com.bankapp.common.Transaction;
+
+// Keeps account histories out of the Java heap (--history-store=mapped).
+// Every transaction is one row across five fixed-width, memory-mapped column
+// files under <data-dir>/history:
+//
+//   time.col     long  creation time, epoch millis
+//   amount.col   long  amount in cents
+//   balance.col  long  running balance after the transaction, in cents
+//   op.col       byte  operation ordinal
+//   account.col  int   index of the owning account's history
+//
+// An account's history is a list of its row numbers; get(i) reads the row
+// back into a Transaction, so only the transactions being looked at are on
+// the heap. The journal and snapshots stay the durable copy: the columns are
+// rebuilt from them on every start.
+public class MappedHistoryStore {
+    private static final int ROWS_PER_CHUNK = 1 << 20;
+
+    // the columns of ROWS_PER_CHUNK consecutive rows
+    private static final class Chunk {
+        final MappedByteBuffer time, amount, balance, op, account;
+
+        Chunk(MappedByteBuffer time, MappedByteBuffer amount, MappedByteBuffer balance, MappedByteBuffer op,
+                MappedByteBuffer account) {
+            this.time = time;
+            this.amount = amount;
+            this.balance = balance;
+            this.op = op;
+            this.account = account;
+        }
+    }
+
+    private final FileChannel timeFile, amountFile, balanceFile, opFile, accountFile;
+    // replaced, never modified, when a chunk is added, so readers need no lock
+    private volatile Chunk[] chunks = new Chunk[0];
+    private long rows;
+    private int histories;
+
+    private MappedHistoryStore(Path dir) throws IOException {
+        this.timeFile = column(dir, "time.col");
+        this.amountFile = column(dir, "amount.col");
+        this.balanceFile = column(dir, "balance.col");
+        this.opFile = column(dir, "op.col");
+        this.accountFile = column(dir, "account.col");
+    }
+
+    // starts with empty columns: whatever an earlier run left there is rebuilt
+    // by recovery
+    public static MappedHistoryStore open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        return new MappedHistoryStore(dir);
+    }
+
+    private static FileChannel column(Path dir, String name) throws IOException {
+        return FileChannel.open(dir.resolve(name), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    // a new, empty account history kept in this store (see Account.setHistoryFactory)
+    public List<Transaction> newHistory() {
+        synchronized (this) {
+            return new History(this, histories++);
+        }
+    }
+
+    public synchronized long getRowCount() {
+        return rows;
+    }
+
+    private synchronized long append(int history, Transaction tx) {
+        long row = rows;
+        int chunkIndex = (int) (row / ROWS_PER_CHUNK);
+        if (chunkIndex == chunks.length) {
+            addChunk();
+        }
+        Chunk chunk = chunks[chunkIndex];
+        int i = (int) (row % ROWS_PER_CHUNK);
+
+        chunk.time.putLong(i * 8, tx.getCreated().getTime());
+        chunk.amount.putLong(i * 8, tx.getAmountMoney().getCents());
+        chunk.balance.putLong(i * 8, tx.getBalanceAfter().getCents());
+        chunk.op.put(i, (byte) tx.getOperation().ordinal());
+        chunk.account.putInt(i * 4, history);
+        rows++;
+        return row;
+    }
+
+    private void addChunk() {
+        long first = (long) chunks.length * ROWS_PER_CHUNK;
+        try {
+            Chunk chunk = new Chunk(
+                    timeFile.map(FileChannel.MapMode.READ_WRITE, first * 8, ROWS_PER_CHUNK * 8L),
+                    amountFile.map(FileChannel.MapMode.READ_WRITE, first * 8, ROWS_PER_CHUNK * 8L),
+                    balanceFile.map(FileChannel.MapMode.READ_WRITE, first * 8, ROWS_PER_CHUNK * 8L),
+                    opFile.map(FileChannel.MapMode.READ_WRITE, first, ROWS_PER_CHUNK),
+                    accountFile.map(FileChannel.MapMode.READ_WRITE, first * 4, ROWS_PER_CHUNK * 4L));
+            Chunk[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+            grown[chunks.length] = chunk;
+            chunks = grown;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not grow the history store: " + e.getMessage(), e);
+        }
+    }
+
+    // the caller saw the row number after append() returned it, through the
+    // owning account's monitor, so the row's bytes are visible here
+    private Transaction read(long row) {
+        Chunk chunk = chunks[(int) (row / ROWS_PER_CHUNK)];
+        int i = (int) (row % ROWS_PER_CHUNK);
+        return new Transaction(new Date(chunk.time.getLong(i * 8)), Money.ofCents(chunk.amount.getLong(i * 8)),
+                Transaction.OPERATION.values()[chunk.op.get(i)], Money.ofCents(chunk.balance.getLong(i * 8)));
+    }
+
+    // one account's history: its row numbers, in order
+    private static final class History extends AbstractList<Transaction> implements RandomAccess, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final transient MappedHistoryStore store;
+        private final int index;
+        private long[] rows = new long[4];
+        private int size;
+
+        History(MappedHistoryStore store, int index) {
+            this.store = store;
+            this.index = index;
+        }
+
+        @Override
+        public Transaction get(int i) {
+            if (i < 0 || i >= size) {
+                throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + size);
+            }
+            return store.read(rows[i]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean add(Transaction tx) {
+            long row = store.append(index, tx);
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+            modCount++;
+            return true;
+        }
+
+        // the rows mean nothing outside this store; serialize the transactions
+        private Object writeReplace() throws ObjectStreamException {
+            return new ArrayList<>(this);
+        }
+    }
+}
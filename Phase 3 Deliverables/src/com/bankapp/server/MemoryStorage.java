@@ -0,0 +1,89 @@
+package com.bankapp.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+
+import com.bankapp.common.Account;
+import com.bankapp.common.ClientProfile;
+import com.bankapp.common.Transaction;
+
+// Keeps everything in concurrent maps and nothing on disk (--storage=memory,
+// the default): each start is a fresh database. Also the working set
+// DiskStorage builds on.
+public class MemoryStorage implements Storage {
+    private final Map<String, String> tellers = new ConcurrentHashMap<>();
+    private final Map<String, ClientProfile> profiles = new ConcurrentHashMap<>();
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    private final Supplier<List<Transaction>> histories;
+
+    private final AtomicInteger nextAccountId = new AtomicInteger();
+
+    public MemoryStorage() {
+        this(ArrayList::new);
+    }
+
+    // histories: where new accounts keep their transactions
+    public MemoryStorage(Supplier<List<Transaction>> histories) {
+        this.histories = histories;
+    }
+
+    @Override
+    public Map<String, String> tellers() {
+        return tellers;
+    }
+
+    @Override
+    public Map<String, ClientProfile> profiles() {
+        return profiles;
+    }
+
+    @Override
+    public Map<String, Account> accounts() {
+        return accounts;
+    }
+
+    @Override
+    public int getNextAccountId() {
+        return nextAccountId.get();
+    }
+
+    @Override
+    public int allocateAccountId() {
+        return nextAccountId.getAndIncrement();
+    }
+
+    // on recovery: numbers below n are taken by accounts already loaded
+    void skipAccountIdsBelow(int n) {
+        nextAccountId.accumulateAndGet(n, Math::max);
+    }
+
+    @Override
+    public List<Transaction> newHistory() {
+        return histories.get();
+    }
+
+    @Override
+    public Journal journal() {
+        return Journal.disabled();
+    }
+
+    @Override
+    public boolean recover() throws IOException {
+        return true;
+    }
+
+    @Override
+    public boolean checkpoint(Lock exclusive) throws IOException {
+        return false;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,258 @@
+package com.bankapp.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+import com.bankapp.common.Message;
+import com.bankapp.common.MessageCodec;
+import com.bankapp.common.MessageFrames;
+import com.bankapp.common.SessionInfo;
+
+// Per-connection state for the NIO front end. All reads, decoding and
+// dispatch to CentralServer.handleMessage happen on the owning I/O loop;
+// sendMessage may be called from any thread and only queues an encoded frame.
+class NioClientHandler implements ClientConnection {
+    private static final int INITIAL_READ_BUFFER = 8 * 1024;
+
+    // Dependencies
+    private final SocketChannel channel;
+    private final CentralServer server;
+    private final NioServer.IoLoop loop;
+
+    // Only touched on the I/O thread
+    private SelectionKey key;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+    // chosen by the client's preamble; null until it has arrived
+    private volatile MessageCodec codec;
+
+    // queued by closeAfter behind the last frame; never written
+    private static final Frame CLOSE = new Frame(ByteBuffer.allocate(0), 0);
+    // Encoded frames waiting for the socket to become writable, at most
+    // --queue-capacity of them; then the overflow policy applies
+    private final BoundedQueue<Frame> outgoing;
+    private final ServerConfig.OVERFLOW overflow;
+    // depth of outgoing and how long frames wait in it
+    private final ConnectionMetrics metrics;
+
+    private volatile boolean running = true;
+    private volatile boolean authenticated;
+    private volatile SessionInfo session;
+
+    NioClientHandler(SocketChannel channel, CentralServer server, NioServer.IoLoop loop) {
+        this.channel = channel;
+        this.server = server;
+        this.loop = loop;
+        String peer;
+        try {
+            peer = String.valueOf(channel.getRemoteAddress());
+        } catch (IOException e) {
+            peer = "unknown";
+        }
+        this.metrics = server.getMetrics().newConnection(peer, this);
+        ServerConfig config = server.getConfig();
+        this.outgoing = new BoundedQueue<>(config.getQueueCapacity(), CLOSE);
+        this.overflow = config.getOverflow();
+    }
+
+    void register(Selector selector) {
+        try {
+            int ops = outgoing.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+            key = channel.register(selector, ops, this);
+        } catch (ClosedChannelException e) {
+            close();
+        }
+    }
+
+    void onReadable() {
+        int read;
+        try {
+            read = channel.read(readBuffer);
+        } catch (IOException e) {
+            read = -1; // connection reset, treat like EOF
+        }
+        if (read < 0) {
+            close();
+            return;
+        }
+
+        // decode every complete frame in the buffer
+        readBuffer.flip();
+        int needed = 0;
+        try {
+            if (codec == null) {
+                if (readBuffer.remaining() < MessageFrames.PREAMBLE_BYTES) {
+                    readBuffer.compact();
+                    return;
+                }
+                codec = MessageFrames.codecFromPreamble(readBuffer.array(), readBuffer.position());
+                readBuffer.position(readBuffer.position() + MessageFrames.PREAMBLE_BYTES);
+            }
+            while (running && readBuffer.remaining() >= MessageFrames.HEADER_BYTES) {
+                int length = readBuffer.getInt(readBuffer.position());
+                MessageFrames.checkLength(length);
+                if (readBuffer.remaining() < MessageFrames.HEADER_BYTES + length) {
+                    needed = MessageFrames.HEADER_BYTES + length;
+                    break;
+                }
+                int start = readBuffer.position() + MessageFrames.HEADER_BYTES;
+                Message msg = codec.decode(readBuffer.array(), start, length);
+                readBuffer.position(start + length);
+                server.handleMessage(msg, this);
+            }
+        } catch (IOException e) {
+            if (running)
+                ServerLog.warn("Read failed", "peer", metrics.getPeer(), "error", e.getMessage());
+            close();
+            return;
+        } catch (RuntimeException e) {
+            // same outcome as an exception escaping ClientHandler.run, but without
+            // taking down the other connections on this I/O thread
+            ServerLog.error("Handler failed", "peer", metrics.getPeer(), "error", e);
+            close();
+            return;
+        }
+        readBuffer.compact();
+
+        // grow for a frame larger than the buffer
+        if (needed > readBuffer.capacity()) {
+            ByteBuffer bigger = ByteBuffer.allocate(needed);
+            readBuffer.flip();
+            bigger.put(readBuffer);
+            readBuffer = bigger;
+        }
+    }
+
+    void onWritable() {
+        try {
+            Frame frame;
+            while ((frame = outgoing.peek()) != null) {
+                if (frame == CLOSE) {
+                    shutDown();
+                    return;
+                }
+                channel.write(frame.buffer);
+                if (frame.buffer.hasRemaining()) {
+                    return; // socket buffer full, wait for the next OP_WRITE
+                }
+                outgoing.poll();
+                metrics.sent(frame.queuedAt);
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        } catch (IOException e) {
+            if (running)
+                ServerLog.warn("Write failed", "peer", metrics.getPeer(), "error", e.getMessage());
+            close();
+        }
+    }
+
+    void enableWrites() {
+        if (key != null && key.isValid()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    // Queue a message to send
+    @Override
+    public void sendMessage(Message msg) {
+        MessageCodec codec = this.codec;
+        if (!running || codec == null)
+            return; // nothing can be sent before the client has picked a codec
+        try {
+            byte[] payload = codec.encode(msg);
+            ByteBuffer frame = ByteBuffer.allocate(MessageFrames.HEADER_BYTES + payload.length);
+            frame.putInt(payload.length).put(payload).flip();
+            // Never waits for room: the I/O thread is what makes it, and any
+            // other sender (an account lane, the journal's sync thread) serves
+            // other clients too
+            if (!outgoing.offer(new Frame(frame, metrics.queued()), 0)) {
+                overflowed(msg);
+                return;
+            }
+            loop.requestWrite(this);
+        } catch (IOException e) {
+            ServerLog.warn("Write failed", "peer", metrics.getPeer(), "error", e.getMessage());
+        }
+    }
+
+    // DROP loses the message; DISCONNECT and BLOCK close the connection (a
+    // connection here has no thread of its own that BLOCK could hold back)
+    private void overflowed(Message msg) {
+        metrics.dropped();
+        if (overflow == ServerConfig.OVERFLOW.DROP) {
+            ServerLog.warn("Outgoing queue full, message dropped", "peer", metrics.getPeer(), "username",
+                    metrics.getUsername(), "type", msg.getType(), "capacity", outgoing.capacity());
+            return;
+        }
+        ServerLog.warn("Outgoing queue full, disconnecting", "peer", metrics.getPeer(), "username",
+                metrics.getUsername(), "type", msg.getType(), "capacity", outgoing.capacity());
+        shutDown();
+    }
+
+    // The I/O loop writes every frame queued before the CLOSE marker, then
+    // closes the channel
+    @Override
+    public void closeAfter(Message last) {
+        sendMessage(last);
+        outgoing.offerMarker();
+        loop.requestWrite(this);
+    }
+
+    // Signal this handler to stop and clean up immediately
+    @Override
+    public void shutDown() {
+        close();
+        ServerLog.info("Connection closed", "peer", metrics.getPeer());
+    }
+
+    // Close channel; the selector drops the key on its next pass
+    private void close() {
+        if (!running)
+            return;
+        running = false;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        server.connectionClosed(this);
+    }
+
+    @Override
+    public boolean isAuthenticated() {
+        return authenticated;
+    }
+
+    @Override
+    public void setAuthenticated(boolean authenticated) {
+        this.authenticated = authenticated;
+    }
+
+    @Override
+    public SessionInfo getSession() {
+        return session;
+    }
+
+    @Override
+    public void setSession(SessionInfo session) {
+        this.session = session;
+    }
+
+    @Override
+    public ConnectionMetrics metrics() {
+        return metrics;
+    }
+
+    // an encoded message waiting for the socket, and when it was queued
+    private static final class Frame {
+        final ByteBuffer buffer;
+        final long queuedAt;
+
+        Frame(ByteBuffer buffer, long queuedAt) {
+            this.buffer = buffer;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
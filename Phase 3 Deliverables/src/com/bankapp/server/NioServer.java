@@ -0,0 +1,143 @@
+package com.bankapp.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Non-blocking front end for CentralServer. The calling thread accepts
+// connections and deals them round robin onto a small fixed pool of selector
+// loops, so thousands of idle ATMs cost a handful of threads instead of three
+// threads each. Clients must speak the framed protocol (see MessageFrames).
+public class NioServer {
+    private final CentralServer server;
+    private final ServerConfig config;
+    private final IoLoop[] loops;
+    private volatile boolean running = true;
+
+    public NioServer(CentralServer server, ServerConfig config) throws IOException {
+        this.server = server;
+        this.config = config;
+        this.loops = new IoLoop[config.getIoThreads()];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new IoLoop("nio-io-" + i);
+        }
+    }
+
+    // Blocks the calling thread accepting connections until the server stops
+    public void serve() throws IOException {
+        for (IoLoop loop : loops) {
+            loop.start();
+        }
+        try (ServerSocketChannel acceptor = ServerSocketChannel.open()) {
+            acceptor.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            acceptor.bind(new InetSocketAddress(config.getPort()));
+            System.out.println("[Server] Server Initiated on port " + config.getPort()
+                    + " (NIO, " + loops.length + " I/O threads).");
+            int next = 0;
+            while (running) {
+                SocketChannel channel = acceptor.accept();
+                ServerLog.info("Client connected", "peer", channel.getRemoteAddress());
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+                IoLoop loop = loops[next];
+                next = (next + 1) % loops.length;
+                NioClientHandler handler = new NioClientHandler(channel, server, loop);
+                server.addClient(handler);
+                loop.register(handler);
+            }
+        } finally {
+            shutDown();
+        }
+    }
+
+    public void shutDown() {
+        running = false;
+        for (IoLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+    }
+
+    // One selector thread multiplexing many connections. Registration and
+    // write-interest changes requested from other threads are queued and
+    // applied by the loop itself, since SelectionKey updates race with select().
+    final class IoLoop implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<NioClientHandler> pendingRegistrations = new ConcurrentLinkedQueue<>();
+        private final Queue<NioClientHandler> pendingWrites = new ConcurrentLinkedQueue<>();
+
+        IoLoop(String name) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        void register(NioClientHandler handler) {
+            pendingRegistrations.add(handler);
+            selector.wakeup();
+        }
+
+        boolean inLoop() {
+            return Thread.currentThread() == thread;
+        }
+
+        void requestWrite(NioClientHandler handler) {
+            if (inLoop()) {
+                // replies produced while handling a read can update the key directly
+                handler.enableWrites();
+            } else {
+                pendingWrites.add(handler);
+                selector.wakeup();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                } catch (IOException e) {
+                    ServerLog.error("Selector failed", "error", e.getMessage());
+                    break;
+                }
+
+                NioClientHandler handler;
+                while ((handler = pendingRegistrations.poll()) != null) {
+                    handler.register(selector);
+                }
+                while ((handler = pendingWrites.poll()) != null) {
+                    handler.enableWrites();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handler = (NioClientHandler) key.attachment();
+                    if (key.isValid() && key.isReadable()) {
+                        handler.onReadable();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        handler.onWritable();
+                    }
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
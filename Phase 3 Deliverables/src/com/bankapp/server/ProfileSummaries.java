@@ -0,0 +1,141 @@
+package com.bankapp.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.bankapp.common.Account;
+import com.bankapp.common.AccountSummary;
+import com.bankapp.common.CheckingAccount;
+import com.bankapp.common.ClientProfile;
+import com.bankapp.common.SavingAccount;
+
+// LOAD_PROFILE's account summaries, kept per profile between loads. A load
+// whose profile and accounts have not changed since the last one is a single
+// lookup: the same immutable list comes back, with no accounts visited and no
+// balances formatted.
+//
+// The write path reports changes: whatever moves an account's balance or
+// deletes it calls accountChanged once the change is made, which drops the
+// account's summary and marks every cached list holding it stale. Linking or
+// unlinking an account needs no report, as the profile's account id list is
+// then a new instance (ClientProfile.getAccountIDs). A stale list is rebuilt
+// on its next load, and only the summaries that were dropped are built again.
+final class ProfileSummaries {
+
+    private static final class Cached {
+        final String username;
+        // the id list the summaries were built from, by identity
+        final List<String> ids;
+        // set before the entry is published in byUsername
+        List<AccountSummary> list;
+        volatile boolean stale;
+
+        Cached(String username, List<String> ids) {
+            this.username = username;
+            this.ids = ids;
+        }
+    }
+
+    private final Map<String, Account> accountDatabase;
+    // username -> summaries as of the last load
+    private final ConcurrentMap<String, Cached> byUsername = new ConcurrentHashMap<>();
+    // account id -> its summary, as of its last change
+    private final ConcurrentMap<String, AccountSummary> byAccount = new ConcurrentHashMap<>();
+    // account id -> the cached lists built from it
+    private final ConcurrentMap<String, Set<Cached>> holders = new ConcurrentHashMap<>();
+
+    ProfileSummaries(Map<String, Account> accountDatabase) {
+        this.accountDatabase = accountDatabase;
+    }
+
+    // the summaries of the profile's accounts, in account id order
+    List<AccountSummary> of(ClientProfile profile) {
+        String username = profile.getUsername();
+        List<String> ids = profile.getAccountIDs();
+        Cached cached = byUsername.get(username);
+        if (cached != null && cached.ids == ids && !cached.stale) {
+            return cached.list;
+        }
+        if (cached != null) {
+            unregister(cached);
+        }
+        // registered before any account is read, so a change made after the
+        // read is reported to this entry
+        Cached fresh = new Cached(username, ids);
+        for (String id : ids) {
+            holders.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(fresh);
+        }
+        fresh.list = build(ids);
+        byUsername.put(username, fresh);
+        return fresh.list;
+    }
+
+    // called after an account's balance moved or it was deleted
+    void accountChanged(String accountId) {
+        byAccount.remove(accountId);
+        // the set stays in place: a load registering in it meanwhile must not
+        // be left in a set no later change looks at
+        Set<Cached> stale = holders.get(accountId);
+        if (stale != null) {
+            for (Cached cached : stale) {
+                cached.stale = true;
+                stale.remove(cached);
+            }
+        }
+    }
+
+    // drops a deleted profile's summaries
+    void forget(String username) {
+        Cached cached = byUsername.remove(username);
+        if (cached != null) {
+            unregister(cached);
+        }
+    }
+
+    private void unregister(Cached cached) {
+        for (String id : cached.ids) {
+            Set<Cached> set = holders.get(id);
+            if (set != null) {
+                set.remove(cached);
+            }
+        }
+    }
+
+    private List<AccountSummary> build(List<String> ids) {
+        List<AccountSummary> summaries = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            AccountSummary summary = byAccount.get(id);
+            if (summary == null) {
+                Account account = accountDatabase.get(id);
+                if (account == null) {
+                    continue;
+                }
+                // stored under the monitor the change is made under, so a
+                // summary outliving its account's next change is dropped by
+                // that change's report
+                synchronized (account) {
+                    summary = summarize(account);
+                    byAccount.put(id, summary);
+                }
+            }
+            summaries.add(summary);
+        }
+        return List.copyOf(summaries);
+    }
+
+    private static AccountSummary summarize(Account account) {
+        AccountSummary.ACCOUNT_TYPE type;
+        if (account instanceof CheckingAccount) {
+            type = AccountSummary.ACCOUNT_TYPE.CHECKING;
+        } else if (account instanceof SavingAccount) {
+            type = AccountSummary.ACCOUNT_TYPE.SAVING;
+        } else {
+            type = AccountSummary.ACCOUNT_TYPE.CREDIT_LINE;
+        }
+        return new AccountSummary(account.getID(), type, account.getBalance());
+    }
+}
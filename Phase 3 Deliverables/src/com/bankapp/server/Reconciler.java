@@ -0,0 +1,100 @@
+package com.bankapp.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.bankapp.common.Account;
+import com.bankapp.common.Money;
+import com.bankapp.common.Transaction;
+
+// Audits that every account's balance agrees with its history. Each stored
+// transaction carries the running balance it left (Account.addTransaction),
+// so an account is consistent when each running balance is the sum of the
+// amounts up to it and the last one is the account's balance.
+//
+// A run streams every account in parallel on its own pool, so it does not
+// compete for the common pool, and reads each history a page at a time:
+// only the balance and transaction count are read together under the
+// account's monitor, and histories only ever grow, so the transactions
+// before that count can be read with new ones arriving.
+final class Reconciler {
+    private static final int PAGE = 4096;
+
+    private final Map<String, Account> accountDatabase;
+    private final ForkJoinPool pool;
+
+    Reconciler(Map<String, Account> accountDatabase) {
+        this.accountDatabase = accountDatabase;
+        // leave half the cores to request handling
+        this.pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    // Checks every account, logs each one that diverges and returns their ids.
+    List<String> reconcile() {
+        long start = System.nanoTime();
+        List<Account> accounts = new ArrayList<>(accountDatabase.values());
+        List<String> diverged;
+        try {
+            diverged = pool.submit(() -> accounts.parallelStream()
+                    .map(account -> {
+                        String problem = check(account);
+                        if (problem == null) {
+                            return null;
+                        }
+                        System.out.println("[Server] Reconciliation: account " + account.getID() + " " + problem + ".");
+                        return account.getID();
+                    })
+                    .filter(id -> id != null)
+                    .collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return List.of();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Reconciliation failed: " + e.getCause(), e.getCause());
+        }
+        System.out.println("[Server] Reconciled " + accounts.size() + " accounts in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms: "
+                + (diverged.isEmpty() ? "all balances match." : diverged.size() + " diverge."));
+        return diverged;
+    }
+
+    // null if the account is consistent, otherwise what is wrong with it
+    static String check(Account account) {
+        int count;
+        Money balance;
+        synchronized (account) {
+            count = account.getTransactionCount();
+            balance = account.getBalanceMoney();
+        }
+        long running = 0;
+        try {
+            for (int from = 0; from < count; from += PAGE) {
+                List<Transaction> page = account.getTransactions(from, Math.min(count, from + PAGE));
+                for (int i = 0; i < page.size(); i++) {
+                    Transaction tx = page.get(i);
+                    running = Math.addExact(running, tx.getAmountMoney().getCents());
+                    Money after = tx.getBalanceAfter();
+                    if (after == null || after.getCents() != running) {
+                        return "records a balance of " + after + " after transaction " + (from + i)
+                                + ", but the transactions up to it sum to " + Money.ofCents(running);
+                    }
+                }
+            }
+        } catch (ArithmeticException e) {
+            return "has transactions whose sum overflows";
+        }
+        if (running != balance.getCents()) {
+            return "has a balance of " + balance + ", but its transactions sum to " + Money.ofCents(running);
+        }
+        return null;
+    }
+
+    void close() {
+        pool.shutdown();
+    }
+}
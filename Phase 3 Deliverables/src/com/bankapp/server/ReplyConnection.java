@@ -0,0 +1,75 @@
+package com.bankapp.server;
+
+import com.bankapp.common.Message;
+import com.bankapp.common.SessionInfo;
+
+// The connection as seen while handling one request: everything sent through
+// it is stamped with that request's ID so the client can match the reply.
+// Only lives for one request (its handleMessage call, plus any account
+// change or journal write it queued); anything kept longer (client_list,
+// broadcasts) must use the underlying connection, or later unsolicited
+// messages would carry a stale request ID.
+// The first message sent is the reply: its latency, from when the request
+// arrived, goes to the request type's metrics.
+final class ReplyConnection implements ClientConnection {
+    private final ClientConnection connection;
+    private final long requestId;
+    private final ServerMetrics.Request metrics;
+    private final long startNanos;
+    private volatile boolean replied;
+
+    // requestId 0 (a client that doesn't pipeline) stamps nothing
+    ReplyConnection(ClientConnection connection, long requestId, ServerMetrics.Request metrics, long startNanos) {
+        this.connection = connection;
+        this.requestId = requestId;
+        this.metrics = metrics;
+        this.startNanos = startNanos;
+    }
+
+    @Override
+    public void sendMessage(Message msg) {
+        if (msg.getRequestId() == 0)
+            msg.setRequestId(requestId);
+        if (!replied) {
+            replied = true;
+            metrics.replied(msg, startNanos);
+        }
+        connection.sendMessage(msg);
+    }
+
+    @Override
+    public void shutDown() {
+        connection.shutDown();
+    }
+
+    // unsolicited by definition, so not stamped with this request's ID
+    @Override
+    public void closeAfter(Message last) {
+        connection.closeAfter(last);
+    }
+
+    @Override
+    public boolean isAuthenticated() {
+        return connection.isAuthenticated();
+    }
+
+    @Override
+    public void setAuthenticated(boolean authenticated) {
+        connection.setAuthenticated(authenticated);
+    }
+
+    @Override
+    public SessionInfo getSession() {
+        return connection.getSession();
+    }
+
+    @Override
+    public void setSession(SessionInfo session) {
+        connection.setSession(session);
+    }
+
+    @Override
+    public ConnectionMetrics metrics() {
+        return connection.metrics();
+    }
+}
@@ -0,0 +1,25 @@
+package com.bankapp.server;
+
+// One message type's counters and latencies, registered with the platform
+// MBean server as com.bankapp:type=Requests,name=<TYPE>. Everything counts
+// from the server's start.
+public interface RequestMetricsMXBean {
+    // requests of this type handleMessage has taken
+    long getCount();
+
+    // replies that were a FailureMessage
+    long getFailures();
+
+    // from handleMessage being called until the reply was queued, including
+    // the wait for the change lock and for the account's lane
+    LatencyHistogram.Summary getReply();
+
+    // handleMessage itself, whether or not it replied before returning
+    LatencyHistogram.Summary getHandleMessage();
+
+    // handleClientMessages / handleTellerMessage, for requests of a session of
+    // that role
+    LatencyHistogram.Summary getClientDispatch();
+
+    LatencyHistogram.Summary getTellerDispatch();
+}
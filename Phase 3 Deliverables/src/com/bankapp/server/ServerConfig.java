@@ -0,0 +1,276 @@
+package com.bankapp.server;
+
+// Startup options for CentralServer, read from "--name=value" arguments.
+// Anything not given on the command line keeps its default.
+public class ServerConfig {
+    public enum TRANSPORT {
+        BLOCKING, // one ClientHandler (plus reader/writer threads) per socket
+        NIO       // selector-based front end with a fixed pool of I/O threads
+    }
+
+    // what runs each ClientHandler and its read/write loops (blocking transport)
+    public enum EXECUTOR {
+        PLATFORM, // a new platform thread per loop
+        VIRTUAL   // a virtual thread per loop, Java 21+
+    }
+
+    // where the database is kept (see Storage)
+    public enum STORAGE {
+        MEMORY, // in memory only, gone on exit
+        DISK    // in memory, made durable by a journal and snapshots in data-dir
+    }
+
+    // what a connection does with a message when its outgoing queue is full
+    public enum OVERFLOW {
+        DISCONNECT, // close the connection: the client has stopped reading
+        DROP,       // lose the message and keep the connection
+        BLOCK       // hold back the client's requests until there is room, then
+                    // disconnect; as DISCONNECT on the nio transport
+    }
+
+    // where account histories live on the server
+    public enum HISTORY_STORE {
+        HEAP,  // Transaction objects in ArrayLists
+        MAPPED // fixed-width columns in memory-mapped files (MappedHistoryStore)
+    }
+
+    private int port = 7777;
+    private TRANSPORT transport = TRANSPORT.BLOCKING;
+    private EXECUTOR executor = EXECUTOR.PLATFORM;
+    private int ioThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    // lanes that apply account changes, each account always on the same one
+    private int accountThreads = Runtime.getRuntime().availableProcessors();
+    // how long an idle session keeps its account/profile leases
+    private long leaseTtlMillis = 15 * 60 * 1000L;
+    // how long a session may go without a request before it is ended; 0 = never
+    private long sessionTimeoutMillis = 15 * 60 * 1000L;
+    // how often the session reaper looks for expired sessions
+    private long reaperTickMillis = 1000;
+    // DISK (opt in with --storage=disk): write-ahead journal of database
+    // changes in data-dir, replayed on startup
+    private STORAGE storage = STORAGE.MEMORY;
+    private String dataDir = "data";
+    private Journal.FSYNC fsync = Journal.FSYNC.GROUP;
+    // GROUP: how long the first record in a batch waits for others to join it
+    private long groupCommitMillis = 2;
+    // how often a snapshot is written and the journal before it dropped; 0 = never
+    private long checkpointMillis = 60 * 1000L;
+    private HISTORY_STORE historyStore = HISTORY_STORE.HEAP;
+    // how often every balance is checked against its history; 0 = never
+    private long reconcileMillis = 60 * 60 * 1000L;
+    // "username:password" lines of tellers to provision besides teller1
+    private String tellersFile = null;
+    // how often the request metrics are printed; 0 = never
+    private long metricsMillis = 5 * 60 * 1000L;
+    // whether the request metrics are registered as MBeans
+    private boolean jmx = true;
+    // the least severe ServerLog lines written
+    private ServerLog.LEVEL logLevel = ServerLog.LEVEL.INFO;
+    // most messages waiting in each direction on one connection
+    private int queueCapacity = 1024;
+    private OVERFLOW overflow = OVERFLOW.DISCONNECT;
+    // BLOCK: how long a client's requests are held back before it is disconnected
+    private long overflowBlockMillis = 1000;
+
+    public static ServerConfig fromArgs(String[] args) {
+        ServerConfig config = new ServerConfig();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("Unrecognized option: " + arg);
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1).trim();
+            config.set(name, value);
+        }
+        return config;
+    }
+
+    private void set(String name, String value) {
+        switch (name) {
+            case "port":
+                port = Integer.parseInt(value);
+                break;
+            case "transport":
+                transport = TRANSPORT.valueOf(value.toUpperCase());
+                break;
+            case "executor":
+                executor = EXECUTOR.valueOf(value.toUpperCase());
+                break;
+            case "io-threads":
+                ioThreads = Integer.parseInt(value);
+                if (ioThreads < 1) {
+                    throw new IllegalArgumentException("io-threads must be at least 1");
+                }
+                break;
+            case "account-threads":
+                accountThreads = Integer.parseInt(value);
+                if (accountThreads < 1) {
+                    throw new IllegalArgumentException("account-threads must be at least 1");
+                }
+                break;
+            case "lease-ttl-seconds":
+                leaseTtlMillis = Long.parseLong(value) * 1000L;
+                break;
+            case "session-timeout-seconds":
+                sessionTimeoutMillis = Long.parseLong(value) * 1000L;
+                break;
+            case "reaper-tick-ms":
+                reaperTickMillis = Long.parseLong(value);
+                if (reaperTickMillis < 1) {
+                    throw new IllegalArgumentException("reaper-tick-ms must be at least 1");
+                }
+                break;
+            case "storage":
+                storage = STORAGE.valueOf(value.toUpperCase());
+                break;
+            case "journal": // the older spelling: on = disk, off = memory
+                if (!value.equals("on") && !value.equals("off")) {
+                    throw new IllegalArgumentException("journal must be on or off");
+                }
+                storage = value.equals("on") ? STORAGE.DISK : STORAGE.MEMORY;
+                break;
+            case "data-dir":
+                dataDir = value;
+                break;
+            case "fsync":
+                fsync = Journal.FSYNC.valueOf(value.toUpperCase());
+                break;
+            case "group-commit-ms":
+                groupCommitMillis = Long.parseLong(value);
+                if (groupCommitMillis < 0) {
+                    throw new IllegalArgumentException("group-commit-ms must not be negative");
+                }
+                break;
+            case "checkpoint-seconds":
+                checkpointMillis = Long.parseLong(value) * 1000L;
+                break;
+            case "history-store":
+                historyStore = HISTORY_STORE.valueOf(value.toUpperCase());
+                break;
+            case "reconcile-seconds":
+                reconcileMillis = Long.parseLong(value) * 1000L;
+                break;
+            case "tellers-file":
+                tellersFile = value;
+                break;
+            case "metrics-seconds":
+                metricsMillis = Long.parseLong(value) * 1000L;
+                break;
+            case "jmx":
+                if (!value.equals("on") && !value.equals("off")) {
+                    throw new IllegalArgumentException("jmx must be on or off");
+                }
+                jmx = value.equals("on");
+                break;
+            case "log-level":
+                logLevel = ServerLog.LEVEL.valueOf(value.toUpperCase());
+                break;
+            case "queue-capacity":
+                queueCapacity = Integer.parseInt(value);
+                if (queueCapacity < 1) {
+                    throw new IllegalArgumentException("queue-capacity must be at least 1");
+                }
+                break;
+            case "overflow":
+                overflow = OVERFLOW.valueOf(value.toUpperCase());
+                break;
+            case "overflow-block-ms":
+                overflowBlockMillis = Long.parseLong(value);
+                if (overflowBlockMillis < 1) {
+                    throw new IllegalArgumentException("overflow-block-ms must be at least 1");
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unrecognized option: --" + name);
+        }
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public TRANSPORT getTransport() {
+        return transport;
+    }
+
+    public EXECUTOR getExecutor() {
+        return executor;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    public int getAccountThreads() {
+        return accountThreads;
+    }
+
+    public long getLeaseTtlMillis() {
+        return leaseTtlMillis;
+    }
+
+    public long getSessionTimeoutMillis() {
+        return sessionTimeoutMillis;
+    }
+
+    public long getReaperTickMillis() {
+        return reaperTickMillis;
+    }
+
+    public STORAGE getStorage() {
+        return storage;
+    }
+
+    public String getDataDir() {
+        return dataDir;
+    }
+
+    public Journal.FSYNC getFsync() {
+        return fsync;
+    }
+
+    public long getGroupCommitMillis() {
+        return groupCommitMillis;
+    }
+
+    public long getCheckpointMillis() {
+        return checkpointMillis;
+    }
+
+    public HISTORY_STORE getHistoryStore() {
+        return historyStore;
+    }
+
+    public long getReconcileMillis() {
+        return reconcileMillis;
+    }
+
+    // null when not given
+    public String getTellersFile() {
+        return tellersFile;
+    }
+
+    public long getMetricsMillis() {
+        return metricsMillis;
+    }
+
+    public boolean isJmxEnabled() {
+        return jmx;
+    }
+
+    public ServerLog.LEVEL getLogLevel() {
+        return logLevel;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public OVERFLOW getOverflow() {
+        return overflow;
+    }
+
+    public long getOverflowBlockMillis() {
+        return overflowBlockMillis;
+    }
+}
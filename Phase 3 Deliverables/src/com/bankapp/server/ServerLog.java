@@ -0,0 +1,200 @@
+package com.bankapp.server;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// The server's log for request and connection paths. Logging a line only
+// claims a slot in a fixed ring and fills it in: no lock, no console I/O on
+// the calling thread. A background thread turns what is in the ring into
+// lines and writes them to System.out in one go, e.g.
+//
+//   [Server] 14:03:07.215 WARN  Login failed role=CLIENT username=alice reason=bad password
+//
+// Each line is an event plus key=value fields, given as alternating names
+// and values. Values are formatted later, on the server-log writer thread,
+// so pass immutable ones (strings, numbers, enums). A Throwable is the
+// exception: it is turned into its stack trace as it is logged, and as that
+// runs over several lines it goes last. When the ring is full (the console cannot keep up)
+// lines are dropped rather than waited for, and how many is logged once
+// there is room.
+public final class ServerLog {
+    public enum LEVEL {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private static final int CAPACITY = 1 << 13;
+    private static final int MASK = CAPACITY - 1;
+    // how long the writer sleeps when the ring is empty
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
+    private static volatile LEVEL level = LEVEL.INFO;
+
+    // Bounded multi-producer ring (after Vyukov): slot i holds the line
+    // numbered sequences[i] - 1 once it is published, and is free for line
+    // sequences[i].
+    private static final Entry[] slots = new Entry[CAPACITY];
+    private static final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    // next line number to claim
+    private static final AtomicLong tail = new AtomicLong();
+    // next line number to write; only the writer advances it
+    private static volatile long head;
+    private static final AtomicLong dropped = new AtomicLong();
+
+    private static final Thread writer;
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            sequences.set(i, i);
+        }
+        writer = new Thread(ServerLog::writeLoop, "server-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private ServerLog() {
+    }
+
+    private static final class Entry {
+        final LEVEL level;
+        final long millis;
+        final String event;
+        final Object[] fields;
+
+        Entry(LEVEL level, String event, Object[] fields) {
+            this.level = level;
+            this.millis = System.currentTimeMillis();
+            this.event = event;
+            this.fields = fields;
+        }
+    }
+
+    static void setLevel(LEVEL level) {
+        ServerLog.level = level;
+    }
+
+    static boolean isEnabled(LEVEL at) {
+        return at.compareTo(level) >= 0;
+    }
+
+    static void debug(String event, Object... fields) {
+        log(LEVEL.DEBUG, event, fields);
+    }
+
+    static void info(String event, Object... fields) {
+        log(LEVEL.INFO, event, fields);
+    }
+
+    static void warn(String event, Object... fields) {
+        log(LEVEL.WARN, event, fields);
+    }
+
+    static void error(String event, Object... fields) {
+        log(LEVEL.ERROR, event, fields);
+    }
+
+    static void log(LEVEL at, String event, Object... fields) {
+        if (isEnabled(at) && !offer(new Entry(at, event, withStackTraces(fields)))) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    // Throwable values become their stack traces here, on the caller's
+    // thread; formatted by the writer they would only show toString().
+    private static Object[] withStackTraces(Object[] fields) {
+        for (int i = 1; i < fields.length; i += 2) {
+            if (fields[i] instanceof Throwable) {
+                StringWriter trace = new StringWriter();
+                ((Throwable) fields[i]).printStackTrace(new PrintWriter(trace));
+                fields[i] = trace.toString().stripTrailing();
+            }
+        }
+        return fields;
+    }
+
+    private static boolean offer(Entry entry) {
+        long pos = tail.get();
+        while (true) {
+            int slot = (int) (pos & MASK);
+            long free = sequences.get(slot) - pos;
+            if (free == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots[slot] = entry;
+                    sequences.set(slot, pos + 1); // publish
+                    return true;
+                }
+                pos = tail.get();
+            } else if (free < 0) {
+                return false; // the writer hasn't freed this slot yet: full
+            } else {
+                pos = tail.get(); // claimed by another thread meanwhile
+            }
+        }
+    }
+
+    // Waits (up to a second) until every line logged before the call has
+    // been written, e.g. before the server exits.
+    static void flush() {
+        long target = tail.get();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (head < target && System.nanoTime() < deadline) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private static void writeLoop() {
+        StringBuilder out = new StringBuilder(1 << 12);
+        long reportedDropped = 0;
+        while (true) {
+            long next = head;
+            int slot;
+            while (sequences.get(slot = (int) (next & MASK)) == next + 1) {
+                format(out, slots[slot]);
+                slots[slot] = null;
+                sequences.set(slot, next + CAPACITY); // free for the next lap
+                next++;
+            }
+            long lost = dropped.get();
+            if (lost != reportedDropped) {
+                format(out, new Entry(LEVEL.WARN, "Log lines dropped, the console is behind",
+                        new Object[] { "count", lost - reportedDropped }));
+                reportedDropped = lost;
+            }
+            if (out.length() > 0) {
+                PrintStream console = System.out;
+                console.print(out);
+                console.flush();
+                out.setLength(0);
+            }
+            head = next;
+            if (sequences.get((int) (next & MASK)) != next + 1) {
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+    }
+
+    private static void format(StringBuilder out, Entry entry) {
+        out.append("[Server] ");
+        TIME.formatTo(LocalTime.ofInstant(Instant.ofEpochMilli(entry.millis), ZoneId.systemDefault()), out);
+        out.append(' ').append(entry.level);
+        if (entry.level.name().length() < 5) {
+            out.append(' ');
+        }
+        out.append(' ').append(entry.event);
+        Object[] fields = entry.fields;
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            out.append(' ').append(fields[i]).append('=').append(fields[i + 1]);
+        }
+        out.append(System.lineSeparator());
+    }
+}
@@ -0,0 +1,232 @@
+package com.bankapp.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.bankapp.common.FailureMessage;
+import com.bankapp.common.Message;
+
+// Counters and latency histograms per message type, and the connections'
+// queues, kept by CentralServer as it handles requests. Shown over JMX (see
+// RequestMetricsMXBean and ConnectionsMXBean) and, every --metrics-seconds,
+// as a table on the console.
+final class ServerMetrics {
+    private static final String DOMAIN = "com.bankapp";
+
+    private final Request[] requests = new Request[Message.TYPE.values().length];
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
+    // the open connections' metrics
+    private final Supplier<List<ConnectionMetrics>> connections;
+
+    private final List<ObjectName> registered = new ArrayList<>();
+    private ScheduledExecutorService dumper;
+    // counts as of the last dump, for its rates
+    private final long[] dumpedCounts = new long[requests.length];
+    private long dumpedAt = System.nanoTime();
+
+    ServerMetrics(Supplier<List<ConnectionMetrics>> connections) {
+        this.connections = connections;
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = new Request();
+        }
+    }
+
+    Request of(Message.TYPE type) {
+        return requests[type.ordinal()];
+    }
+
+    ConnectionMetrics newConnection(String peer, ClientConnection connection) {
+        return new ConnectionMetrics(peer, connection, sendLatency);
+    }
+
+    // One message type. handleMessage records into it as requests are
+    // handled; ReplyConnection when their reply goes out.
+    static final class Request implements RequestMetricsMXBean {
+        final LatencyHistogram reply = new LatencyHistogram();
+        final LatencyHistogram handle = new LatencyHistogram();
+        final LatencyHistogram clientDispatch = new LatencyHistogram();
+        final LatencyHistogram tellerDispatch = new LatencyHistogram();
+        private final LongAdder failures = new LongAdder();
+
+        // the first reply to a request that arrived at startNanos
+        void replied(Message reply, long startNanos) {
+            this.reply.recordSince(startNanos);
+            if (reply instanceof FailureMessage) {
+                failures.increment();
+            }
+        }
+
+        @Override
+        public long getCount() {
+            return handle.getCount();
+        }
+
+        @Override
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        @Override
+        public LatencyHistogram.Summary getReply() {
+            return reply.summary();
+        }
+
+        @Override
+        public LatencyHistogram.Summary getHandleMessage() {
+            return handle.summary();
+        }
+
+        @Override
+        public LatencyHistogram.Summary getClientDispatch() {
+            return clientDispatch.summary();
+        }
+
+        @Override
+        public LatencyHistogram.Summary getTellerDispatch() {
+            return tellerDispatch.summary();
+        }
+    }
+
+    private final class Connections implements ConnectionsMXBean {
+        @Override
+        public int getOpenConnections() {
+            return connections.get().size();
+        }
+
+        @Override
+        public int getQueuedMessages() {
+            int queued = 0;
+            for (ConnectionMetrics c : connections.get()) {
+                queued += c.getQueueDepth();
+            }
+            return queued;
+        }
+
+        @Override
+        public long getDroppedMessages() {
+            long dropped = 0;
+            for (ConnectionMetrics c : connections.get()) {
+                dropped += c.getDropped();
+            }
+            return dropped;
+        }
+
+        @Override
+        public LatencyHistogram.Summary getSend() {
+            return sendLatency.summary();
+        }
+
+        @Override
+        public List<ConnectionMetrics> getConnections() {
+            return connections.get();
+        }
+    }
+
+    // Registers the MBeans with the platform MBean server. Ones left by an
+    // earlier server in this JVM (the benchmarks start several) are replaced.
+    synchronized void registerMBeans() {
+        MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (Message.TYPE type : Message.TYPE.values()) {
+                register(mbeans, new ObjectName(DOMAIN + ":type=Requests,name=" + type), of(type));
+            }
+            register(mbeans, new ObjectName(DOMAIN + ":type=Connections"), new Connections());
+        } catch (JMException e) {
+            System.out.println("[Server] Could not register metrics with JMX: " + e.getMessage());
+        }
+    }
+
+    private void register(MBeanServer mbeans, ObjectName name, Object mbean) throws JMException {
+        if (mbeans.isRegistered(name)) {
+            mbeans.unregisterMBean(name);
+        }
+        mbeans.registerMBean(mbean, name);
+        registered.add(name);
+    }
+
+    // prints report() every intervalMillis on a background thread; 0 disables
+    synchronized void startDumper(long intervalMillis) {
+        if (intervalMillis <= 0 || dumper != null) {
+            return;
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread t = new Thread(task, "metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleWithFixedDelay(() -> {
+            try {
+                System.out.print(report());
+            } catch (RuntimeException e) {
+                System.out.println("[Server] Metrics report failed: " + e.getMessage());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void close() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+        MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                mbeans.unregisterMBean(name);
+            } catch (JMException ignored) {
+                // already replaced by a later server's
+            }
+        }
+        registered.clear();
+    }
+
+    // Every message type seen so far: totals and latencies since the start,
+    // the rate since the previous report, then the connections' queues.
+    synchronized String report() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - dumpedAt) / 1e9);
+        dumpedAt = now;
+
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("[Server] Metrics (latencies in us since start, rates over the last %.0f s)%n",
+                seconds));
+        out.append(String.format("  %-18s %10s %9s %8s %9s %9s %9s %9s %11s%n", "request", "count", "per s",
+                "failed", "reply p50", "p99", "p99.9", "max", "handle p99"));
+        for (Message.TYPE type : Message.TYPE.values()) {
+            Request r = of(type);
+            long count = r.getCount();
+            if (count == 0) {
+                continue;
+            }
+            double rate = (count - dumpedCounts[type.ordinal()]) / seconds;
+            dumpedCounts[type.ordinal()] = count;
+            LatencyHistogram.Summary reply = r.getReply();
+            out.append(String.format("  %-18s %10d %9.1f %8d %9.0f %9.0f %9.0f %9.0f %11.0f%n", type, count, rate,
+                    r.getFailures(), reply.getP50Micros(), reply.getP99Micros(), reply.getP999Micros(),
+                    reply.getMaxMicros(), r.getHandleMessage().getP99Micros()));
+        }
+        List<ConnectionMetrics> open = connections.get();
+        int queued = 0;
+        int deepest = 0;
+        long dropped = 0;
+        for (ConnectionMetrics c : open) {
+            queued += c.getQueueDepth();
+            deepest = Math.max(deepest, c.getQueueDepth());
+            dropped += c.getDropped();
+        }
+        LatencyHistogram.Summary send = sendLatency.summary();
+        out.append(String.format("  %d connection(s), %d message(s) queued (at most %d on one), %d dropped; "
+                + "send p50 %.0f us, p99 %.0f us, max %.0f us%n", open.size(), queued, deepest, dropped,
+                send.getP50Micros(), send.getP99Micros(), send.getMaxMicros()));
+        return out.toString();
+    }
+}
@@ -0,0 +1,142 @@
+package com.bankapp.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import com.bankapp.common.SessionInfo;
+
+// Ends sessions that have been idle for longer than the session timeout,
+// using a hashed timing wheel: a ring of slots, one per tick, each holding
+// the sessions whose deadline falls in that tick. Every tick the reaper
+// thread empties the next slot and looks only at what was in it, so a tick
+// costs O(1) per session due, however many sessions are open.
+//
+// Requests never touch the wheel; they only stamp the session's lastActive.
+// When a session's slot comes round it is expired if it has been idle for
+// the whole timeout, and otherwise put back in the slot of its new deadline.
+// Slots keep no round counts: a deadline more than one turn of the wheel
+// away is simply seen early and put back. Sessions that logged out are
+// dropped when their slot comes round.
+final class SessionReaper {
+    // the most slots a wheel gets, however long the timeout
+    private static final int MAX_SLOTS = 1 << 12;
+
+    private static final class Entry {
+        final SessionInfo session;
+        final ClientConnection connection;
+
+        Entry(SessionInfo session, ClientConnection connection) {
+            this.session = session;
+            this.connection = connection;
+        }
+    }
+
+    private final SessionTable sessions;
+    private final long timeoutMillis;
+    private final long tickMillis;
+    private final BiConsumer<SessionInfo, ClientConnection> onExpiry;
+    private final List<Queue<Entry>> wheel;
+    private final int mask;
+    private final ScheduledExecutorService timer;
+    // the last tick (time / tickMillis) whose slot has been emptied
+    private volatile long currentTick;
+
+    // timeoutMillis <= 0 disables the reaper: watch() does nothing
+    SessionReaper(SessionTable sessions, long timeoutMillis, long tickMillis,
+            BiConsumer<SessionInfo, ClientConnection> onExpiry) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("tickMillis must be at least 1");
+        }
+        this.sessions = sessions;
+        this.timeoutMillis = timeoutMillis;
+        this.tickMillis = tickMillis;
+        this.onExpiry = onExpiry;
+        // a power of two, so a tick's slot is a mask away
+        long ticksPerTimeout = Math.max(1, timeoutMillis / tickMillis + 1);
+        int slots = Integer.highestOneBit((int) Math.min(MAX_SLOTS, ticksPerTimeout) * 2 - 1);
+        this.wheel = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) {
+            wheel.add(new ConcurrentLinkedQueue<>());
+        }
+        this.mask = slots - 1;
+        this.currentTick = System.currentTimeMillis() / tickMillis;
+
+        if (timeoutMillis <= 0) {
+            this.timer = null;
+            return;
+        }
+        this.timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread t = new Thread(task, "session-reaper");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleAtFixedRate(() -> {
+            try {
+                tick();
+            } catch (RuntimeException e) {
+                // an escaping exception would cancel every later tick
+                ServerLog.error("Session reaper failed", "error", e);
+            }
+        }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // starts timing a session that has just logged in over the connection
+    void watch(SessionInfo session, ClientConnection connection) {
+        if (timer != null) {
+            schedule(new Entry(session, connection), session.getLastActive() + timeoutMillis);
+        }
+    }
+
+    // files the entry under the first tick at or after its deadline, and
+    // never under one that has already been emptied
+    private void schedule(Entry entry, long deadline) {
+        long tick = Math.max((deadline + tickMillis - 1) / tickMillis, currentTick + 1);
+        wheel.get((int) (tick & mask)).add(entry);
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+        long target = now / tickMillis;
+        // a late run catches up, but one turn of the wheel visits every slot
+        long from = Math.max(currentTick + 1, target - mask);
+        for (long t = from; t <= target; t++) {
+            expire(wheel.get((int) (t & mask)), now);
+        }
+        if (target > currentTick) {
+            currentTick = target;
+        }
+    }
+
+    private void expire(Queue<Entry> slot, long now) {
+        List<Entry> notDue = new ArrayList<>();
+        Entry entry;
+        while ((entry = slot.poll()) != null) {
+            SessionInfo session = entry.session;
+            if (sessions.get(session.getSessionID()) != session) {
+                continue; // logged out or closed since
+            }
+            if (session.getLastActive() + timeoutMillis <= now) {
+                onExpiry.accept(session, entry.connection);
+            } else {
+                notDue.add(entry);
+            }
+        }
+        // put back once the slot is empty, or one landing in it again would
+        // be polled again
+        for (Entry e : notDue) {
+            schedule(e, e.session.getLastActive() + timeoutMillis);
+        }
+    }
+
+    void close() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.bankapp.server;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.bankapp.common.SessionInfo;
+import com.bankapp.common.SessionInfo.ROLE;
+
+// The live sessions, by session id and by (username, role). A user may have
+// one session per role, so the second index is what login checks for a
+// duplicate: one putIfAbsent instead of a scan of every session, which keeps
+// each login's cost flat however many sessions are open.
+public class SessionTable {
+    // session id -> session
+    private final ConcurrentMap<String, SessionInfo> byId = new ConcurrentHashMap<>();
+    // role -> username -> session; the EnumMap itself is never modified
+    private final Map<ROLE, ConcurrentMap<String, SessionInfo>> byUser = new EnumMap<>(ROLE.class);
+
+    public SessionTable() {
+        for (ROLE role : ROLE.values()) {
+            byUser.put(role, new ConcurrentHashMap<>());
+        }
+    }
+
+    // Registers a new session. False, and nothing changes, if the user already
+    // has a session in that role.
+    public boolean add(SessionInfo session) {
+        if (byUser.get(session.getRole()).putIfAbsent(session.getUsername(), session) != null) {
+            return false;
+        }
+        byId.put(session.getSessionID(), session);
+        return true;
+    }
+
+    // the session issued with this id, or null
+    public SessionInfo get(String sessionID) {
+        return sessionID == null ? null : byId.get(sessionID);
+    }
+
+    // the user's session in the given role, or null
+    public SessionInfo find(String username, ROLE role) {
+        return username == null || role == null ? null : byUser.get(role).get(username);
+    }
+
+    // Ends the session with this id. Messages carry copies of the session, so
+    // the username index is cleared using the instance that was registered.
+    public SessionInfo remove(String sessionID) {
+        SessionInfo removed = sessionID == null ? null : byId.remove(sessionID);
+        if (removed != null) {
+            byUser.get(removed.getRole()).remove(removed.getUsername(), removed);
+        }
+        return removed;
+    }
+
+    public void clear() {
+        byId.clear();
+        for (ConcurrentMap<String, SessionInfo> users : byUser.values()) {
+            users.clear();
+        }
+    }
+}
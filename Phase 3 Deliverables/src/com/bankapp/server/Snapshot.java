@@ -0,0 +1,310 @@
+package com.bankapp.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import com.bankapp.common.Account;
+import com.bankapp.common.AccountMessage;
+import com.bankapp.common.CheckingAccount;
+import com.bankapp.common.ClientProfile;
+import com.bankapp.common.CreditLine;
+import com.bankapp.common.Money;
+import com.bankapp.common.SavingAccount;
+import com.bankapp.common.Transaction;
+
+// A point-in-time image of the client and account databases, tagged with the
+// last journal segment it covers.
+//
+// capture() runs while changes are held off, and only copies what is cheap:
+// profile fields and, per account, its metadata, balance and how many
+// transactions it has. Histories only ever grow, so write() can append the
+// transactions each account made since the last checkpoint to the history
+// file (see SnapshotHistory) afterwards, with changes flowing again. The
+// snapshot itself holds no transactions, so its size follows the number of
+// accounts, not of transactions.
+//
+// file: magic, version, covered segment, nextAccountId, history file
+// generation and length, profiles, accounts, then the CRC32 of everything
+// before it. Versions 1 (decimals) and 2 (cents) kept each account's history
+// inline, and are still read.
+final class Snapshot {
+    private static final int MAGIC = 0x424B534E; // "BKSN"
+    private static final int VERSION = 3;
+    private static final long NO_LIMIT = Long.MIN_VALUE;
+
+    private static final class ProfileImage {
+        String username, password, phone, address, legalName;
+        List<String> accountIDs;
+    }
+
+    private static final class AccountImage {
+        Account account;
+        String id;
+        AccountMessage.ACCOUNT_TYPE type;
+        Money balance;
+        int transactionCount;
+        int withdrawCount, withdrawLimit;
+        LocalDate lastReset;
+        Money creditLimit;
+    }
+
+    private final long segment;
+    private final int nextAccountId;
+    private final List<ProfileImage> profiles;
+    private final List<AccountImage> accounts;
+
+    private Snapshot(long segment, int nextAccountId, List<ProfileImage> profiles, List<AccountImage> accounts) {
+        this.segment = segment;
+        this.nextAccountId = nextAccountId;
+        this.profiles = profiles;
+        this.accounts = accounts;
+    }
+
+    // must be called with every change held off (DiskStorage.checkpoint)
+    static Snapshot capture(long segment, int nextAccountId, Map<String, ClientProfile> clientDatabase,
+            Map<String, Account> accountDatabase) {
+        List<ProfileImage> profiles = new ArrayList<>(clientDatabase.size());
+        for (ClientProfile p : clientDatabase.values()) {
+            ProfileImage image = new ProfileImage();
+            image.username = p.getUsername();
+            image.password = p.getPassword();
+            image.phone = p.getPhone();
+            image.address = p.getAddress();
+            image.legalName = p.getLegalName();
+            image.accountIDs = new ArrayList<>(p.getAccountIDs());
+            profiles.add(image);
+        }
+        List<AccountImage> accounts = new ArrayList<>(accountDatabase.size());
+        for (Account a : accountDatabase.values()) {
+            AccountImage image = new AccountImage();
+            image.account = a;
+            image.id = a.getID();
+            image.balance = a.getBalanceMoney();
+            image.transactionCount = a.getTransactionCount();
+            if (a instanceof SavingAccount saving) {
+                image.type = AccountMessage.ACCOUNT_TYPE.SAVING;
+                image.withdrawCount = saving.getWithdrawCount();
+                image.withdrawLimit = saving.getWithdrawLimit();
+                image.lastReset = saving.getReset();
+            } else if (a instanceof CreditLine credit) {
+                image.type = AccountMessage.ACCOUNT_TYPE.CREDIT_LINE;
+                image.creditLimit = credit.getCreditLimitMoney();
+            } else {
+                image.type = AccountMessage.ACCOUNT_TYPE.CHECKING;
+            }
+            accounts.add(image);
+        }
+        return new Snapshot(segment, nextAccountId, profiles, accounts);
+    }
+
+    long getSegment() {
+        return segment;
+    }
+
+    // Appends the new transactions to the history file, then writes the
+    // snapshot to a temporary file, syncs it and renames it over the old one,
+    // so a crash leaves either the old snapshot or the new one, each with the
+    // history it covers.
+    void write(Path file, SnapshotHistory history) throws IOException {
+        try {
+            history.begin();
+            for (AccountImage a : accounts) {
+                history.add(a.id, a.account, a.transactionCount);
+            }
+            history.finish();
+            write(file, history.nextGeneration(), history.nextLength());
+            history.commit();
+        } finally {
+            history.close();
+        }
+    }
+
+    private void write(Path file, int historyGeneration, long historyLength) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileOutputStream fileOut = new FileOutputStream(tmp.toFile())) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new CheckedOutputStream(fileOut, crc), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(segment);
+            out.writeInt(nextAccountId);
+            out.writeInt(historyGeneration);
+            out.writeLong(historyLength);
+            out.writeInt(profiles.size());
+            for (ProfileImage p : profiles) {
+                Journal.writeString(out, p.username);
+                Journal.writeString(out, p.password);
+                Journal.writeString(out, p.phone);
+                Journal.writeString(out, p.address);
+                Journal.writeString(out, p.legalName);
+                out.writeInt(p.accountIDs.size());
+                for (String id : p.accountIDs) {
+                    Journal.writeString(out, id);
+                }
+            }
+            out.writeInt(accounts.size());
+            for (AccountImage a : accounts) {
+                Journal.writeString(out, a.id);
+                out.writeByte(a.type.ordinal());
+                out.writeLong(a.balance.getCents());
+                out.writeInt(a.withdrawCount);
+                out.writeInt(a.withdrawLimit);
+                out.writeLong(a.lastReset == null ? Long.MIN_VALUE : a.lastReset.toEpochDay());
+                out.writeLong(a.creditLimit == null ? NO_LIMIT : a.creditLimit.getCents());
+                out.writeInt(a.transactionCount);
+            }
+            out.flush();
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // make the rename itself durable before the journal it replaces goes
+        try (FileChannel dir = FileChannel.open(file.getParent(), StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // not every platform lets a directory be opened; the rename is still atomic
+        }
+    }
+
+    // Loads a snapshot, and the histories it covers, into the (empty)
+    // databases. Returns the last journal segment it covers, or 0 if there is
+    // no snapshot.
+    static long load(Path file, SnapshotHistory history, MemoryStorage db) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        CRC32 crc = new CRC32();
+        try (InputStream fileIn = Files.newInputStream(file)) {
+            DataInputStream in = new DataInputStream(
+                    new CheckedInputStream(new BufferedInputStream(fileIn, 1 << 16), crc));
+            int version = in.readInt() == MAGIC ? in.readInt() : -1;
+            if (version < 1 || version > VERSION) {
+                throw new IOException(file + " is not a snapshot this server can read");
+            }
+            long segment = in.readLong();
+            db.skipAccountIdsBelow(in.readInt());
+            int historyGeneration = version >= 3 ? in.readInt() : 0;
+            long historyLength = version >= 3 ? in.readLong() : 0;
+
+            Map<String, ClientProfile> clientDatabase = db.profiles();
+            int profileCount = in.readInt();
+            for (int i = 0; i < profileCount; i++) {
+                ClientProfile p = new ClientProfile(Journal.readString(in), Journal.readString(in),
+                        Journal.readString(in), Journal.readString(in), Journal.readString(in));
+                int ids = in.readInt();
+                for (int j = 0; j < ids; j++) {
+                    p.addAccountID(Journal.readString(in));
+                }
+                clientDatabase.put(p.getUsername(), p);
+            }
+
+            int accountCount = in.readInt();
+            List<AccountImage> accounts = new ArrayList<>(accountCount);
+            Map<String, List<Transaction>> histories = new HashMap<>();
+            Map<String, Integer> counts = new HashMap<>();
+            for (int i = 0; i < accountCount; i++) {
+                AccountImage a = new AccountImage();
+                a.id = Journal.readString(in);
+                a.type = AccountMessage.ACCOUNT_TYPE.values()[in.readUnsignedByte()];
+                a.balance = Money.of(readMoney(in, version));
+                a.withdrawCount = in.readInt();
+                a.withdrawLimit = in.readInt();
+                long lastReset = in.readLong();
+                a.lastReset = lastReset == Long.MIN_VALUE ? LocalDate.now() : LocalDate.ofEpochDay(lastReset);
+                BigDecimal creditLimit = readMoney(in, version);
+                a.creditLimit = creditLimit == null ? null : Money.of(creditLimit);
+                a.transactionCount = in.readInt();
+                List<Transaction> transactions = Account.newHistory();
+                if (version < 3) {
+                    // running balances are not stored; the stored balance is
+                    // kept as is, so a divergence still shows up in reconciliation
+                    Money running = Money.ZERO;
+                    for (int j = 0; j < a.transactionCount; j++) {
+                        Date created = new Date(in.readLong());
+                        Money amount = version == 1 ? Money.of(readDecimal(in)) : Money.ofCents(in.readLong());
+                        running = running.plus(amount);
+                        transactions.add(new Transaction(created, amount,
+                                Transaction.OPERATION.values()[in.readUnsignedByte()], running));
+                    }
+                } else {
+                    counts.put(a.id, a.transactionCount);
+                }
+                histories.put(a.id, transactions);
+                accounts.add(a);
+            }
+
+            int expected = (int) crc.getValue();
+            if (in.readInt() != expected) {
+                throw new IOException(file + " fails its checksum");
+            }
+            if (version >= 3) {
+                history.load(historyGeneration, historyLength, histories, counts);
+            }
+
+            Map<String, Account> accountDatabase = db.accounts();
+            for (AccountImage a : accounts) {
+                accountDatabase.put(a.id, restore(a, histories.get(a.id)));
+            }
+            System.out.println("[Server] Loaded snapshot of " + profileCount + " profiles and " + accountCount
+                    + " accounts covering journal segment " + segment + ".");
+            return segment;
+        }
+    }
+
+    private static Account restore(AccountImage a, List<Transaction> history) {
+        BigDecimal balance = a.balance.toBigDecimal();
+        switch (a.type) {
+            case SAVING:
+                SavingAccount saving = new SavingAccount(a.id, balance, history, a.withdrawCount, a.withdrawLimit);
+                saving.setReset(a.lastReset);
+                return saving;
+            case CREDIT_LINE:
+                return new CreditLine(a.id, balance, history,
+                        a.creditLimit == null ? null : a.creditLimit.toBigDecimal());
+            default:
+                return new CheckingAccount(a.id, balance, history);
+        }
+    }
+
+    // a balance or credit limit; null for a missing limit
+    private static BigDecimal readMoney(DataInputStream in, int version) throws IOException {
+        if (version == 1) {
+            return readDecimal(in);
+        }
+        long cents = in.readLong();
+        return cents == NO_LIMIT ? null : Money.ofCents(cents).toBigDecimal();
+    }
+
+    // version 1: [scale][unscaled long], or a string behind a negative tag
+    private static BigDecimal readDecimal(DataInputStream in) throws IOException {
+        int scale = in.readByte();
+        if (scale >= 0) {
+            return new BigDecimal(BigInteger.valueOf(in.readLong()), scale);
+        }
+        String s = Journal.readString(in);
+        return s == null ? null : new BigDecimal(s);
+    }
+}
@@ -0,0 +1,194 @@
+package com.bankapp.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.bankapp.common.Account;
+import com.bankapp.common.Money;
+import com.bankapp.common.Transaction;
+
+// The account histories behind the snapshots, kept apart from them in an
+// append-only file, so a checkpoint writes only the transactions made since
+// the one before instead of every account's whole history.
+//
+// A snapshot names the file (by generation) and how many bytes of it it
+// covers; anything past that was appended by a checkpoint that never got its
+// snapshot in place, and is cut off. Deleted accounts leave their records
+// behind: once those outnumber the live ones, a checkpoint copies the live
+// histories into the next generation, and the old file goes once the
+// snapshot naming the new one is in place.
+//
+// record: account id, created millis, amount in cents, operation
+final class SnapshotHistory {
+    // stale records tolerated beyond the live count before compacting
+    private static final long COMPACT_SLACK = 1 << 16;
+
+    private final Path dir;
+
+    // what the latest snapshot covers
+    private int generation;
+    private long length;
+    private long records;
+    // account id -> how many of its transactions are in the file
+    private Map<String, Integer> written = new HashMap<>();
+    private long liveRecords;
+
+    // the checkpoint in progress
+    private FileChannel channel;
+    private DataOutputStream out;
+    private int nextGeneration;
+    private long nextRecords;
+    private Map<String, Integer> nextWritten;
+
+    SnapshotHistory(Path dir) {
+        this.dir = dir;
+    }
+
+    // Fills in histories from the first length bytes of the generation's
+    // file, and cuts off the rest. counts: account id -> how many
+    // transactions the snapshot has for the account.
+    void load(int generation, long length, Map<String, List<Transaction>> histories,
+            Map<String, Integer> counts) throws IOException {
+        Path file = file(generation);
+        Map<String, Money> running = new HashMap<>();
+        long read = 0;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (in.size() < length) {
+                throw new IOException(file + " is shorter than its snapshot says");
+            }
+            in.truncate(length);
+            DataInputStream data = new DataInputStream(new BufferedInputStream(Channels.newInputStream(in), 1 << 16));
+            while (true) {
+                String id;
+                try {
+                    id = Journal.readString(data);
+                } catch (EOFException end) {
+                    break;
+                }
+                Date created = new Date(data.readLong());
+                Money amount = Money.ofCents(data.readLong());
+                Transaction.OPERATION op = Transaction.OPERATION.values()[data.readUnsignedByte()];
+                read++;
+                List<Transaction> history = histories.get(id);
+                Integer count = counts.get(id);
+                if (history == null || count == null || history.size() >= count) {
+                    continue; // a deleted account's
+                }
+                Money balance = running.getOrDefault(id, Money.ZERO).plus(amount);
+                running.put(id, balance);
+                history.add(new Transaction(created, amount, op, balance));
+            }
+        } catch (IOException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            if (histories.get(count.getKey()).size() != count.getValue()) {
+                throw new IOException(file + " is missing transactions of " + count.getKey());
+            }
+        }
+        this.generation = generation;
+        this.length = length;
+        this.records = read;
+        this.written = new HashMap<>(counts);
+        this.liveRecords = counts.values().stream().mapToLong(Integer::longValue).sum();
+        deleteOtherGenerations();
+    }
+
+    // Starts a checkpoint's append, after what the latest snapshot covers, or
+    // into a new generation when that is mostly stale.
+    void begin() throws IOException {
+        boolean compact = records - liveRecords > liveRecords + COMPACT_SLACK;
+        nextGeneration = compact ? generation + 1 : generation;
+        nextRecords = compact ? 0 : records;
+        nextWritten = new HashMap<>();
+        channel = FileChannel.open(file(nextGeneration), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(compact ? 0 : length);
+        channel.position(compact ? 0 : length);
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+    }
+
+    // appends the account's transactions before count that are not in the file yet
+    void add(String id, Account account, int count) throws IOException {
+        int from = nextGeneration == generation ? written.getOrDefault(id, 0) : 0;
+        if (count > from) {
+            for (Transaction tx : account.getTransactions(from, count)) {
+                Journal.writeString(out, id);
+                out.writeLong(tx.getCreated().getTime());
+                out.writeLong(tx.getAmountMoney().getCents());
+                out.writeByte(tx.getOperation().ordinal());
+            }
+            nextRecords += count - from;
+        }
+        nextWritten.put(id, count);
+    }
+
+    // Makes what was added durable; the snapshot to write next covers
+    // nextGeneration() up to nextLength().
+    void finish() throws IOException {
+        out.flush();
+        channel.force(false);
+    }
+
+    int nextGeneration() {
+        return nextGeneration;
+    }
+
+    long nextLength() throws IOException {
+        return channel.position();
+    }
+
+    // the snapshot covering the checkpoint is in place
+    void commit() throws IOException {
+        length = channel.position();
+        written = nextWritten;
+        close();
+        generation = nextGeneration;
+        records = nextRecords;
+        liveRecords = written.values().stream().mapToLong(Integer::longValue).sum();
+        deleteOtherGenerations();
+    }
+
+    // ends the checkpoint in progress, if any; what it appended is cut off
+    // by the next one
+    void close() {
+        nextWritten = null;
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("[Server] Failed to close snapshot history: " + e.getMessage());
+        }
+        channel = null;
+        out = null;
+    }
+
+    private void deleteOtherGenerations() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "snapshot-history-*.dat")) {
+            for (Path f : files) {
+                if (!f.equals(file(generation))) {
+                    Files.deleteIfExists(f);
+                }
+            }
+        }
+    }
+
+    private Path file(int generation) {
+        return dir.resolve(String.format("snapshot-history-%08d.dat", generation));
+    }
+}
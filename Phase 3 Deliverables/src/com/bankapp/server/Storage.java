@@ -0,0 +1,76 @@
+package com.bankapp.server;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+
+import com.bankapp.common.Account;
+import com.bankapp.common.ClientProfile;
+import com.bankapp.common.Transaction;
+
+// The storage engine under Database: where tellers, profiles, accounts, the
+// account id sequence and account histories are kept, and whether (and how)
+// they outlive the process. Picked at startup with --storage:
+//
+//   memory  MemoryStorage  the maps only; everything is gone on exit (default)
+//   disk    DiskStorage    the maps as the working set, made durable by a
+//                          write-ahead journal and periodic snapshots
+//
+// The maps are the live data the server reads and changes in place, under
+// Database.changes(); each change is then recorded in journal(), which is
+// Journal.disabled() for an engine that keeps nothing.
+public interface Storage {
+
+    // username -> password
+    Map<String, String> tellers();
+
+    // username -> profile
+    Map<String, ClientProfile> profiles();
+
+    // account id -> account
+    Map<String, Account> accounts();
+
+    // the number the next new account's id will be made from
+    int getNextAccountId();
+
+    // Takes the next account number, from any thread: no two calls get the
+    // same one. It is made durable by the journaled creation of the account
+    // that uses it (see JournalReplayer), and by snapshots.
+    int allocateAccountId();
+
+    // an empty history for a new account (see Account.setHistoryFactory)
+    List<Transaction> newHistory();
+
+    // where changes are recorded once applied to the maps
+    Journal journal();
+
+    // Loads whatever an earlier run left into the (empty) maps. Returns true
+    // when there was nothing to load.
+    boolean recover() throws IOException;
+
+    // Makes everything recorded so far durable without replaying the journal,
+    // holding exclusive (which stops changes) only while capturing the maps.
+    // Returns false if there was nothing to do.
+    boolean checkpoint(Lock exclusive) throws IOException;
+
+    // stops recording changes (Database takes a last checkpoint first)
+    void close();
+
+    static Storage open(ServerConfig config) throws IOException {
+        Supplier<List<Transaction>> histories = ArrayList::new;
+        if (config.getHistoryStore() == ServerConfig.HISTORY_STORE.MAPPED) {
+            histories = MappedHistoryStore.open(Paths.get(config.getDataDir(), "history"))::newHistory;
+        }
+        switch (config.getStorage()) {
+            case MEMORY:
+                return new MemoryStorage(histories);
+            default:
+                return new DiskStorage(Paths.get(config.getDataDir()), config.getFsync(),
+                        config.getGroupCommitMillis(), histories);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.bankapp.common;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+// Every message type through both wire codecs: what comes out must equal what
+// went in field by field, and a truncated or corrupt payload must be refused
+// with an IOException, never decoded into something else or thrown as a
+// runtime exception that would take the connection's thread down.
+class MessageCodecTest {
+    private static final MessageCodec[] CODECS = { BinaryMessageCodec.INSTANCE, SerializedMessageCodec.INSTANCE };
+
+    // one or more of each message type, by name
+    private static Map<String, Supplier<Message>> samples() {
+        SessionInfo session = new SessionInfo("alice", "4f1c2d9e-session", SessionInfo.ROLE.CLIENT, 1_700_000_000_000L);
+        SessionInfo teller = new SessionInfo("teller1", "77aa01b2-session", SessionInfo.ROLE.TELLER, 1_700_000_000_123L);
+        Map<String, Supplier<Message>> samples = new LinkedHashMap<>();
+        samples.put("client login", () -> new LoginMessage(Message.TYPE.LOGIN_CLIENT, "alice", "pass123"));
+        samples.put("teller login", () -> new LoginMessage(Message.TYPE.LOGIN_TELLER, "teller1", "letmein"));
+        samples.put("atm logout", () -> new LogoutMessage(Message.TYPE.LOGOUT_ATM, session));
+        samples.put("client logout", () -> new LogoutMessage(Message.TYPE.LOGOUT_CLIENT, session));
+        samples.put("teller logout", () -> new LogoutMessage(Message.TYPE.LOGOUT_TELLER, teller));
+        samples.put("success", () -> new SuccessMessage("Login successful.", session));
+        samples.put("success without session", () -> new SuccessMessage("Log Out Successful"));
+        samples.put("failure", () -> new FailureMessage("Insufficient funds."));
+        samples.put("account request", () -> new AccountMessage(Message.TYPE.LOAD_ACCOUNT, session, "alice", "ACC0"));
+        samples.put("history page request", () -> AccountMessage.historyPage(session, "alice", "ACC0", 40, 20));
+        samples.put("history since request", () -> AccountMessage.historySince(session, "alice", "ACC0", 17));
+        samples.put("checking", () -> new AccountMessage(Message.TYPE.LOAD_ACCOUNT, session, "alice", "ACC0",
+                new BigDecimal("500.00"), history(12)));
+        samples.put("saving", () -> new AccountMessage(Message.TYPE.SAVE_ACCOUNT, teller, "alice", "ACC1",
+                new BigDecimal("1500.00"), history(3), 2, 6, LocalDate.of(2025, 5, 1)));
+        samples.put("credit line", () -> new AccountMessage(Message.TYPE.LOAD_ACCOUNT, session, "alice", "ACC2",
+                new BigDecimal("-20.75"), history(5), new BigDecimal("5000")));
+        samples.put("create saving", () -> new AccountMessage(teller, "alice", AccountMessage.ACCOUNT_TYPE.SAVING,
+                null, 6));
+        samples.put("create credit line", () -> new AccountMessage(teller, "alice",
+                AccountMessage.ACCOUNT_TYPE.CREDIT_LINE, "2500.00", 0));
+        samples.put("delete account", () -> new AccountMessage(Message.TYPE.DELETE_ACCOUNT, teller, "alice", "ACC2"));
+        samples.put("exit account", () -> new AccountMessage(Message.TYPE.EXIT_ACCOUNT, teller, "alice", "ACC0"));
+        samples.put("share", () -> new ShareAccountMessage(Message.TYPE.SHARE_ACCOUNT, session, "alice", "bob", "ACC0"));
+        samples.put("profile request", () -> new ProfileMessage(Message.TYPE.LOAD_PROFILE, session, "alice"));
+        samples.put("profile", () -> new ProfileMessage(Message.TYPE.LOAD_PROFILE, session, "alice", "pass123",
+                "555-0100", "1 Main St", "Alice Example", summaries(3)));
+        samples.put("save profile", () -> new ProfileMessage(Message.TYPE.SAVE_PROFILE, teller, "alice", "pass123",
+                "555-0199", "2 Side St", "Alice Example", summaries(0)));
+        samples.put("create profile", () -> new ProfileMessage(Message.TYPE.CREATE_PROFILE, teller, "carol", "pw",
+                "555-0003", "9 Elm St.", "Carol Chen"));
+        samples.put("delete profile", () -> new ProfileMessage(Message.TYPE.DELETE_PROFILE, teller, "carol"));
+        samples.put("exit profile", () -> new ProfileMessage(Message.TYPE.EXIT_PROFILE, teller, "alice"));
+        samples.put("transaction", () -> {
+            Message m = new TransactionMessage(session, "125.50", Transaction.OPERATION.DEPOSIT, "ACC0");
+            m.setRequestId(1234);
+            return m;
+        });
+        samples.put("shutdown", ShutDownMessage::new);
+        samples.put("disconnect", () -> new DisconnectMessage(session));
+        samples.put("receipt", () -> new TransactionReceiptMessage("Transaction applied successfully.", "ACC1",
+                new BigDecimal("1374.50"), 41, 3, new Transaction("-125.50", Transaction.OPERATION.WITHDRAW)));
+        samples.put("batch", () -> {
+            List<TransactionBatchMessage.Entry> entries = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                entries.add(new TransactionBatchMessage.Entry("ACC" + i, (i + 1) + ".25",
+                        i % 2 == 0 ? Transaction.OPERATION.WITHDRAW : Transaction.OPERATION.DEPOSIT));
+            }
+            return new TransactionBatchMessage(teller, entries, true);
+        });
+        samples.put("batch result", () -> new TransactionBatchResultMessage("1 of 2 transactions applied.", List.of(
+                TransactionBatchResultMessage.Result.applied(new BigDecimal("1000.25"), 40),
+                TransactionBatchResultMessage.Result.failed("Account not found."))));
+        samples.put("transfer", () -> {
+            Message m = new TransferMessage(session, "ACC0", "ACC1", "40.00");
+            m.setRequestId(-7);
+            return m;
+        });
+        samples.put("transfer receipt", () -> new TransferReceiptMessage("Transferred 40.00 from ACC0 to ACC1.",
+                new TransactionReceiptMessage("Transaction applied successfully.", "ACC0",
+                        new BigDecimal("460.00"), 12, 0, new Transaction("-40.00", Transaction.OPERATION.WITHDRAW)),
+                new TransactionReceiptMessage("Transaction applied successfully.", "ACC1",
+                        new BigDecimal("1540.00"), 7, 0, new Transaction("40.00", Transaction.OPERATION.DEPOSIT))));
+        samples.put("session timeout", SessionTimeoutMessage::new);
+        return samples;
+    }
+
+    private static List<Transaction> history(int n) {
+        List<Transaction> history = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Transaction.OPERATION op = i % 3 == 0 ? Transaction.OPERATION.WITHDRAW : Transaction.OPERATION.DEPOSIT;
+            history.add(new Transaction((op == Transaction.OPERATION.WITHDRAW ? "-" : "") + (i + 1) + ".05", op));
+        }
+        return history;
+    }
+
+    private static List<AccountSummary> summaries(int n) {
+        List<AccountSummary> summaries = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            summaries.add(new AccountSummary("ACC" + i, AccountSummary.ACCOUNT_TYPE.values()[i % 3],
+                    new BigDecimal(i * 100 + ".25")));
+        }
+        return summaries;
+    }
+
+    static Stream<Arguments> codecsAndSamples() {
+        List<Arguments> cases = new ArrayList<>();
+        for (MessageCodec codec : CODECS) {
+            for (Map.Entry<String, Supplier<Message>> sample : samples().entrySet()) {
+                cases.add(Arguments.of(codec.getClass().getSimpleName(), sample.getKey(), codec, sample.getValue()));
+            }
+        }
+        return cases.stream();
+    }
+
+    @Test
+    void everyMessageTypeHasASample() {
+        Set<Message.TYPE> covered = EnumSet.noneOf(Message.TYPE.class);
+        for (Supplier<Message> sample : samples().values()) {
+            covered.add(sample.get().getType());
+        }
+        assertEquals(EnumSet.allOf(Message.TYPE.class), covered);
+    }
+
+    @ParameterizedTest(name = "{0}: {1}")
+    @MethodSource("codecsAndSamples")
+    void roundTripKeepsEveryField(String codecName, String name, MessageCodec codec, Supplier<Message> sample)
+            throws IOException {
+        Message msg = sample.get();
+        byte[] payload = codec.encode(msg);
+        assertNull(difference("", msg, codec.decode(payload, 0, payload.length)), "decoded message differs at");
+    }
+
+    @ParameterizedTest(name = "{0}: {1}")
+    @MethodSource("codecsAndSamples")
+    void decodesAtAnOffset(String codecName, String name, MessageCodec codec, Supplier<Message> sample)
+            throws IOException {
+        Message msg = sample.get();
+        byte[] payload = codec.encode(msg);
+        byte[] padded = new byte[payload.length + 7];
+        Arrays.fill(padded, (byte) 0x5A);
+        System.arraycopy(payload, 0, padded, 3, payload.length);
+        Message decoded = codec.decode(padded, 3, payload.length);
+        assertNull(difference("", msg, decoded), "message decoded at an offset differs at");
+        if (codec == BinaryMessageCodec.INSTANCE) {
+            assertArrayEquals(payload, codec.encode(decoded));
+        }
+    }
+
+    @ParameterizedTest(name = "{0}: {1}")
+    @MethodSource("codecsAndSamples")
+    void truncatedPayloadIsRejected(String codecName, String name, MessageCodec codec, Supplier<Message> sample)
+            throws IOException {
+        byte[] payload = codec.encode(sample.get());
+        for (int cut = 0; cut < payload.length; cut++) {
+            int length = cut;
+            assertThrows(IOException.class, () -> codec.decode(payload, 0, length),
+                    "payload cut to " + cut + " of " + payload.length + " bytes");
+        }
+    }
+
+    // Each byte in turn replaced by a few values: the payload either still
+    // decodes (the byte was, say, a character of a string) or is refused with
+    // an IOException.
+    @ParameterizedTest(name = "{0}: {1}")
+    @MethodSource("codecsAndSamples")
+    void corruptPayloadIsDecodedOrRejected(String codecName, String name, MessageCodec codec,
+            Supplier<Message> sample) throws IOException {
+        if (codec != BinaryMessageCodec.INSTANCE) {
+            return; // Java serialization is only checked for the framing below
+        }
+        byte[] payload = codec.encode(sample.get());
+        for (int i = 0; i < payload.length; i++) {
+            for (int value : new int[] { 0x00, 0x01, 0x7F, 0x80, 0xFF, payload[i] ^ 0x55 }) {
+                byte[] corrupt = payload.clone();
+                corrupt[i] = (byte) value;
+                try {
+                    codec.decode(corrupt, 0, corrupt.length);
+                } catch (IOException refused) {
+                    // fine
+                } catch (RuntimeException e) {
+                    fail("byte " + i + " set to " + value + " threw " + e, e);
+                }
+            }
+        }
+    }
+
+    @Test
+    void binaryRejectsUnknownTypeAndTrailingBytes() throws IOException {
+        MessageCodec codec = BinaryMessageCodec.INSTANCE;
+        assertThrows(IOException.class, () -> codec.decode(new byte[] { (byte) Message.TYPE.values().length, 0, 0 },
+                0, 3));
+        byte[] payload = codec.encode(new FailureMessage("No."));
+        byte[] longer = Arrays.copyOf(payload, payload.length + 1);
+        assertThrows(IOException.class, () -> codec.decode(longer, 0, longer.length));
+    }
+
+    @Test
+    void binaryRejectsCountsBeyondThePayload() throws IOException {
+        MessageCodec codec = BinaryMessageCodec.INSTANCE;
+        List<TransactionBatchMessage.Entry> entries = List.of(
+                new TransactionBatchMessage.Entry("ACC0", "1.00", Transaction.OPERATION.DEPOSIT));
+        byte[] payload = codec.encode(new TransactionBatchMessage(null, entries, false));
+        // type, request id 0, no session, then the entry count plus one
+        assertEquals(2, payload[3]);
+        payload[3] = (byte) 0x7F;
+        assertThrows(IOException.class, () -> codec.decode(payload, 0, payload.length));
+    }
+
+    @Test
+    void serializedRejectsGarbage() {
+        MessageCodec codec = SerializedMessageCodec.INSTANCE;
+        byte[] garbage = { (byte) 0xAC, (byte) 0xED, 0, 5, 0x73, 0x72, 0x7F, 0x7F, 0x7F };
+        assertThrows(IOException.class, () -> codec.decode(garbage, 0, garbage.length));
+        assertThrows(IOException.class, () -> codec.decode(new byte[] { 1, 2, 3, 4 }, 0, 4));
+    }
+
+    @Test
+    void serializedRejectsAnObjectThatIsNotAMessage() throws IOException {
+        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+        try (java.io.ObjectOutputStream out = new java.io.ObjectOutputStream(bytes)) {
+            out.writeObject("not a message");
+        }
+        byte[] payload = bytes.toByteArray();
+        assertThrows(IOException.class, () -> SerializedMessageCodec.INSTANCE.decode(payload, 0, payload.length));
+    }
+
+    // path of the first field that differs, or null when the graphs are equal;
+    // BigDecimal must match in scale too, as the client shows toPlainString().
+    // Lists compare by element, whichever List they decode into.
+    private static String difference(String path, Object a, Object b) {
+        if (a == null || b == null) {
+            return a == b ? null : path;
+        }
+        if (a instanceof List && b instanceof List) {
+            List<?> la = (List<?>) a;
+            List<?> lb = (List<?>) b;
+            if (la.size() != lb.size()) {
+                return path + ".size";
+            }
+            for (int i = 0; i < la.size(); i++) {
+                String d = difference(path + "[" + i + "]", la.get(i), lb.get(i));
+                if (d != null) {
+                    return d;
+                }
+            }
+            return null;
+        }
+        if (a.getClass() != b.getClass()) {
+            return path + " (" + a.getClass().getSimpleName() + " vs " + b.getClass().getSimpleName() + ")";
+        }
+        if (a instanceof Enum || !a.getClass().getName().startsWith("com.bankapp.")) {
+            return a.equals(b) ? null : path;
+        }
+        for (Class<?> c = a.getClass(); c != Object.class; c = c.getSuperclass()) {
+            for (Field f : c.getDeclaredFields()) {
+                if (Modifier.isStatic(f.getModifiers())) {
+                    continue;
+                }
+                f.setAccessible(true);
+                try {
+                    String d = difference(path + "." + f.getName(), f.get(a), f.get(b));
+                    if (d != null) {
+                        return d;
+                    }
+                } catch (IllegalAccessException e) {
+                    return path + "." + f.getName() + " (inaccessible)";
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,44 @@
+package com.bankapp.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+
+// A savings account's monthly withdrawals are only used up by withdrawals
+// that were actually recorded.
+class SavingAccountTest {
+
+    private static SavingAccount account(BigDecimal balance, int withdrawCount, int withdrawLimit) {
+        SavingAccount account = new SavingAccount("ACC0", balance, new ArrayList<>(), withdrawCount, withdrawLimit);
+        account.setReset(LocalDate.now());
+        return account;
+    }
+
+    @Test
+    void withdrawalCountsAgainstTheLimit() {
+        SavingAccount account = account(new BigDecimal("100.00"), 0, 2);
+        account.addTransaction(new Transaction("-10.00", Transaction.OPERATION.WITHDRAW));
+        account.addTransaction(new Transaction("5.00", Transaction.OPERATION.DEPOSIT));
+        assertEquals(1, account.getWithdrawCount());
+        account.addTransaction(new Transaction("-10.00", Transaction.OPERATION.WITHDRAW));
+        assertThrows(IllegalStateException.class,
+                () -> account.addTransaction(new Transaction("-10.00", Transaction.OPERATION.WITHDRAW)));
+        assertEquals(2, account.getWithdrawCount());
+        assertEquals(3, account.getTransactionCount());
+    }
+
+    @Test
+    void refusedWithdrawalDoesNotCount() {
+        // as low as Money goes, so any withdrawal overflows the balance
+        SavingAccount account = account(Money.ofCents(Long.MIN_VALUE).toBigDecimal(), 0, 1);
+        assertThrows(ArithmeticException.class,
+                () -> account.addTransaction(new Transaction("-1.00", Transaction.OPERATION.WITHDRAW)));
+        assertEquals(0, account.getWithdrawCount());
+        assertEquals(0, account.getTransactionCount());
+    }
+}
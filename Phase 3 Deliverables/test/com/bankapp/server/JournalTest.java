@@ -0,0 +1,127 @@
+package com.bankapp.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.bankapp.common.AccountMessage;
+import com.bankapp.common.Transaction;
+
+// Replay after damage: a torn tail on the newest segment is a crash
+// mid-write and is cut off; a bad record in a closed segment means history
+// the later segments build on is gone, so replay fails.
+class JournalTest {
+    @TempDir
+    Path dir;
+
+    // the deposits replayed, as "account#sequence"
+    private static final class Recorder implements Journal.Listener {
+        final List<String> transactions = new ArrayList<>();
+
+        @Override
+        public void createProfile(String username, String password, String phone, String address,
+                String legalName) {
+        }
+
+        @Override
+        public void saveProfile(String username, String password, String phone, String address, String legalName) {
+        }
+
+        @Override
+        public void deleteProfile(String username) {
+        }
+
+        @Override
+        public void createAccount(String username, String accountId, AccountMessage.ACCOUNT_TYPE type,
+                int withdrawLimit, BigDecimal creditLimit) {
+        }
+
+        @Override
+        public void saveAccount(String accountId, int withdrawCount, int withdrawLimit, BigDecimal creditLimit) {
+        }
+
+        @Override
+        public void deleteAccount(String username, String accountId) {
+        }
+
+        @Override
+        public void transaction(String accountId, int sequence, Transaction tx, int withdrawCount) {
+            transactions.add(accountId + "#" + sequence);
+        }
+
+        @Override
+        public void shareAccount(String accountId, String targetUsername) {
+        }
+    }
+
+    // two deposits in segment 1, two in segment 2
+    private void writeTwoSegments() throws IOException {
+        Journal journal = Journal.open(dir, Journal.FSYNC.ALWAYS, 0);
+        journal.replay(0, new Recorder());
+        deposit(journal, 0);
+        deposit(journal, 1);
+        assertEquals(1, journal.rotate());
+        deposit(journal, 2);
+        deposit(journal, 3);
+        journal.close();
+    }
+
+    private static void deposit(Journal journal, int sequence) {
+        journal.transaction("ACC0", sequence, new Transaction("1.00", Transaction.OPERATION.DEPOSIT), 0).join();
+    }
+
+    private Path segment(long n) {
+        return dir.resolve(String.format("journal-%08d.log", n));
+    }
+
+    private static void corruptLastByte(Path file) throws IOException {
+        try (RandomAccessFile f = new RandomAccessFile(file.toFile(), "rw")) {
+            f.seek(f.length() - 1);
+            int b = f.read();
+            f.seek(f.length() - 1);
+            f.write(b ^ 0xFF);
+        }
+    }
+
+    @Test
+    void replaysEverySegmentInOrder() throws IOException {
+        writeTwoSegments();
+        Recorder recorder = new Recorder();
+        Journal.open(dir, Journal.FSYNC.ALWAYS, 0).replay(0, recorder);
+        assertEquals(List.of("ACC0#0", "ACC0#1", "ACC0#2", "ACC0#3"), recorder.transactions);
+    }
+
+    @Test
+    void tornTailOfTheNewestSegmentIsCutOff() throws IOException {
+        writeTwoSegments();
+        corruptLastByte(segment(2));
+        Recorder recorder = new Recorder();
+        Journal journal = Journal.open(dir, Journal.FSYNC.ALWAYS, 0);
+        journal.replay(0, recorder);
+        assertEquals(List.of("ACC0#0", "ACC0#1", "ACC0#2"), recorder.transactions);
+
+        // appends carry on from the last good record
+        deposit(journal, 3);
+        journal.close();
+        Recorder again = new Recorder();
+        Journal.open(dir, Journal.FSYNC.ALWAYS, 0).replay(0, again);
+        assertEquals(List.of("ACC0#0", "ACC0#1", "ACC0#2", "ACC0#3"), again.transactions);
+    }
+
+    @Test
+    void damagedClosedSegmentFailsReplay() throws IOException {
+        writeTwoSegments();
+        corruptLastByte(segment(1));
+        Journal journal = Journal.open(dir, Journal.FSYNC.ALWAYS, 0);
+        assertThrows(IOException.class, () -> journal.replay(0, new Recorder()));
+    }
+}
@@ -0,0 +1,79 @@
+package com.bankapp.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.bankapp.common.Account;
+import com.bankapp.common.AccountSummary;
+import com.bankapp.common.CheckingAccount;
+import com.bankapp.common.ClientProfile;
+import com.bankapp.common.Transaction;
+
+// A profile's summaries are served from the cache until the write path
+// reports one of its accounts changed, or its account list changes.
+class ProfileSummariesTest {
+    private final Map<String, Account> accounts = new HashMap<>();
+    private final ProfileSummaries summaries = new ProfileSummaries(accounts);
+    private final ClientProfile carol = new ClientProfile("carol", "pw", "555-0003", "9 Elm St.", "Carol Chen");
+
+    private Account open(String id, String deposit) {
+        Account account = new CheckingAccount();
+        account.setID(id);
+        account.addTransaction(new Transaction(deposit, Transaction.OPERATION.DEPOSIT));
+        accounts.put(id, account);
+        carol.addAccountID(id);
+        return account;
+    }
+
+    private static String balances(List<AccountSummary> list) {
+        StringBuilder out = new StringBuilder();
+        for (AccountSummary summary : list) {
+            out.append(summary.getID()).append('=').append(summary.getBalance()).append(' ');
+        }
+        return out.toString().trim();
+    }
+
+    @Test
+    void unchangedProfileGetsTheSameList() {
+        open("ACC0", "10.00");
+        List<AccountSummary> first = summaries.of(carol);
+        assertSame(first, summaries.of(carol));
+        assertEquals("ACC0=10.00", balances(first));
+    }
+
+    @Test
+    void reportedChangeRebuildsTheList() {
+        Account acc0 = open("ACC0", "10.00");
+        open("ACC1", "20.00");
+        List<AccountSummary> first = summaries.of(carol);
+
+        acc0.addTransaction(new Transaction("5.00", Transaction.OPERATION.DEPOSIT));
+        summaries.accountChanged("ACC0");
+        List<AccountSummary> second = summaries.of(carol);
+        assertNotSame(first, second);
+        assertEquals("ACC0=15.00 ACC1=20.00", balances(second));
+        // the account that did not change keeps its summary
+        assertSame(first.get(1), second.get(1));
+        assertSame(second, summaries.of(carol));
+    }
+
+    @Test
+    void linkedAndDeletedAccountsShowUp() {
+        open("ACC0", "10.00");
+        summaries.of(carol);
+        open("ACC1", "20.00");
+        assertEquals("ACC0=10.00 ACC1=20.00", balances(summaries.of(carol)));
+
+        // deleted while another profile still lists it
+        accounts.remove("ACC1");
+        summaries.accountChanged("ACC1");
+        assertEquals("ACC0=10.00", balances(summaries.of(carol)));
+    }
+}
@@ -0,0 +1,196 @@
+package com.bankapp.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.bankapp.common.Account;
+import com.bankapp.common.AccountMessage;
+import com.bankapp.common.CheckingAccount;
+import com.bankapp.common.ClientProfile;
+import com.bankapp.common.Transaction;
+
+// The same checks against every storage engine (--storage=memory and
+// --storage=disk): a fresh engine is empty; what is put in the maps and
+// recorded in the journal reads back; and after a crash (storage closed
+// without a checkpoint) and after a clean shutdown (Database.close, which
+// checkpoints), a durable engine recovers exactly that state while a volatile
+// one starts empty again.
+class StorageConformanceTest {
+    @TempDir
+    Path dir;
+
+    private Database open(String engine) throws IOException {
+        return new Database(ServerConfig.fromArgs(new String[] { "--storage=" + engine, "--data-dir=" + dir,
+                "--fsync=group" }));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "memory", "disk" })
+    void freshEngineIsEmpty(String engine) throws IOException {
+        Database db = open(engine);
+        Storage storage = db.getStorage();
+        assertTrue(storage.recover(), "a fresh engine has something to recover");
+        assertTrue(storage.profiles().isEmpty());
+        assertTrue(storage.accounts().isEmpty());
+        assertEquals(0, storage.getNextAccountId());
+        db.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "memory", "disk" })
+    void writtenStateReadsBack(String engine) throws IOException {
+        Database db = open(engine);
+        Storage storage = db.getStorage();
+        storage.recover();
+        write(storage);
+        assertHoldsWritten(storage);
+        db.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "memory", "disk" })
+    void crashKeepsOnlyWhatIsDurable(String engine) throws IOException {
+        Database db = open(engine);
+        Storage storage = db.getStorage();
+        storage.recover();
+        boolean durable = storage.journal().isEnabled();
+        write(storage);
+        // crash: nothing but the journal to recover from
+        storage.close();
+
+        db = open(engine);
+        storage = db.getStorage();
+        boolean empty = storage.recover();
+        if (durable) {
+            assertFalse(empty);
+            assertHoldsWritten(storage);
+        } else {
+            assertTrue(empty);
+            assertTrue(storage.accounts().isEmpty());
+        }
+        db.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "memory", "disk" })
+    void cleanShutdownKeepsOnlyWhatIsDurable(String engine) throws IOException {
+        Database db = open(engine);
+        Storage storage = db.getStorage();
+        storage.recover();
+        boolean durable = storage.journal().isEnabled();
+        write(storage);
+        deleteAccount(storage, "ACC1");
+        // clean shutdown: a checkpoint, then the snapshot to recover from
+        db.close();
+
+        db = open(engine);
+        storage = db.getStorage();
+        boolean empty = storage.recover();
+        if (durable) {
+            assertFalse(empty);
+            assertHoldsWritten(storage);
+            assertFalse(storage.accounts().containsKey("ACC1"));
+            // a deleted account's id is not handed out again
+            assertEquals(2, storage.getNextAccountId());
+        } else {
+            assertTrue(empty);
+            assertTrue(storage.accounts().isEmpty());
+        }
+        db.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "memory", "disk" })
+    void concurrentAllocationsAreDistinct(String engine) throws Exception {
+        Database db = open(engine);
+        Storage storage = db.getStorage();
+        storage.recover();
+        int threads = 8;
+        int each = 1000;
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                done.add(pool.submit(() -> {
+                    for (int i = 0; i < each; i++) {
+                        ids.add(storage.allocateAccountId());
+                    }
+                }));
+            }
+            for (Future<?> f : done) {
+                f.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(threads * each, ids.size());
+        assertEquals(threads * each, storage.getNextAccountId());
+        db.close();
+    }
+
+    // a teller, a profile with two accounts, and history on the first
+    private static void write(Storage storage) {
+        Journal journal = storage.journal();
+        storage.tellers().put("teller1", "letmein");
+        ClientProfile profile = new ClientProfile("carol", "pw", "555-0003", "9 Elm St.", "Carol Chen");
+        storage.profiles().put("carol", profile);
+        List<CompletableFuture<Void>> written = new ArrayList<>();
+        written.add(journal.createProfile("carol", "pw", "555-0003", "9 Elm St.", "Carol Chen"));
+        for (int i = 0; i < 2; i++) {
+            String id = "ACC" + storage.allocateAccountId();
+            Account account = new CheckingAccount();
+            account.setID(id);
+            storage.accounts().put(id, account);
+            profile.addAccountID(id);
+            written.add(journal.createAccount("carol", id, AccountMessage.ACCOUNT_TYPE.CHECKING, 0, null));
+        }
+        Account first = storage.accounts().get("ACC0");
+        for (String amount : new String[] { "100.00", "25.50", "0.01" }) {
+            Transaction tx = new Transaction(amount, Transaction.OPERATION.DEPOSIT);
+            int sequence = first.getTransactionCount();
+            first.addTransaction(tx);
+            written.add(journal.transaction("ACC0", sequence, tx, 0));
+        }
+        CompletableFuture.allOf(written.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    private static void deleteAccount(Storage storage, String id) {
+        storage.profiles().get("carol").removeAccountID(id);
+        storage.accounts().remove(id);
+        storage.journal().deleteAccount("carol", id).join();
+    }
+
+    // what write() left (tellers are configuration, not recovered)
+    private static void assertHoldsWritten(Storage storage) {
+        ClientProfile profile = storage.profiles().get("carol");
+        assertNotNull(profile);
+        assertEquals("Carol Chen", profile.getLegalName());
+        assertNotNull(profile.getAccountID("ACC0"));
+        Account first = storage.accounts().get("ACC0");
+        assertInstanceOf(CheckingAccount.class, first);
+        assertEquals(3, first.getTransactionCount());
+        assertEquals("125.51", first.getBalance().toPlainString());
+        assertEquals("125.51",
+                first.getTransactionHistory().get(2).getBalanceAfter().toBigDecimal().toPlainString());
+        assertEquals(2, storage.getNextAccountId());
+    }
+}